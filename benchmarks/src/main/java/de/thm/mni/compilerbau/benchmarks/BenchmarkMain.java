@@ -0,0 +1,18 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with the JMH command line, writing the results as JSON to target/jmh-result.json unless another
+ * result format or file is given, so the results of two runs can be compared.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) arguments.addAll(List.of("-rf", "json"));
+        if (!arguments.contains("-rff")) arguments.addAll(List.of("-rff", "target/jmh-result.json"));
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,36 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole compilation from the source to the assembly code, without reading and writing files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    @Param({"runtime_tests", "synthetic-50", "synthetic-500"})
+    public String input;
+
+    private List<String> sources;
+
+    @Setup(Level.Trial)
+    public void loadInputs() throws IOException {
+        sources = Inputs.load(input);
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) throws Exception {
+        for (String source : sources) {
+            blackhole.consume(new Pipeline(source).compile());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.utils.SplError;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The SPL programs compiled by the benchmarks, selected by the "input" parameter:
+ * <ul>
+ *     <li>"runtime_tests": all programs of tests/runtime_tests which compile, one after the other.</li>
+ *     <li>"synthetic-N": a generated program with N procedures, see {@link SyntheticProgram}.</li>
+ *     <li>The name of a single program of tests/runtime_tests, e.g. "queens".</li>
+ * </ul>
+ * The directory of the runtime tests is given by the system property spl.tests and defaults to
+ * ../tests/runtime_tests, i.e. the benchmarks are run from the benchmarks directory.
+ */
+final class Inputs {
+    private static final String SYNTHETIC = "synthetic-";
+
+    private Inputs() {
+    }
+
+    /**
+     * @return The sources of the programs.
+     * @throws IOException If a program cannot be read.
+     */
+    static List<String> load(String input) throws IOException {
+        if (input.startsWith(SYNTHETIC)) {
+            return List.of(SyntheticProgram.generate(Integer.parseInt(input.substring(SYNTHETIC.length()))));
+        }
+
+        Path directory = Path.of(System.getProperty("spl.tests", "../tests/runtime_tests"));
+        if (!input.equals("runtime_tests")) {
+            return List.of(Files.readString(directory.resolve(input + ".spl"), StandardCharsets.ISO_8859_1));
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.toString().endsWith(".spl")).sorted().collect(Collectors.toList());
+        }
+        List<String> sources = new ArrayList<>();
+        for (Path file : files) {
+            String source = Files.readString(file, StandardCharsets.ISO_8859_1);
+            // Some runtime tests check the error messages of the compiler, they would end the benchmark
+            if (compiles(source)) {
+                sources.add(source);
+            } else {
+                System.err.printf("Skipping %s, it does not compile\n", file.getFileName());
+            }
+        }
+        return sources;
+    }
+
+    private static boolean compiles(String source) {
+        try {
+            new Pipeline(source).compile();
+            return true;
+        } catch (SplError e) {
+            return false;
+        } catch (Exception e) {
+            throw new IllegalStateException("The compiler has failed", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase of the compiler in isolation, with one subclass per phase.
+ * <p>
+ * The phases modify their input, so before every invocation the programs are compiled anew up to the phase in front
+ * of the measured one. The phases take milliseconds per program, so the overhead of preparing each invocation is
+ * negligible.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class PhaseBenchmark {
+    @Param({"runtime_tests", "synthetic-50", "synthetic-500"})
+    public String input;
+
+    private List<String> sources;
+    private List<Pipeline> pipelines;
+
+    abstract Pipeline.Phase phase();
+
+    @Setup(Level.Trial)
+    public void loadInputs() throws IOException {
+        sources = Inputs.load(input);
+    }
+
+    @Setup(Level.Invocation)
+    public void runPreviousPhases() throws Exception {
+        pipelines = new ArrayList<>();
+        for (String source : sources) {
+            Pipeline pipeline = new Pipeline(source);
+            pipeline.runBefore(phase());
+            pipelines.add(pipeline);
+        }
+    }
+
+    @Benchmark
+    public void run(Blackhole blackhole) throws Exception {
+        for (Pipeline pipeline : pipelines) {
+            blackhole.consume(pipeline.run(phase()));
+        }
+    }
+
+    public static class Scan extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.SCAN;
+        }
+    }
+
+    public static class Parse extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.PARSE;
+        }
+    }
+
+    public static class Tables extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.TABLES;
+        }
+    }
+
+    public static class Semant extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.SEMANT;
+        }
+    }
+
+    public static class Fold extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.FOLD;
+        }
+    }
+
+    public static class Vars extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.VARS;
+        }
+    }
+
+    public static class IrGen extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.IRGEN;
+        }
+    }
+
+    public static class Optimize extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.OPTIMIZE;
+        }
+    }
+
+    public static class CodeGen extends PhaseBenchmark {
+        @Override
+        Pipeline.Phase phase() {
+            return Pipeline.Phase.CODEGEN;
+        }
+    }
+}
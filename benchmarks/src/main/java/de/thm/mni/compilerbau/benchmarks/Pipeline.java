@@ -0,0 +1,129 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.CommandLineOptions;
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.ir.ControlFlowGraph;
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_fold.ConstantFolder;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._05b_irgen.IrGenerator;
+import de.thm.mni.compilerbau.phases._05c_optimize.IrOptimizer;
+import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import java_cup.runtime.DefaultSymbolFactory;
+import java_cup.runtime.SymbolFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * The compilation of one SPL program, which can be run phase by phase like in the compiler's Main.
+ * <p>
+ * The phases modify the abstract syntax tree, the symbol table and the IR of the program, so a pipeline can run each
+ * phase only once. To measure a single phase, a new pipeline is run up to the phase before.
+ */
+class Pipeline {
+    enum Phase {
+        /**
+         * Only the scanner, which the parser otherwise drives token by token. Its result is not used by the other phases.
+         */
+        SCAN, PARSE, TABLES, SEMANT, FOLD, VARS, IRGEN, OPTIMIZE, CODEGEN
+    }
+
+    @SuppressWarnings("deprecation")
+    private static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
+
+    private final String source;
+    private final CommandLineOptions options = new CommandLineOptions();
+    private Program program;
+    private SymbolTable table;
+    private List<ControlFlowGraph> procedures;
+
+    Pipeline(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Runs all phases in front of a phase.
+     */
+    void runBefore(Phase phase) throws Exception {
+        for (Phase previous : Phase.values()) {
+            if (previous == phase) break;
+            if (previous != Phase.SCAN) run(previous);
+        }
+    }
+
+    /**
+     * Runs all phases and returns the generated code.
+     */
+    String compile() throws Exception {
+        runBefore(Phase.CODEGEN);
+        return (String) run(Phase.CODEGEN);
+    }
+
+    /**
+     * Runs a single phase, the phases in front of it must have been run already.
+     *
+     * @return The result of the phase, to be consumed by the benchmark.
+     */
+    Object run(Phase phase) throws Exception {
+        switch (phase) {
+            case SCAN:
+                return scan();
+            case PARSE:
+                Scanner scanner = newScanner();
+                Parser parser = new Parser(scanner, symbolFactory);
+                parser.options = options;
+                program = (Program) parser.parse().value;
+                return program;
+            case TABLES:
+                table = new TableBuilder(false).buildSymbolTable(program);
+                return table;
+            case SEMANT:
+                new ProcedureBodyChecker().checkProcedures(program, table);
+                return program;
+            case FOLD:
+                new ConstantFolder(false).foldProgram(program);
+                return program;
+            case VARS:
+                new VarAllocator(false, options.ershovOptimization, options.registerArguments).allocVars(program, table);
+                return table;
+            case IRGEN:
+                procedures = new IrGenerator(options.ershovOptimization).generateIr(program, table);
+                return procedures;
+            case OPTIMIZE:
+                new IrOptimizer(false, options.boundsChecks, options.inlineThreshold).optimize(procedures);
+                return procedures;
+            case CODEGEN:
+                StringWriter assembly = new StringWriter();
+                new CodeGenerator(new PrintWriter(assembly), null).generateCode(procedures);
+                return assembly.toString();
+        }
+        throw new IllegalArgumentException("Unknown phase " + phase);
+    }
+
+    /**
+     * @return The number of tokens of the program.
+     */
+    private int scan() throws IOException {
+        Scanner scanner = newScanner();
+        int tokens = 0;
+        while (scanner.next_token().sym != Sym.EOF) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    private Scanner newScanner() {
+        Scanner scanner = new Scanner(new StringReader(source));
+        scanner.options = options;
+        return scanner;
+    }
+}
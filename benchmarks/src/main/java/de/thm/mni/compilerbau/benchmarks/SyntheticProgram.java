@@ -0,0 +1,67 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+/**
+ * Generates large SPL programs, much larger than the runtime tests, to see how the phases scale.
+ * <p>
+ * A program consists of procedures of the same shape: nested loops over a vector and a matrix passed by reference,
+ * conditionals, arithmetic with constants to fold and a call of the previous procedure. The constants differ from
+ * procedure to procedure, so no two procedures are identical.
+ */
+final class SyntheticProgram {
+    private SyntheticProgram() {
+    }
+
+    /**
+     * @param procedures The number of procedures besides main.
+     * @return The source of the program.
+     */
+    static String generate(int procedures) {
+        StringBuilder source = new StringBuilder();
+        source.append("// synthetic program with ").append(procedures).append(" procedures\n\n");
+        source.append("type Vec = array [16] of int;\n");
+        source.append("type Mat = array [16] of Vec;\n\n");
+        for (int k = 0; k < procedures; k++) {
+            appendProcedure(source, k);
+        }
+        source.append("proc main() {\n");
+        source.append("  var v: Vec;\n");
+        source.append("  var m: Mat;\n\n");
+        source.append("  p").append(procedures - 1).append("(3, v, m);\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private static void appendProcedure(StringBuilder source, int k) {
+        int a = k % 7 + 2;
+        int b = k % 11 + 1;
+        source.append("proc p").append(k).append("(n: int, ref v: Vec, ref m: Mat) {\n");
+        source.append("  var i: int;\n");
+        source.append("  var j: int;\n");
+        source.append("  var s: int;\n\n");
+        source.append("  i := 0;\n");
+        source.append("  s := n * ").append(a).append(" + ").append(b * 4).append(" / 2;\n");
+        source.append("  while (i < 16) {\n");
+        source.append("    v[i] := (s * ").append(a).append(" + i) / ").append(b + 1).append(" - v[i];\n");
+        source.append("    j := 0;\n");
+        source.append("    while (j < 16) {\n");
+        source.append("      if (m[i][j] < s + ").append(b).append(") {\n");
+        source.append("        m[i][j] := m[i][j] + i * j - ").append(a).append(";\n");
+        source.append("      } else {\n");
+        source.append("        s := s + m[i][j] * (n + ").append(b).append(");\n");
+        source.append("        if (s > 10000) {\n");
+        source.append("          s := s / ").append(a).append(";\n");
+        source.append("        }\n");
+        source.append("      }\n");
+        source.append("      j := j + 1;\n");
+        source.append("    }\n");
+        source.append("    i := i + 1;\n");
+        source.append("  }\n");
+        if (k > 0) {
+            source.append("  if (n > 0) {\n");
+            source.append("    p").append(k - 1).append("(n - 1, v, m);\n");
+            source.append("  }\n");
+        }
+        source.append("  printi(s);\n");
+        source.append("}\n\n");
+    }
+}
@@ -0,0 +1,157 @@
+package de.thm.mni.compilerbau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many input files with one invocation of the compiler (--output-dir).
+ * <p>
+ * The files are compiled by a pool of -j threads, each of them reusing its scanner and parser for all the files it
+ * compiles. The largest files are started first, so that the other threads are not left idle while a large file
+ * started last is still being compiled. The error messages of each file are collected and printed in the order of the
+ * input files, followed by a summary of the files which have failed.
+ */
+class BatchCompiler {
+    private final CommandLineOptions options;
+    private final Path outputDirectory;
+
+    /**
+     * An input file and where its output goes.
+     */
+    private static class Input {
+        final Path source;
+        final Path output;
+        final long size;
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int exitCode;
+
+        Input(Path source, Path output) {
+            this.source = source;
+            this.output = output;
+            this.size = source.toFile().length();
+        }
+    }
+
+    BatchCompiler(CommandLineOptions options) {
+        this.options = options;
+        this.outputDirectory = Path.of(options.outputDirectory);
+    }
+
+    /**
+     * @return 0 if all files have been compiled, otherwise the exit code of the first input file which has failed.
+     * @throws IOException If an input directory cannot be read.
+     */
+    int run() throws IOException {
+        long start = System.nanoTime();
+        List<Input> inputs = collectInputs();
+        Set<Path> outputs = new HashSet<>();
+        for (Input input : inputs) {
+            if (!outputs.add(input.output)) {
+                System.err.printf("An error occurred: More than one input file would be compiled to '%s'\n", input.output);
+                return 1;
+            }
+        }
+
+        List<Input> schedule = new ArrayList<>(inputs);
+        schedule.sort(Comparator.comparingLong((Input input) -> input.size).reversed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.jobs);
+        ThreadLocal<Main.Frontend> frontends = ThreadLocal.withInitial(Main.Frontend::new);
+        Map<Input, Future<Integer>> results = new HashMap<>();
+        for (Input input : schedule) {
+            results.put(input, executor.submit(() -> compile(input, frontends.get())));
+        }
+        executor.shutdown();
+
+        List<Input> failed = new ArrayList<>();
+        int exitCode = 0;
+        for (Input input : inputs) {
+            input.exitCode = result(input, results.get(input));
+            if (input.errors.size() > 0) {
+                System.err.println(input.source + ":");
+                System.err.write(input.errors.toByteArray(), 0, input.errors.size());
+                System.err.println();
+            }
+            if (input.exitCode != 0) {
+                failed.add(input);
+                if (exitCode == 0) exitCode = input.exitCode;
+            }
+        }
+
+        long milliseconds = (System.nanoTime() - start) / 1_000_000;
+        System.err.printf("Compiled %d of %d files in %d ms", inputs.size() - failed.size(), inputs.size(), milliseconds);
+        if (failed.isEmpty()) {
+            System.err.println(".");
+        } else {
+            System.err.printf(", %d failed:\n", failed.size());
+            for (Input input : failed) {
+                System.err.printf("  %s (exit code %d)\n", input.source, input.exitCode);
+            }
+        }
+        System.err.flush();
+        return exitCode;
+    }
+
+    /**
+     * Input directories are searched for .spl files. The output files of these keep their path relative to the input
+     * directory, the output files of all other input files are put into the output directory directly.
+     */
+    private List<Input> collectInputs() throws IOException {
+        List<Input> inputs = new ArrayList<>();
+        for (String name : options.inFilenames) {
+            Path path = Path.of(name);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".spl"))
+                            .sorted()
+                            .forEach(file -> inputs.add(new Input(file, outputFile(outputDirectory, path.relativize(file)))));
+                }
+            } else {
+                inputs.add(new Input(path, outputFile(outputDirectory, path.getFileName())));
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * @param relativeSource The path of an input file relative to its input directory, or its name.
+     * @return The output file of the input file.
+     */
+    static Path outputFile(Path outputDirectory, Path relativeSource) {
+        String name = relativeSource.toString();
+        if (name.endsWith(".spl")) name = name.substring(0, name.length() - ".spl".length());
+        return outputDirectory.resolve(name + ".s");
+    }
+
+    private int compile(Input input, Main.Frontend frontend) throws IOException {
+        if (input.output.getParent() != null) Files.createDirectories(input.output.getParent());
+        PrintStream errors = new PrintStream(input.errors, true);
+        return Main.compile(options.withFiles(input.source.toString(), input.output.toString()), frontend, errors);
+    }
+
+    /**
+     * Waits for the compilation of an input file.
+     *
+     * @return Its exit code.
+     */
+    private static int result(Input input, Future<Integer> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            new PrintStream(input.errors, true).println("An error occurred: " + e.getCause());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package de.thm.mni.compilerbau;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of compiled programs (--cache), which may be shared by concurrent builds.
+ * <p>
+ * An entry is keyed by a SHA-256 hash of the source, the options affecting the generated code and the compiler itself,
+ * i.e. the bytes of its jar or class files, so a rebuilt compiler never uses the entries of an older one. The entry
+ * holds the exit code, the generated code and the error messages, so a program which has failed to compile fails
+ * again with the same messages.
+ * <p>
+ * Entries are written to a temporary file first, which is then moved into place atomically, so no build ever reads a
+ * partially written entry. The last-modified time of an entry is updated whenever it is used. When the cache has grown
+ * beyond its size, the least recently used entries are deleted. Any problem with the cache is treated like a miss,
+ * since the cache only saves time.
+ */
+class BuildCache {
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String COMPILER_HASH = hashCompiler();
+
+    private final Path directory;
+    private final long maximumSize;
+
+    /**
+     * @param directory   The directory holding the entries.
+     * @param maximumSize The size of all entries together, in bytes.
+     */
+    BuildCache(Path directory, long maximumSize) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return The key of the entry holding the compiled source.
+     */
+    static String key(byte[] source, CommandLineOptions options) {
+        String settings = String.format("compiler=%s phase=%s ershov=%b doWhile=%b boundsChecks=%b inlineThreshold=%d registerArguments=%b\n",
+                COMPILER_HASH, options.phaseOption, options.ershovOptimization, options.doWhileEnabled,
+                options.boundsChecks, options.inlineThreshold, options.registerArguments);
+        MessageDigest digest = sha256();
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        digest.update(source);
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return The cached result, or null if there is none.
+     */
+    CompilationResult lookup(String key) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            int exitCode = in.readInt();
+            String assembly = new String(CompileServer.readBytes(in), StandardCharsets.UTF_8);
+            byte[] diagnostics = CompileServer.readBytes(in);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return new CompilationResult(exitCode, assembly, diagnostics);
+        } catch (IOException e) {
+            // Not cached yet, or just evicted by another build
+            return null;
+        }
+    }
+
+    void store(String key, CompilationResult result) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(result.exitCode);
+                CompileServer.writeBytes(out, result.assembly.getBytes(StandardCharsets.UTF_8));
+                CompileServer.writeBytes(out, result.diagnostics);
+            }
+            Files.move(temporary, directory.resolve(key + ENTRY_SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            evict();
+        } catch (IOException e) {
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits into its size.
+     */
+    private void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(directory)) {
+            entries = files.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX)).collect(Collectors.toList());
+        }
+
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long size = 0;
+        for (Path entry : entries) {
+            try {
+                BasicFileAttributes entryAttributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                attributes.put(entry, entryAttributes);
+                size += entryAttributes.size();
+            } catch (NoSuchFileException e) {
+                // Evicted by another build in the meantime
+            }
+        }
+        if (size <= maximumSize) return;
+
+        List<Path> leastRecentlyUsed = new ArrayList<>(attributes.keySet());
+        leastRecentlyUsed.sort(Comparator.comparing(entry -> attributes.get(entry).lastModifiedTime()));
+        for (Path entry : leastRecentlyUsed) {
+            if (size <= maximumSize) break;
+            Files.deleteIfExists(entry);
+            size -= attributes.get(entry).size();
+        }
+    }
+
+    /**
+     * @return A hash of the class files of the compiler, read from its jar file or class directory.
+     */
+    private static String hashCompiler() {
+        MessageDigest digest = sha256();
+        try {
+            Path location = Path.of(BuildCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(location)) {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(file));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // The compiler cannot be identified, its entries are never used again
+            digest.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform supports SHA-256", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
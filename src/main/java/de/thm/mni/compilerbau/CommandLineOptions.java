@@ -1,29 +1,64 @@
 package de.thm.mni.compilerbau;
 
 import java.io.*;
-
-import static java.lang.System.exit;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CommandLineOptions {
     enum PhaseOption {
-        TOKENS, PARSE, ABSYN, TABLES, SEMANT, VARS;
+        TOKENS, PARSE, ABSYN, TABLES, SEMANT, FOLD, VARS, IR;
+    }
+
+    /**
+     * Thrown instead of compiling, after the usage has been printed because of a usage error or --help.
+     */
+    static class UsageException extends RuntimeException {
+        final int exitCode;
+
+        UsageException(int exitCode) {
+            this.exitCode = exitCode;
+        }
     }
 
+    static final int DEFAULT_SERVER_PORT = 7433;
+    static final int DEFAULT_CACHE_SIZE_MB = 64;
+
     public PhaseOption phaseOption = null;
     public boolean ershovOptimization = false;
     public boolean doWhileEnabled = false;
+    public boolean boundsChecks = true;
+    public boolean peepholeStatistics = false;
+    public int inlineThreshold = 40;
+    public boolean registerArguments = false;
+    public boolean server = false;
+    public boolean useServer = false;
+    public int serverPort = DEFAULT_SERVER_PORT;
     public String inFilename = "";
     public String outFilename = "";
+    /**
+     * The input files and directories of a batch compilation, which writes the output files to the output directory.
+     */
+    public List<String> inFilenames = new ArrayList<>();
+    public String outputDirectory = null;
+    public int jobs = Runtime.getRuntime().availableProcessors();
+    public String cacheDirectory = null;
+    public boolean watch = false;
+    public boolean statistics = false;
+    public String statisticsFile = null;
+    public long cacheSize = DEFAULT_CACHE_SIZE_MB * 1024 * 1024;
 
     private static void usageError(String format, Object... args) {
         System.err.printf("Usage error: " + format, args);
         System.err.println();
         showUsage(System.err);
-        exit(1);
+        throw new UsageException(1);
     }
 
     private static void showUsage(PrintStream out) {
         out.println("Usage: 'java -jar spl.jar' [OPTION] INPUT_FILE [OUTPUT_FILE]");
+        out.println("       'java -jar spl.jar' [OPTION] --output-dir DIRECTORY [-j N] INPUT_FILE_OR_DIRECTORY...");
+        out.println("       'java -jar spl.jar' --server [--port N]");
         out.println();
         out.println("Executes all compiler phases up to (and including) the specified one.");
         out.println("If no flag is specified, all phases are run and code is written to the output file.");
@@ -33,9 +68,25 @@ public class CommandLineOptions {
         out.println("  --absyn      Phase 3: Creates an abstract syntax tree from the input tokens and prints it.");
         out.println("  --tables     Phase 4a: Builds a symbol table and prints its entries.");
         out.println("  --semant     Phase 4b: Performs the semantic analysis.");
+        out.println("  --fold       Phase 4c: Folds constant expressions and prints the simplified abstract syntax tree.");
         out.println("  --vars       Phase 5: Allocates memory space for variables and prints the amount of allocated memory.");
+        out.println("  --ir         Phase 5b: Translates the program into the intermediate representation, optimizes it and prints it.");
         out.println("  --ershov     Enable register optimization using the ershov number.");
         out.println("  --doWhile    Enable the do-while statement.");
+        out.println("  --no-bounds-checks  Unsafe: Do not check array indices at runtime (for benchmarking only).");
+        out.println("  --inline-threshold N  Inline procedures of at most N IR instructions (default 40, 0 disables inlining).");
+        out.println("  --register-args  Pass the first four arguments of SPL procedures in the registers $4 to $7.");
+        out.println("  --peephole-stats  Print how many times each peephole optimization has changed the code.");
+        out.println("  --output-dir DIRECTORY  Compile all input files, and all .spl files in input directories, into DIRECTORY.");
+        out.println("  -j N         Compile N files at the same time with --output-dir (default: number of processors).");
+        out.println("  --stats      Print the time and memory used by each phase and the size of the program.");
+        out.println("  --stats-json FILE  Like --stats, and write the statistics to FILE as JSON.");
+        out.println("  --watch      Keep running and recompile the input files whenever they change.");
+        out.println("  --cache DIRECTORY  Reuse the code compiled earlier from unchanged sources, kept in DIRECTORY.");
+        out.println("  --cache-size MB  Delete the least recently used entries of the cache above this size (default " + DEFAULT_CACHE_SIZE_MB + ").");
+        out.println("  --server     Keep running and compile the requests of clients, reusing the warmed-up JVM.");
+        out.println("  --use-server  Let a running compile server do the compilation, or compile here if there is none.");
+        out.println("  --port N     The local TCP port of the compile server (default " + DEFAULT_SERVER_PORT + ").");
         out.println("  --help       Show this help.");
     }
 
@@ -46,8 +97,10 @@ public class CommandLineOptions {
 
     static CommandLineOptions parse(String[] args) {
         CommandLineOptions options = new CommandLineOptions();
+        List<String> positional = new ArrayList<>();
 
-        for (String name : args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
             switch (name) {
                 case "--tokens":
                     options.setPhaseOption(PhaseOption.TOKENS);
@@ -64,34 +117,146 @@ public class CommandLineOptions {
                 case "--semant":
                     options.setPhaseOption(PhaseOption.SEMANT);
                     break;
+                case "--fold":
+                    options.setPhaseOption(PhaseOption.FOLD);
+                    break;
                 case "--vars":
                     options.setPhaseOption(PhaseOption.VARS);
                     break;
+                case "--ir":
+                    options.setPhaseOption(PhaseOption.IR);
+                    break;
                 case "--ershov":
                     options.ershovOptimization = true;
                     break;
                 case "--doWhile":
                     options.doWhileEnabled = true;
                     break;
+                case "--no-bounds-checks":
+                    options.boundsChecks = false;
+                    break;
+                case "--inline-threshold":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    try {
+                        options.inlineThreshold = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    }
+                    if (options.inlineThreshold < 0) usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    break;
+                case "--register-args":
+                    options.registerArguments = true;
+                    break;
+                case "--peephole-stats":
+                    options.peepholeStatistics = true;
+                    break;
+                case "--server":
+                    options.server = true;
+                    break;
+                case "--use-server":
+                    options.useServer = true;
+                    break;
+                case "--port":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    try {
+                        options.serverPort = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    }
+                    if (options.serverPort < 1 || options.serverPort > 65535) usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    break;
+                case "--output-dir":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    options.outputDirectory = args[i];
+                    break;
+                case "-j":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    try {
+                        options.jobs = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    }
+                    if (options.jobs < 1) usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    break;
+                case "--stats":
+                    options.statistics = true;
+                    break;
+                case "--stats-json":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    options.statistics = true;
+                    options.statisticsFile = args[i];
+                    break;
+                case "--watch":
+                    options.watch = true;
+                    break;
+                case "--cache":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    options.cacheDirectory = args[i];
+                    break;
+                case "--cache-size":
+                    if (++i == args.length) usageError("Missing value for option '%s'!", name);
+                    long megabytes = 0;
+                    try {
+                        megabytes = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) {
+                        usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    }
+                    // An empty cache would evict every entry right after storing it
+                    if (megabytes < 1 || megabytes > Long.MAX_VALUE / (1024 * 1024)) usageError("Invalid value '%s' for option '%s'!", args[i], name);
+                    options.cacheSize = megabytes * 1024 * 1024;
+                    break;
                 case "--help":
                     showUsage(System.out);
-                    exit(0);
+                    throw new UsageException(0);
                 default:
                     if (!name.startsWith("--")) {
-                        if (options.inFilename.isEmpty()) options.inFilename = name;
-                        else if (options.outFilename.isEmpty()) options.outFilename = name;
-                        else usageError("Too many positional arguments!");
+                        positional.add(name);
                     } else {
                         usageError("Unknown option '%s'!", name);
                     }
             }
         }
 
-        if (options.inFilename.isEmpty()) usageError("No input file!");
+        if (options.server) {
+            if (!positional.isEmpty()) usageError("The server does not take input files!");
+        } else if (positional.isEmpty()) {
+            usageError("No input file!");
+        } else if (options.outputDirectory != null) {
+            if (options.phaseOption != null) usageError("A phase option cannot be combined with --output-dir!");
+            if (options.statistics) usageError("--stats cannot be combined with --output-dir!");
+            options.inFilenames.addAll(positional);
+        } else {
+            if (positional.size() > 2) usageError("Too many positional arguments!");
+            options.inFilename = positional.get(0);
+            if (positional.size() == 2) options.outFilename = positional.get(1);
+            if (options.watch && options.outFilename.isEmpty()) usageError("--watch needs an output file or --output-dir!");
+        }
 
         return options;
     }
 
+    /**
+     * @return A copy of these options compiling a single input file into the given output file.
+     */
+    CommandLineOptions withFiles(String inFilename, String outFilename) {
+        CommandLineOptions options = new CommandLineOptions();
+        options.phaseOption = phaseOption;
+        options.ershovOptimization = ershovOptimization;
+        options.doWhileEnabled = doWhileEnabled;
+        options.boundsChecks = boundsChecks;
+        options.peepholeStatistics = peepholeStatistics;
+        options.inlineThreshold = inlineThreshold;
+        options.registerArguments = registerArguments;
+        options.cacheDirectory = cacheDirectory;
+        options.cacheSize = cacheSize;
+        options.watch = watch;
+        options.statistics = statistics;
+        options.statisticsFile = statisticsFile;
+        options.inFilename = inFilename;
+        options.outFilename = outFilename;
+        return options;
+    }
+
     PrintWriter getOutputWriter() throws IOException {
         // Unclosable stream to avoid closing stdout when no output file is given.
         // Source: https://stackoverflow.com/a/23791138
@@ -107,7 +272,7 @@ public class CommandLineOptions {
         }
 
         if (this.outFilename.isEmpty()) return new PrintWriter(new UnclosableOutputStream(System.out));
-        return new PrintWriter(new FileWriter(this.outFilename));
+        return new PrintWriter(new FileWriter(this.outFilename, StandardCharsets.UTF_8));
     }
 }
 
@@ -0,0 +1,22 @@
+package de.thm.mni.compilerbau;
+
+/**
+ * What the compilation of a program has produced, before it is written to the output file.
+ */
+class CompilationResult {
+    final int exitCode;
+    /**
+     * The generated code, empty if the compilation has failed or has ended after an earlier phase.
+     */
+    final String assembly;
+    /**
+     * The error messages printed by the compiler.
+     */
+    final byte[] diagnostics;
+
+    CompilationResult(int exitCode, String assembly, byte[] diagnostics) {
+        this.exitCode = exitCode;
+        this.assembly = assembly;
+        this.diagnostics = diagnostics;
+    }
+}
@@ -0,0 +1,66 @@
+package de.thm.mni.compilerbau;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sends a compilation to a running {@link CompileServer} and prints its result, as if the program had been compiled by
+ * this JVM. If no server is running, or it does not answer in time, the program is compiled in this JVM instead.
+ */
+final class CompileClient {
+    /**
+     * How long to wait for the server to accept the connection, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 1000;
+    /**
+     * How long to wait for the result, in milliseconds. The server may be busy with the requests of other clients.
+     */
+    private static final int RESPONSE_TIMEOUT = 60_000;
+
+    private CompileClient() {
+    }
+
+    /**
+     * @param options The parsed command line options.
+     * @param args    The command line arguments, which are passed on to the server.
+     * @return The exit code of the compilation.
+     */
+    static int compile(CommandLineOptions options, String[] args) {
+        int exitCode;
+        byte[] out;
+        byte[] err;
+        try (Socket socket = new Socket()) {
+            String token = Files.readString(CompileServer.tokenFile(options.serverPort), StandardCharsets.UTF_8);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.serverPort), CONNECT_TIMEOUT);
+            socket.setSoTimeout(RESPONSE_TIMEOUT);
+
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeUTF(token);
+            request.writeUTF(Path.of("").toAbsolutePath().toString());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            exitCode = response.readInt();
+            out = CompileServer.readBytes(response);
+            err = CompileServer.readBytes(response);
+        } catch (IOException e) {
+            // No server is running, it has gone away or is too busy to answer: nothing has been printed yet
+            return Main.compile(options);
+        }
+
+        System.out.write(out, 0, out.length);
+        System.out.flush();
+        System.err.write(err, 0, err.length);
+        System.err.flush();
+        return exitCode;
+    }
+}
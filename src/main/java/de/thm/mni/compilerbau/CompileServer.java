@@ -0,0 +1,193 @@
+package de.thm.mni.compilerbau;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compiles the requests of {@link CompileClient}s in a JVM which keeps running, so the start of the JVM, the loading of
+ * the scanner and parser tables and the warm-up of the JIT compiler are paid only once for many compilations.
+ * <p>
+ * The server listens on a TCP port of the loopback interface. A request consists of a secret token, the working
+ * directory of the client and its command line arguments, the response of the exit code and everything the compiler
+ * has printed to System.out and System.err, which includes the assembly code if no output file is given. Strings are
+ * sent with {@link DataOutputStream#writeUTF(String)}, the printed output as byte arrays prefixed with their length.
+ * <p>
+ * The server reads and writes files with the rights of its user, so it only compiles for clients which know the token.
+ * The token is created anew by every server and written to a file only its user can read (see {@link #tokenFile(int)}).
+ * Each connection is handled by its own thread, and a client which does not send its request in time is dropped, so a
+ * stalled connection cannot block the others. The requests are still compiled one after the other, since System.out
+ * and System.err are redirected while compiling. The procedures of each program are compiled in parallel.
+ */
+class CompileServer {
+    /**
+     * How long to wait for a client to send its request, in milliseconds.
+     */
+    private static final int REQUEST_TIMEOUT = 10_000;
+
+    private final int port;
+    private final Main.Frontend frontend = new Main.Frontend();
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "compile-server-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private byte[] token;
+
+    /**
+     * @param port The port to listen on.
+     */
+    CompileServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Accepts requests until the server is killed.
+     *
+     * @throws IOException If the port cannot be opened.
+     */
+    void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            // Only written once the port is ours, so the token file of another server is never replaced
+            Path tokenFile = tokenFile(port);
+            token = writeToken(tokenFile);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(tokenFile);
+                } catch (IOException ignored) {
+                }
+            }));
+            System.err.printf("Compile server listening on port %d, token in '%s'\n", port, tokenFile);
+            while (true) {
+                Socket socket = serverSocket.accept();
+                workers.execute(() -> handleConnection(socket));
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(REQUEST_TIMEOUT);
+            handleRequest(socket);
+        } catch (IOException e) {
+            System.err.println("Request failed: " + e.getMessage());
+        }
+    }
+
+    private void handleRequest(Socket socket) throws IOException {
+        DataInputStream request = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        if (!MessageDigest.isEqual(request.readUTF().getBytes(StandardCharsets.UTF_8), token)) {
+            System.err.println("Request rejected: Wrong token");
+            return;
+        }
+        Path workingDirectory = Path.of(request.readUTF());
+        String[] args = new String[request.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = request.readUTF();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exitCode;
+        synchronized (this) {
+            exitCode = compile(workingDirectory, args, out, err);
+        }
+
+        DataOutputStream response = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        response.writeInt(exitCode);
+        writeBytes(response, out.toByteArray());
+        writeBytes(response, err.toByteArray());
+        response.flush();
+    }
+
+    /**
+     * Compiles like {@link Main#compile(CommandLineOptions)}, collecting the printed output.
+     */
+    private int compile(Path workingDirectory, String[] args, ByteArrayOutputStream out, ByteArrayOutputStream err) {
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+        try {
+            CommandLineOptions options = CommandLineOptions.parse(args);
+            // The file and directory names are relative to the working directory of the client
+            options.inFilename = workingDirectory.resolve(options.inFilename).toString();
+            if (!options.outFilename.isEmpty()) options.outFilename = workingDirectory.resolve(options.outFilename).toString();
+            if (options.cacheDirectory != null) options.cacheDirectory = workingDirectory.resolve(options.cacheDirectory).toString();
+            if (options.statisticsFile != null) options.statisticsFile = workingDirectory.resolve(options.statisticsFile).toString();
+            return Main.compile(options, frontend, System.err);
+        } catch (CommandLineOptions.UsageException e) {
+            return e.exitCode;
+        } catch (StackOverflowError e) {
+            // Would end the compiler anyway, but must not end the server
+            System.err.println("An error occurred: The program is nested too deeply.");
+            return 1;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+        }
+    }
+
+    /**
+     * @return The file holding the token of the server listening on a port, in the home directory of the user.
+     */
+    static Path tokenFile(int port) {
+        return Path.of(System.getProperty("user.home"), ".spl-compile-server", port + ".token");
+    }
+
+    /**
+     * Creates a new random token and writes it to a file only the user can read and write.
+     *
+     * @return The token.
+     */
+    private static byte[] writeToken(Path tokenFile) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        byte[] token = hex.toString().getBytes(StandardCharsets.UTF_8);
+
+        Path directory = tokenFile.getParent();
+        Path temporary;
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+            temporary = Files.createTempFile(directory, null, ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            // E.g. on Windows, where the home directory is only accessible to its user anyway
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, null, ".tmp");
+            File file = temporary.toFile();
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(false, false);
+            file.setWritable(true, true);
+        }
+        Files.write(temporary, token);
+        Files.move(temporary, tokenFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return token;
+    }
+
+    static void writeBytes(DataOutputStream stream, byte[] bytes) throws IOException {
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream stream) throws IOException {
+        byte[] bytes = new byte[stream.readInt()];
+        stream.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,306 @@
+package de.thm.mni.compilerbau;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.Visitor;
+import de.thm.mni.compilerbau.table.Entry;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.utils.PhaseEvent;
+import java_cup.runtime.Symbol;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures what each phase of the compiler costs and how large the compiled program is (--stats).
+ * <p>
+ * The phases partly run on the threads of the common fork-join pool, so the CPU time and the bytes allocated are
+ * summed over all live threads of the JVM, as reported by {@link ThreadMXBean} and its per-thread allocation counters.
+ * This is exact as long as nothing else runs in the JVM, which is why --stats cannot be combined with --output-dir.
+ * When the statistics are disabled, nothing is measured.
+ * <p>
+ * Independently of --stats, every phase is recorded as a {@link PhaseEvent} for the Java Flight Recorder, which costs
+ * next to nothing while no recording is running.
+ */
+class CompilerStatistics {
+    private static class Phase {
+        final String name;
+        long wallTime;
+        long cpuTime;
+        long allocatedBytes;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private final boolean enabled;
+    private final String inFilename;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<Phase> phases = new ArrayList<>();
+    private Phase current = null;
+    private PhaseEvent currentEvent = null;
+    private long wallTimeAtStart;
+    private long cpuTimeAtStart;
+    private long allocatedBytesAtStart;
+
+    int tokens = 0;
+    int astNodes = 0;
+    int symbolTableEntries = 0;
+    int instructions = 0;
+
+    /**
+     * @param enabled    Whether the statistics are measured (--stats).
+     * @param inFilename The name of the compiled file.
+     */
+    CompilerStatistics(boolean enabled, String inFilename) {
+        this.enabled = enabled;
+        this.inFilename = inFilename;
+    }
+
+    /**
+     * Ends the current phase, if any, and starts measuring the next one.
+     */
+    void startPhase(String name) {
+        endPhase();
+        currentEvent = new PhaseEvent(name, inFilename);
+        currentEvent.begin();
+        if (!enabled) return;
+        current = new Phase(name);
+        phases.add(current);
+        wallTimeAtStart = System.nanoTime();
+        cpuTimeAtStart = cpuTime();
+        allocatedBytesAtStart = allocatedBytes();
+    }
+
+    /**
+     * Ends the current phase, e.g. when the compiler stops after it.
+     */
+    void endPhase() {
+        if (currentEvent != null) {
+            currentEvent.commit();
+            currentEvent = null;
+        }
+        if (!enabled || current == null) return;
+        current.wallTime = System.nanoTime() - wallTimeAtStart;
+        current.cpuTime = cpuTime() - cpuTimeAtStart;
+        current.allocatedBytes = allocatedBytes() - allocatedBytesAtStart;
+        current = null;
+    }
+
+    /**
+     * @return A scanner counting the tokens read from the given one.
+     */
+    java_cup.runtime.Scanner countTokens(java_cup.runtime.Scanner scanner) {
+        if (!enabled) return scanner;
+        return () -> {
+            Symbol token = scanner.next_token();
+            tokens++;
+            return token;
+        };
+    }
+
+    void countNodes(Program program) {
+        if (!enabled) return;
+        program.accept(new NodeCounter());
+    }
+
+    void countEntries(SymbolTable globalTable) {
+        if (!enabled) return;
+        for (Entry entry : globalTable.localEntries()) {
+            symbolTableEntries++;
+            if (entry instanceof ProcedureEntry && ((ProcedureEntry) entry).localTable != null) {
+                symbolTableEntries += ((ProcedureEntry) entry).localTable.localEntries().size();
+            }
+        }
+    }
+
+    private long cpuTime() {
+        long sum = 0;
+        for (long id : threads.getAllThreadIds()) {
+            long time = threads.getThreadCpuTime(id);
+            if (time > 0) sum += time;
+        }
+        return sum;
+    }
+
+    private long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return 0;
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long sum = 0;
+        for (long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) sum += bytes;
+        }
+        return sum;
+    }
+
+    /**
+     * Prints the statistics as a table.
+     */
+    void print(PrintStream out) {
+        if (!enabled) return;
+        out.println("Compiler statistics:");
+        out.printf("  %-10s %12s %12s %16s\n", "phase", "wall ms", "cpu ms", "allocated bytes");
+        for (Phase phase : phases) {
+            out.printf(Locale.ROOT, "  %-10s %12.3f %12.3f %16d\n", phase.name, phase.wallTime / 1e6, phase.cpuTime / 1e6, phase.allocatedBytes);
+        }
+        out.printf("  tokens               %d\n", tokens);
+        out.printf("  AST nodes            %d\n", astNodes);
+        out.printf("  symbol table entries %d\n", symbolTableEntries);
+        out.printf("  instructions         %d\n", instructions);
+    }
+
+    /**
+     * Writes the statistics as a JSON object, e.g. to track the performance of the compiler in CI.
+     */
+    void writeJson(Path file) throws IOException {
+        if (!enabled) return;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("{");
+            out.printf("  \"file\": \"%s\",\n", inFilename.replace("\\", "\\\\").replace("\"", "\\\""));
+            out.println("  \"phases\": [");
+            for (int i = 0; i < phases.size(); i++) {
+                Phase phase = phases.get(i);
+                out.printf("    {\"name\": \"%s\", \"wallNanos\": %d, \"cpuNanos\": %d, \"allocatedBytes\": %d}%s\n",
+                        phase.name, phase.wallTime, phase.cpuTime, phase.allocatedBytes, i + 1 < phases.size() ? "," : "");
+            }
+            out.println("  ],");
+            out.printf("  \"tokens\": %d,\n", tokens);
+            out.printf("  \"astNodes\": %d,\n", astNodes);
+            out.printf("  \"symbolTableEntries\": %d,\n", symbolTableEntries);
+            out.printf("  \"instructions\": %d\n", instructions);
+            out.println("}");
+        }
+    }
+
+    /**
+     * Counts all nodes of an abstract syntax tree.
+     */
+    private class NodeCounter implements Visitor {
+        private void visitAll(List<? extends Node> nodes) {
+            for (Node node : nodes) {
+                node.accept(this);
+            }
+        }
+
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            astNodes++;
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        @Override
+        public void visit(ArrayTypeExpression arrayTypeExpression) {
+            astNodes++;
+            arrayTypeExpression.baseType.accept(this);
+        }
+
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            astNodes++;
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            astNodes++;
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            astNodes++;
+            visitAll(callStatement.arguments);
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            astNodes++;
+            visitAll(compoundStatement.statements);
+        }
+
+        @Override
+        public void visit(EmptyStatement emptyStatement) {
+            astNodes++;
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            astNodes++;
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            if (ifStatement.elsePart != null) ifStatement.elsePart.accept(this);
+        }
+
+        @Override
+        public void visit(IntLiteral intLiteral) {
+            astNodes++;
+        }
+
+        @Override
+        public void visit(NamedTypeExpression namedTypeExpression) {
+            astNodes++;
+        }
+
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            astNodes++;
+        }
+
+        @Override
+        public void visit(ParameterDeclaration parameterDeclaration) {
+            astNodes++;
+            parameterDeclaration.typeExpression.accept(this);
+        }
+
+        @Override
+        public void visit(ProcedureDeclaration procedureDeclaration) {
+            astNodes++;
+            visitAll(procedureDeclaration.parameters);
+            visitAll(procedureDeclaration.variables);
+            visitAll(procedureDeclaration.body);
+        }
+
+        @Override
+        public void visit(Program program) {
+            astNodes++;
+            visitAll(program.declarations);
+        }
+
+        @Override
+        public void visit(TypeDeclaration typeDeclaration) {
+            astNodes++;
+            typeDeclaration.typeExpression.accept(this);
+        }
+
+        @Override
+        public void visit(VariableDeclaration variableDeclaration) {
+            astNodes++;
+            variableDeclaration.typeExpression.accept(this);
+        }
+
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            astNodes++;
+            variableExpression.variable.accept(this);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            astNodes++;
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+    }
+}
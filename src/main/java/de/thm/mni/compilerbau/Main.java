@@ -6,7 +6,10 @@ import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
 import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
 import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
 import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_fold.ConstantFolder;
 import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._05b_irgen.IrGenerator;
+import de.thm.mni.compilerbau.phases._05c_optimize.IrOptimizer;
 import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
 import de.thm.mni.compilerbau.table.Identifier;
 import de.thm.mni.compilerbau.utils.SplError;
@@ -14,10 +17,11 @@ import java_cup.runtime.DefaultSymbolFactory;
 import java_cup.runtime.Symbol;
 import java_cup.runtime.SymbolFactory;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 import static java.lang.System.exit;
 
@@ -30,6 +34,15 @@ class Main {
     @SuppressWarnings("deprecation")
     private static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
 
+    /**
+     * The scanner and parser of a thread. They are reset for every input file instead of being created anew when many
+     * files are compiled by one JVM.
+     */
+    static class Frontend {
+        final Scanner scanner = new Scanner(Reader.nullReader());
+        final Parser parser = new Parser(scanner, symbolFactory);
+    }
+
     /**
      * Prints a token to stdout to realize the --tokens output.
      *
@@ -50,66 +63,187 @@ class Main {
 
 
     public static void main(String[] args) {
-        CommandLineOptions options = CommandLineOptions.parse(args);
+        try {
+            CommandLineOptions options = CommandLineOptions.parse(args);
+            if (options.server) {
+                new CompileServer(options.serverPort).run();
+            } else if (options.watch) {
+                new Watcher(options).run();
+            } else if (options.outputDirectory != null) {
+                exit(new BatchCompiler(options).run());
+            } else if (options.useServer) {
+                exit(CompileClient.compile(options, args));
+            } else {
+                exit(compile(options));
+            }
+        } catch (CommandLineOptions.UsageException e) {
+            exit(e.exitCode);
+        } catch (IOException e) {
+            System.err.println("An error occurred: " + e.getMessage());
+            exit(1);
+        }
+    }
+
+    /**
+     * Runs the compiler phases with a new scanner and parser, printing error messages to System.err.
+     */
+    static int compile(CommandLineOptions options) {
+        return compile(options, new Frontend(), System.err);
+    }
+
+    /**
+     * Runs the compiler phases on the input file of the options. The output of the phases is printed to System.out,
+     * which the {@link CompileServer} redirects to the client.
+     * <p>
+     * With --cache, the result of a full compilation is looked up in the {@link BuildCache} first, and stored there if
+     * the phases had to be run.
+     *
+     * @param options  The command line options.
+     * @param frontend The scanner and parser to use.
+     * @param err      Where to print the error messages.
+     * @return The exit code: 0 if the phases have been run successfully, the error code otherwise.
+     */
+    static int compile(CommandLineOptions options, Frontend frontend, PrintStream err) {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(Path.of(options.inFilename));
+        } catch (IOException e) {
+            err.printf("An error occurred: Cannot open input file '%s'\n", options.inFilename);
+            return 1;
+        }
+
+        // Only the code is cached, not the output of the phases or the statistics
+        boolean cached = options.cacheDirectory != null && options.phaseOption == null && !options.peepholeStatistics && !options.statistics;
+        BuildCache cache = cached ? new BuildCache(Path.of(options.cacheDirectory), options.cacheSize) : null;
+        String key = cached ? BuildCache.key(source, options) : null;
+        CompilationResult result = cached ? cache.lookup(key) : null;
+        CompilerStatistics statistics = new CompilerStatistics(options.statistics, options.inFilename);
+        if (result == null) {
+            result = runPhases(options, frontend, source, statistics);
+            if (cached) cache.store(key, result);
+        }
+
+        err.write(result.diagnostics, 0, result.diagnostics.length);
+        statistics.print(err);
+        err.flush();
+        if (options.statisticsFile != null) {
+            try {
+                statistics.writeJson(Path.of(options.statisticsFile));
+            } catch (IOException e) {
+                err.printf("An error occurred: Cannot write statistics file '%s'\n", options.statisticsFile);
+                return 1;
+            }
+        }
+        if (result.exitCode != 0 || options.phaseOption != null) return result.exitCode;
+        // While watching, an unchanged output file is not written, so the steps after the compiler are not triggered
+        if (options.watch && isUnchanged(options.outFilename, result.assembly)) return 0;
+        try (PrintWriter out = options.getOutputWriter()) {
+            out.print(result.assembly);
+        } catch (IOException e) {
+            err.printf("An error occurred: Cannot open output file '%s'\n", options.outFilename);
+            return 1;
+        }
+        return 0;
+    }
 
-        try (FileReader input = new FileReader(options.inFilename)) {
-            Scanner scanner = new Scanner(input);
+    private static boolean isUnchanged(String filename, String assembly) {
+        try {
+            return Arrays.equals(Files.readAllBytes(Path.of(filename)), assembly.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the compiler phases on the source of a program, collecting the generated code and the error messages.
+     */
+    private static CompilationResult runPhases(CommandLineOptions options, Frontend frontend, byte[] source, CompilerStatistics statistics) {
+        StringWriter assembly = new StringWriter();
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        int exitCode;
+        try (PrintWriter out = new PrintWriter(assembly); PrintStream err = new PrintStream(diagnostics, true)) {
+            exitCode = runPhases(options, frontend, new InputStreamReader(new ByteArrayInputStream(source)), out, err, statistics);
+        } finally {
+            statistics.endPhase();
+        }
+        return new CompilationResult(exitCode, assembly.toString(), diagnostics.toByteArray());
+    }
+
+    private static int runPhases(CommandLineOptions options, Frontend frontend, Reader input, PrintWriter out, PrintStream err, CompilerStatistics statistics) {
+        try {
+            statistics.startPhase("parse");
+            Scanner scanner = frontend.scanner;
+            scanner.yyreset(input);
             scanner.options = options; // Inject the command line options into the scanner to grant it access to feature flags.
 
             if (options.phaseOption == CommandLineOptions.PhaseOption.TOKENS) {
                 Symbol token;
                 do {
                     token = scanner.next_token();
+                    statistics.tokens++;
                     showToken(token);
                 } while (token.sym != Sym.EOF);
-                exit(0);
+                return 0;
             }
 
             //Parse errors are caught by the below exception handler
-            Parser parser = new Parser(scanner, symbolFactory);
+            Parser parser = frontend.parser;
             parser.options = options; // Inject the command line options into the parser to grant it access to feature flags.
+            parser.setScanner(statistics.countTokens(scanner));
             Program program = (Program) parser.parse().value; // Change 'parse' to 'debug_parse' for detailed parsing output. Don't forget to change it back
+            statistics.countNodes(program);
 
             if (options.phaseOption == CommandLineOptions.PhaseOption.PARSE) {
                 System.out.println("Input parsed successfully!");
-                exit(0);
+                return 0;
             }
 
             if (options.phaseOption == CommandLineOptions.PhaseOption.ABSYN) {
                 System.out.println(program);
-                exit(0);
+                return 0;
             }
 
+            statistics.startPhase("tables");
             final var table = new TableBuilder(options.phaseOption == CommandLineOptions.PhaseOption.TABLES).buildSymbolTable(program);
-            if (options.phaseOption == CommandLineOptions.PhaseOption.TABLES) exit(0);
+            statistics.countEntries(table);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.TABLES) return 0;
+
+            statistics.startPhase("semant");
 
             new ProcedureBodyChecker().checkProcedures(program, table);
             if (options.phaseOption == CommandLineOptions.PhaseOption.SEMANT) {
                 System.out.println("No semantic errors found!");
-                exit(0);
+                return 0;
             }
 
-            new VarAllocator(options.phaseOption == CommandLineOptions.PhaseOption.VARS, options.ershovOptimization).allocVars(program, table);
-            if (options.phaseOption == CommandLineOptions.PhaseOption.VARS) exit(0);
+            statistics.startPhase("fold");
+            new ConstantFolder(options.phaseOption == CommandLineOptions.PhaseOption.FOLD).foldProgram(program);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.FOLD) return 0;
 
-            try (PrintWriter out = options.getOutputWriter()) {
-                new CodeGenerator(out, options.ershovOptimization).generateCode(program, table);
-            } catch (IOException e) {
-                System.err.printf("An error occurred: Cannot open output file '%s'\n", options.outFilename);
-                exit(1);
-            }
-        } catch (FileNotFoundException e) {
-            System.err.printf("An error occurred: Cannot open input file '%s'\n", options.inFilename);
-            exit(1);
+            statistics.startPhase("vars");
+            new VarAllocator(options.phaseOption == CommandLineOptions.PhaseOption.VARS, options.ershovOptimization, options.registerArguments).allocVars(program, table);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.VARS) return 0;
+
+            statistics.startPhase("irgen");
+            final var procedures = new IrGenerator(options.ershovOptimization).generateIr(program, table);
+            statistics.startPhase("optimize");
+            new IrOptimizer(options.phaseOption == CommandLineOptions.PhaseOption.IR, options.boundsChecks, options.inlineThreshold).optimize(procedures);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.IR) return 0;
+
+            statistics.startPhase("codegen");
+            CodeGenerator codeGenerator = new CodeGenerator(out, options.peepholeStatistics ? err : null);
+            codeGenerator.generateCode(procedures);
+            statistics.instructions = codeGenerator.emittedInstructions();
         } catch (SplError error) {
-            System.err.println("An error occurred:");
-            if (error.position.line >= 0) System.err.printf("Line %d, Column %d: ", error.position.line, error.position.column);
-            System.err.println(error.getMessage());
-            exit(error.errorCode);
+            err.println("An error occurred:");
+            if (error.position.line >= 0) err.printf("Line %d, Column %d: ", error.position.line, error.position.column);
+            err.println(error.getMessage());
+            return error.errorCode;
         } catch (Exception e) {
-            System.err.println("An error occurred: " + e.getMessage());
-            e.printStackTrace();
-            exit(1);
+            err.println("An error occurred: " + e.getMessage());
+            e.printStackTrace(err);
+            return 1;
         }
+        return 0;
     }
 }
@@ -0,0 +1,171 @@
+package de.thm.mni.compilerbau;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Compiles the input files and then keeps recompiling the files which have changed (--watch), in the same JVM.
+ * <p>
+ * The directories holding the input files are watched by a {@link WatchService}; input directories are watched with all
+ * their subdirectories, so new .spl files are compiled as well. Editors often save a file in several steps, so the
+ * events arriving shortly after each other are collected before the changed files are compiled, each of them once.
+ * The output files are only written if their code has changed (see {@link Main#compile(CommandLineOptions)}).
+ */
+class Watcher {
+    /**
+     * How long to wait for further events after a change, in milliseconds.
+     */
+    private static final int SETTLE_TIME = 100;
+
+    private final CommandLineOptions options;
+    private final Main.Frontend frontend = new Main.Frontend();
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    /**
+     * The input files named on the command line, with their output files.
+     */
+    private final Map<Path, Path> inputFiles = new HashMap<>();
+    /**
+     * The input directories, all .spl files below them are compiled.
+     */
+    private final List<Path> inputDirectories = new ArrayList<>();
+
+    Watcher(CommandLineOptions options) throws IOException {
+        this.options = options;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Compiles all input files, then recompiles them on every change until the compiler is stopped.
+     */
+    void run() throws IOException {
+        if (options.outputDirectory == null) {
+            inputFiles.put(normalize(Path.of(options.inFilename)), Path.of(options.outFilename));
+            Main.compile(options, frontend, System.err);
+        } else {
+            Path outputDirectory = Path.of(options.outputDirectory);
+            for (String name : options.inFilenames) {
+                Path path = normalize(Path.of(name));
+                if (Files.isDirectory(path)) {
+                    inputDirectories.add(path);
+                } else {
+                    inputFiles.put(path, BatchCompiler.outputFile(outputDirectory, path.getFileName()));
+                }
+            }
+            new BatchCompiler(options).run();
+        }
+
+        for (Path inputFile : inputFiles.keySet()) {
+            watchDirectory(inputFile.getParent());
+        }
+        for (Path inputDirectory : inputDirectories) {
+            watchTree(inputDirectory);
+        }
+        System.err.println("Watching for changes...");
+
+        try {
+            while (true) {
+                Set<Path> changed = new TreeSet<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    collectChanges(key, changed);
+                    key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+                }
+                for (Path source : changed) {
+                    recompile(source);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changed) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events have been lost, every input file may have changed
+                changed.addAll(inputFiles.keySet());
+                for (Path inputDirectory : inputDirectories) {
+                    changed.addAll(sourcesBelow(inputDirectory));
+                }
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+                // A new subdirectory of an input directory, its files have not been seen yet
+                if (event.kind() == ENTRY_CREATE && inputDirectoryOf(path) != null) {
+                    watchTree(path);
+                    changed.addAll(sourcesBelow(path));
+                }
+            } else if (outputOf(path) != null) {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) watchedDirectories.remove(key);
+    }
+
+    private void recompile(Path source) {
+        if (!Files.isRegularFile(source)) return;
+        Path output = outputOf(source);
+        try {
+            if (output.getParent() != null) Files.createDirectories(output.getParent());
+        } catch (IOException e) {
+            System.err.printf("An error occurred: Cannot create directory '%s'\n", output.getParent());
+            return;
+        }
+        int exitCode = Main.compile(options.withFiles(source.toString(), output.toString()), frontend, System.err);
+        System.err.printf("%s: %s\n", source, exitCode == 0 ? "compiled" : "failed");
+    }
+
+    /**
+     * @return The output file of a source file, or null if the file is no input file.
+     */
+    private Path outputOf(Path source) {
+        if (inputFiles.containsKey(source)) return inputFiles.get(source);
+        Path inputDirectory = inputDirectoryOf(source);
+        if (inputDirectory == null || !source.getFileName().toString().endsWith(".spl")) return null;
+        return BatchCompiler.outputFile(Path.of(options.outputDirectory), inputDirectory.relativize(source));
+    }
+
+    /**
+     * @return The input directory a path lies in, or null.
+     */
+    private Path inputDirectoryOf(Path path) {
+        for (Path inputDirectory : inputDirectories) {
+            if (path.startsWith(inputDirectory)) return inputDirectory;
+        }
+        return null;
+    }
+
+    private void watchDirectory(Path directory) throws IOException {
+        if (watchedDirectories.containsValue(directory)) return;
+        watchedDirectories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+    }
+
+    private void watchTree(Path root) throws IOException {
+        List<Path> directories;
+        try (Stream<Path> walk = Files.walk(root)) {
+            directories = walk.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (Path directory : directories) {
+            watchDirectory(directory);
+        }
+    }
+
+    private static List<Path> sourcesBelow(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".spl")).collect(Collectors.toList());
+        }
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
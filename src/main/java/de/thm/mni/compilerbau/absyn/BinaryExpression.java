@@ -1,7 +1,6 @@
 package de.thm.mni.compilerbau.absyn;
 
 import de.thm.mni.compilerbau.absyn.visitor.Visitor;
-import de.thm.mni.compilerbau.utils.NotImplemented;
 
 import java.util.List;
 import java.util.Map;
@@ -48,11 +47,74 @@ public class BinaryExpression extends Expression {
         /**
          * Flips the operator if it is a comparison operator
          *
-         * @return The "opposite" comparison operator
+         * @return The "opposite" comparison operator, which holds exactly when this operator does not hold
          */
         public Operator flipComparison() {
+            switch (this) {
+                case EQU:
+                    return NEQ;
+                case NEQ:
+                    return EQU;
+                case LST:
+                    return GRE;
+                case LSE:
+                    return GRT;
+                case GRT:
+                    return LSE;
+                case GRE:
+                    return LST;
+                default:
+                    throw new UnsupportedOperationException("Only comparison operators can be flipped!");
+            }
+        }
 
-            throw new NotImplemented();     //TODO: Implement yourself if you need this
+        /**
+         * Computes the value of an arithmetic operation like ECO32 does, wrapping around on overflow.
+         * Division rounds towards zero. The divisor must not be zero, since this has to be detected at runtime.
+         *
+         * @param left  The value of the left operand.
+         * @param right The value of the right operand.
+         * @return The result of the operation.
+         */
+        public int evaluate(int left, int right) {
+            switch (this) {
+                case ADD:
+                    return left + right;
+                case SUB:
+                    return left - right;
+                case MUL:
+                    return left * right;
+                case DIV:
+                    return left / right;
+                default:
+                    throw new UnsupportedOperationException("Only arithmetic operators can be evaluated!");
+            }
+        }
+
+        /**
+         * Checks whether a comparison holds for two values.
+         *
+         * @param left  The value of the left operand.
+         * @param right The value of the right operand.
+         * @return true if the comparison holds.
+         */
+        public boolean holds(int left, int right) {
+            switch (this) {
+                case EQU:
+                    return left == right;
+                case NEQ:
+                    return left != right;
+                case LST:
+                    return left < right;
+                case LSE:
+                    return left <= right;
+                case GRT:
+                    return left > right;
+                case GRE:
+                    return left >= right;
+                default:
+                    throw new UnsupportedOperationException("Only comparison operators can be checked!");
+            }
         }
     }
 
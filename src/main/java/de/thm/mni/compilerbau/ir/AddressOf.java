@@ -0,0 +1,38 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction computes the address of the frame slot of a local variable or parameter.
+ * It is needed for arrays and for variables passed as reference arguments.
+ * <p>
+ * Example: %4 = &amp;a
+ */
+public class AddressOf extends Instruction {
+    public final LocalVariable variable;
+
+    public AddressOf(Temp target, LocalVariable variable) {
+        this.target = target;
+        this.variable = variable;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of();
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = &%s", target, variable);
+    }
+}
@@ -0,0 +1,25 @@
+package de.thm.mni.compilerbau.ir;
+
+/**
+ * This operand stands for the register an argument of the procedure has been passed in (see the option
+ * --register-args). It is only introduced by the code generator and may only be read at the beginning of the entry
+ * block, before any call overwrites it.
+ */
+public class ArgumentRegister extends Operand {
+    public final int number;
+    public final LocalVariable parameter;
+
+    /**
+     * @param number    The number of the register.
+     * @param parameter The parameter passed in the register.
+     */
+    public ArgumentRegister(int number, LocalVariable parameter) {
+        this.number = number;
+        this.parameter = parameter;
+    }
+
+    @Override
+    public String toString() {
+        return "$" + number;
+    }
+}
@@ -0,0 +1,62 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a basic block of a {@link ControlFlowGraph}.
+ * <p>
+ * A basic block is a sequence of instructions that is always executed from the beginning to the end. Control only
+ * enters at the first instruction and leaves through the {@link Terminator} at the end of the block.
+ */
+public class BasicBlock {
+    public final int number;
+    public final List<Instruction> instructions = new ArrayList<>();
+    public Terminator terminator = null;
+    /**
+     * The blocks whose terminators may transfer control to this block.
+     * This list is only valid after {@link ControlFlowGraph#updatePredecessors()} has been called.
+     */
+    public final List<BasicBlock> predecessors = new ArrayList<>();
+
+    /**
+     * Creates a new empty block. Use {@link ControlFlowGraph#newBlock()} to add a block to a procedure.
+     *
+     * @param number The number of the block, unique inside its procedure.
+     */
+    BasicBlock(int number) {
+        this.number = number;
+    }
+
+    /**
+     * @return The blocks control may be transferred to at the end of this block.
+     */
+    public List<BasicBlock> successors() {
+        return terminator.successors();
+    }
+
+    /**
+     * @return The instructions of this block including its terminator.
+     */
+    public List<Instruction> allInstructions() {
+        List<Instruction> all = new ArrayList<>(instructions);
+        all.add(terminator);
+        return all;
+    }
+
+    /**
+     * @return The name of this block as it is used in the textual representation of the IR.
+     */
+    public String label() {
+        return "B" + number;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder(label()).append(":\n");
+        for (Instruction instruction : allInstructions()) {
+            string.append('\t').append(instruction).append('\n');
+        }
+        return string.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package de.thm.mni.compilerbau.ir;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction combines two operands with an arithmetic operator.
+ * <p>
+ * Example: %3 = %1 * 4
+ */
+public class BinaryOperation extends Instruction {
+    public final BinaryExpression.Operator operator;
+    public Operand left;
+    public Operand right;
+
+    /**
+     * @param target   The temporary receiving the result.
+     * @param operator An arithmetic operator (see {@link BinaryExpression.Operator#isArithmetic()}).
+     * @param left     The left operand.
+     * @param right    The right operand.
+     */
+    public BinaryOperation(Temp target, BinaryExpression.Operator operator, Operand left, Operand right) {
+        this.target = target;
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(left, right);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        left = replacement.apply(left);
+        right = replacement.apply(right);
+    }
+
+    /**
+     * A division stops the program if its divisor is 0, so it can only be removed if the divisor is a constant other
+     * than 0.
+     */
+    @Override
+    public boolean hasSideEffects() {
+        return operator == BinaryExpression.Operator.DIV && !(right instanceof Constant && ((Constant) right).value != 0);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s %s %s", target, left, Operators.symbol(operator), right);
+    }
+}
@@ -0,0 +1,40 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction aborts the program with an index error unless 0 &lt;= index &lt; size holds.
+ * <p>
+ * Example: check %3 &lt; 10
+ */
+public class BoundsCheck extends Instruction {
+    public Operand index;
+    public Operand size;
+
+    public BoundsCheck(Operand index, Operand size) {
+        this.index = index;
+        this.size = size;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(index, size);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        index = replacement.apply(index);
+        size = replacement.apply(size);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("check %s < %s", index, size);
+    }
+}
@@ -0,0 +1,67 @@
+package de.thm.mni.compilerbau.ir;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction compares two operands and transfers control to one of two blocks depending on the outcome.
+ * <p>
+ * Example: if %1 &lt; %2 goto B1 else B2
+ */
+public class Branch extends Terminator {
+    public BinaryExpression.Operator comparison;
+    public Operand left;
+    public Operand right;
+    public BasicBlock ifTrue;
+    public BasicBlock ifFalse;
+
+    /**
+     * @param comparison A comparison operator (see {@link BinaryExpression.Operator#isComparison()}).
+     * @param left       The left operand of the comparison.
+     * @param right      The right operand of the comparison.
+     * @param ifTrue     The block executed next if the comparison holds.
+     * @param ifFalse    The block executed next otherwise.
+     */
+    public Branch(BinaryExpression.Operator comparison, Operand left, Operand right, BasicBlock ifTrue, BasicBlock ifFalse) {
+        this.comparison = comparison;
+        this.left = left;
+        this.right = right;
+        this.ifTrue = ifTrue;
+        this.ifFalse = ifFalse;
+    }
+
+    @Override
+    public List<BasicBlock> successors() {
+        return List.of(ifTrue, ifFalse);
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldSuccessor, BasicBlock newSuccessor) {
+        if (ifTrue == oldSuccessor) ifTrue = newSuccessor;
+        if (ifFalse == oldSuccessor) ifFalse = newSuccessor;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(left, right);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        left = replacement.apply(left);
+        right = replacement.apply(right);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("if %s %s %s goto %s else %s", left, Operators.symbol(comparison), right,
+                ifTrue.label(), ifFalse.label());
+    }
+}
@@ -0,0 +1,52 @@
+package de.thm.mni.compilerbau.ir;
+
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * This instruction calls a procedure. For reference parameters, the argument is the address of the variable passed.
+ * <p>
+ * Example: call printi(%7)
+ */
+public class Call extends Instruction {
+    public final Identifier procedureName;
+    public final ProcedureEntry procedure;
+    public final List<Operand> arguments;
+    /**
+     * A tail call is the last action of its procedure. The called procedure reuses the frame of the caller and returns
+     * directly to the caller's caller.
+     */
+    public boolean isTailCall = false;
+
+    public Call(Identifier procedureName, ProcedureEntry procedure, List<Operand> arguments) {
+        this.procedureName = procedureName;
+        this.procedure = procedure;
+        this.arguments = new ArrayList<>(arguments);
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.copyOf(arguments);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        arguments.replaceAll(replacement);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s(%s)", isTailCall ? "tail call" : "call", procedureName,
+                arguments.stream().map(Object::toString).collect(Collectors.joining(", ")));
+    }
+}
@@ -0,0 +1,29 @@
+package de.thm.mni.compilerbau.ir;
+
+/**
+ * This class represents an integer constant used as an operand of an IR instruction.
+ */
+public class Constant extends Operand {
+    public static final Constant ZERO = new Constant(0);
+
+    public final int value;
+
+    public Constant(int value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Constant && ((Constant) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
@@ -0,0 +1,135 @@
+package de.thm.mni.compilerbau.ir;
+
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This class holds the IR of a single procedure.
+ * <p>
+ * The code of the procedure is split into {@link BasicBlock}s. The order of the block list is the order the blocks are
+ * laid out in the generated code, the first block is the entry of the procedure.
+ */
+public class ControlFlowGraph {
+    public final Identifier name;
+    public final ProcedureEntry procedure;
+    public final List<LocalVariable> parameters = new ArrayList<>();
+    public final List<LocalVariable> variables = new ArrayList<>();
+    public final List<BasicBlock> blocks = new ArrayList<>();
+    private int tempCount = 0;
+    private int blockCount = 0;
+
+    /**
+     * @param name      The name of the procedure.
+     * @param procedure The symbol table entry of the procedure.
+     */
+    public ControlFlowGraph(Identifier name, ProcedureEntry procedure) {
+        this.name = name;
+        this.procedure = procedure;
+    }
+
+    /**
+     * @return A new temporary that is not used anywhere in this procedure yet.
+     */
+    public Temp newTemp() {
+        return new Temp(tempCount++);
+    }
+
+    /**
+     * @return The number of temporaries created for this procedure.
+     */
+    public int tempCount() {
+        return tempCount;
+    }
+
+    /**
+     * Creates a new empty block. The block is not part of the procedure until it is added to the block list.
+     *
+     * @return The new block.
+     */
+    public BasicBlock newBlock() {
+        return new BasicBlock(blockCount++);
+    }
+
+    /**
+     * @return The block executed first when the procedure is called.
+     */
+    public BasicBlock entryBlock() {
+        return blocks.get(0);
+    }
+
+    /**
+     * Recomputes the predecessor lists of all blocks from their terminators.
+     */
+    public void updatePredecessors() {
+        for (BasicBlock block : blocks) {
+            block.predecessors.clear();
+        }
+        for (BasicBlock block : blocks) {
+            for (BasicBlock successor : block.successors()) {
+                if (!successor.predecessors.contains(block)) successor.predecessors.add(block);
+            }
+        }
+    }
+
+    /**
+     * Removes all blocks which can not be reached from the entry block and updates the predecessor lists.
+     */
+    public void removeUnreachableBlocks() {
+        Set<BasicBlock> reachable = new HashSet<>();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        worklist.push(entryBlock());
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.pop();
+            if (reachable.add(block)) block.successors().forEach(worklist::push);
+        }
+        blocks.retainAll(reachable);
+        updatePredecessors();
+    }
+
+    /**
+     * @return The blocks of this procedure in reverse postorder, i.e. every block appears before its successors unless
+     * the edge between them is a back edge.
+     */
+    public List<BasicBlock> reversePostorder() {
+        List<BasicBlock> postorder = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<Iterator<BasicBlock>> stack = new ArrayDeque<>();
+        Deque<BasicBlock> path = new ArrayDeque<>();
+        visited.add(entryBlock());
+        stack.push(entryBlock().successors().iterator());
+        path.push(entryBlock());
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> successors = stack.peek();
+            if (successors.hasNext()) {
+                BasicBlock successor = successors.next();
+                if (visited.add(successor)) {
+                    stack.push(successor.successors().iterator());
+                    path.push(successor);
+                }
+            } else {
+                stack.pop();
+                postorder.add(path.pop());
+            }
+        }
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder();
+        string.append(String.format("proc %s(%s)\n", name,
+                parameters.stream().map(p -> (p.entry.isReference ? "ref " : "") + p + ": " + p.entry.type)
+                        .collect(Collectors.joining(", "))));
+        for (LocalVariable variable : variables) {
+            string.append(String.format("\tvar %s: %s\n", variable, variable.entry.type));
+        }
+        for (BasicBlock block : blocks) {
+            string.append(block);
+        }
+        return string.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.*;
+
+/**
+ * This class computes the dominator tree and the dominance frontiers of a procedure.
+ * <p>
+ * A block A dominates a block B if every path from the entry to B passes through A. The dominance frontier of A
+ * contains the blocks where the dominance of A ends, i.e. the blocks which have a predecessor dominated by A without
+ * being strictly dominated by A themselves.
+ * The immediate dominators are computed with the iterative algorithm of Cooper, Harvey and Kennedy. The dominator tree
+ * is numbered in preorder, so that whether a block dominates another one can be answered without walking up the tree.
+ */
+public class Dominators {
+    private final Map<BasicBlock, BasicBlock> immediateDominators = new HashMap<>();
+    private final Map<BasicBlock, List<BasicBlock>> children = new HashMap<>();
+    private final Map<BasicBlock, Set<BasicBlock>> frontiers = new HashMap<>();
+    private final Map<BasicBlock, Integer> order = new HashMap<>();
+    private final Map<BasicBlock, Integer> preorderNumbers = new HashMap<>();
+    private final Map<BasicBlock, Integer> subtreeSizes = new HashMap<>();
+
+    /**
+     * @param cfg The procedure to analyze. All blocks have to be reachable and the predecessor lists up to date.
+     */
+    public Dominators(ControlFlowGraph cfg) {
+        List<BasicBlock> reversePostorder = cfg.reversePostorder();
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            order.put(reversePostorder.get(i), i);
+            children.put(reversePostorder.get(i), new ArrayList<>());
+            frontiers.put(reversePostorder.get(i), new LinkedHashSet<>());
+        }
+
+        BasicBlock entry = cfg.entryBlock();
+        immediateDominators.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : reversePostorder) {
+                if (block == entry) continue;
+                BasicBlock dominator = null;
+                for (BasicBlock predecessor : block.predecessors) {
+                    if (!immediateDominators.containsKey(predecessor)) continue;
+                    dominator = dominator == null ? predecessor : intersect(predecessor, dominator);
+                }
+                if (dominator != immediateDominators.get(block)) {
+                    immediateDominators.put(block, dominator);
+                    changed = true;
+                }
+            }
+        }
+
+        for (BasicBlock block : reversePostorder) {
+            if (block != entry) children.get(immediateDominators.get(block)).add(block);
+        }
+
+        numberTree(entry);
+
+        for (BasicBlock block : reversePostorder) {
+            if (block.predecessors.size() < 2) continue;
+            for (BasicBlock predecessor : block.predecessors) {
+                for (BasicBlock runner = predecessor; runner != immediateDominators.get(block); runner = immediateDominators.get(runner)) {
+                    frontiers.get(runner).add(block);
+                }
+            }
+        }
+        immediateDominators.remove(entry);
+    }
+
+    /**
+     * Numbers the blocks of the dominator tree in preorder. The blocks dominated by a block are numbered right after it,
+     * so they are the blocks whose numbers lie within the size of its subtree from its own number.
+     */
+    private void numberTree(BasicBlock entry) {
+        List<BasicBlock> preorder = new ArrayList<>();
+        Deque<BasicBlock> stack = new ArrayDeque<>(List.of(entry));
+        while (!stack.isEmpty()) {
+            BasicBlock block = stack.pop();
+            preorderNumbers.put(block, preorder.size());
+            preorder.add(block);
+            List<BasicBlock> blockChildren = children.get(block);
+            for (int i = blockChildren.size() - 1; i >= 0; i--) {
+                stack.push(blockChildren.get(i));
+            }
+        }
+        for (int i = preorder.size() - 1; i >= 0; i--) {
+            int size = 1;
+            for (BasicBlock child : children.get(preorder.get(i))) {
+                size += subtreeSizes.get(child);
+            }
+            subtreeSizes.put(preorder.get(i), size);
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while (first != second) {
+            while (order.get(first) > order.get(second)) first = immediateDominators.get(first);
+            while (order.get(second) > order.get(first)) second = immediateDominators.get(second);
+        }
+        return first;
+    }
+
+    /**
+     * @param block A block of the procedure.
+     * @return The immediate dominator of the block, null for the entry block.
+     */
+    public BasicBlock immediateDominator(BasicBlock block) {
+        return immediateDominators.get(block);
+    }
+
+    /**
+     * @param block A block of the procedure.
+     * @return The blocks immediately dominated by the given block, in reverse postorder.
+     */
+    public List<BasicBlock> children(BasicBlock block) {
+        return children.get(block);
+    }
+
+    /**
+     * @param block A block of the procedure.
+     * @return The dominance frontier of the block.
+     */
+    public Set<BasicBlock> frontier(BasicBlock block) {
+        return frontiers.get(block);
+    }
+
+    /**
+     * @return Whether every path from the entry to the second block passes through the first block.
+     */
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        if (dominator == block) return true;
+        Integer dominatorNumber = preorderNumbers.get(dominator);
+        Integer blockNumber = preorderNumbers.get(block);
+        if (dominatorNumber == null || blockNumber == null) return false;
+        return dominatorNumber <= blockNumber && blockNumber < dominatorNumber + subtreeSizes.get(dominator);
+    }
+}
@@ -0,0 +1,18 @@
+package de.thm.mni.compilerbau.ir;
+
+/**
+ * This operand stands for the frame pointer of the procedure, which holds the base address of the frame slots of all
+ * local variables. It is only introduced by the code generator, when the address of a variable is folded into the
+ * instructions using it.
+ */
+public class FramePointer extends Operand {
+    public static final FramePointer INSTANCE = new FramePointer();
+
+    private FramePointer() {
+    }
+
+    @Override
+    public String toString() {
+        return "fp";
+    }
+}
@@ -0,0 +1,40 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This class is the abstract superclass of all instructions of the three-address IR.
+ * <p>
+ * Every instruction reads a small number of operands and defines at most one temporary, its target.
+ * Instructions are stored in the {@link BasicBlock}s of a {@link ControlFlowGraph}.
+ */
+public abstract class Instruction {
+    /**
+     * The temporary defined by this instruction, null if the instruction does not define one.
+     */
+    public Temp target;
+
+    /**
+     * @return The operands read by this instruction, in the order they appear in the instruction.
+     */
+    public abstract List<Operand> operands();
+
+    /**
+     * Replaces every operand of this instruction by the result of the given function.
+     *
+     * @param replacement A function mapping each operand to its replacement.
+     */
+    public abstract void replaceOperands(UnaryOperator<Operand> replacement);
+
+    /**
+     * An instruction without side effects may be removed if its target is never used.
+     *
+     * @return Whether executing this instruction has an effect apart from defining its target.
+     */
+    public boolean hasSideEffects() {
+        return target == null;
+    }
+
+    public abstract void accept(InstructionVisitor visitor);
+}
@@ -0,0 +1,34 @@
+package de.thm.mni.compilerbau.ir;
+
+/**
+ * This interface is used to implement the visitor pattern for the instructions of the IR.
+ */
+public interface InstructionVisitor {
+    void visit(Move move);
+
+    void visit(BinaryOperation binaryOperation);
+
+    void visit(Shift shift);
+
+    void visit(LoadVariable loadVariable);
+
+    void visit(StoreVariable storeVariable);
+
+    void visit(AddressOf addressOf);
+
+    void visit(Load load);
+
+    void visit(Store store);
+
+    void visit(BoundsCheck boundsCheck);
+
+    void visit(Call call);
+
+    void visit(Jump jump);
+
+    void visit(Branch branch);
+
+    void visit(Return ret);
+
+    void visit(Phi phi);
+}
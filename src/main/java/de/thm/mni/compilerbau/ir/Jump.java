@@ -0,0 +1,46 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction unconditionally transfers control to another block.
+ * <p>
+ * Example: goto B3
+ */
+public class Jump extends Terminator {
+    public BasicBlock destination;
+
+    public Jump(BasicBlock destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public List<BasicBlock> successors() {
+        return List.of(destination);
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldSuccessor, BasicBlock newSuccessor) {
+        if (destination == oldSuccessor) destination = newSuccessor;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of();
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return "goto " + destination.label();
+    }
+}
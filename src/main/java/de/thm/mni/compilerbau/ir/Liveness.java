@@ -0,0 +1,92 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.*;
+
+/**
+ * This class computes which temporaries are live at the beginning and at the end of each block of a procedure.
+ * <p>
+ * A temporary is live at a point of the program if its current value may still be read on some path starting there.
+ * The sets are computed with the usual backwards dataflow analysis, iterating until a fixpoint is reached.
+ * The operands of a {@link Phi} are read at the end of the corresponding predecessor, not in the block of the phi.
+ */
+public class Liveness {
+    private final Map<BasicBlock, Set<Temp>> liveIn = new HashMap<>();
+    private final Map<BasicBlock, Set<Temp>> liveOut = new HashMap<>();
+
+    /**
+     * @param cfg The procedure to analyze.
+     */
+    public Liveness(ControlFlowGraph cfg) {
+        Map<BasicBlock, Set<Temp>> used = new HashMap<>();
+        Map<BasicBlock, Set<Temp>> defined = new HashMap<>();
+        Map<BasicBlock, Set<Temp>> usedByPhis = new HashMap<>();
+        for (BasicBlock block : cfg.blocks) {
+            used.put(block, new HashSet<>());
+            defined.put(block, new HashSet<>());
+            usedByPhis.put(block, new HashSet<>());
+        }
+
+        for (BasicBlock block : cfg.blocks) {
+            Set<Temp> blockUsed = used.get(block);
+            Set<Temp> blockDefined = defined.get(block);
+            for (Instruction instruction : block.allInstructions()) {
+                if (instruction instanceof Phi) {
+                    for (Map.Entry<BasicBlock, Operand> entry : ((Phi) instruction).incoming.entrySet()) {
+                        if (entry.getValue() instanceof Temp && usedByPhis.containsKey(entry.getKey())) {
+                            usedByPhis.get(entry.getKey()).add((Temp) entry.getValue());
+                        }
+                    }
+                } else {
+                    for (Operand operand : instruction.operands()) {
+                        if (operand instanceof Temp && !blockDefined.contains(operand)) blockUsed.add((Temp) operand);
+                    }
+                }
+                if (instruction.target != null) blockDefined.add(instruction.target);
+            }
+        }
+
+        for (BasicBlock block : cfg.blocks) {
+            liveOut.put(block, new HashSet<>(usedByPhis.get(block)));
+            Set<Temp> in = new HashSet<>(liveOut.get(block));
+            in.removeAll(defined.get(block));
+            in.addAll(used.get(block));
+            liveIn.put(block, in);
+        }
+
+        List<BasicBlock> order = new ArrayList<>(cfg.blocks);
+        Collections.reverse(order);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                Set<Temp> out = liveOut.get(block);
+                for (BasicBlock successor : block.successors()) {
+                    out.addAll(liveIn.get(successor));
+                }
+                Set<Temp> in = new HashSet<>(out);
+                in.removeAll(defined.get(block));
+                in.addAll(used.get(block));
+                if (!in.equals(liveIn.get(block))) {
+                    liveIn.put(block, in);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param block A block of the analyzed procedure.
+     * @return The temporaries live when the block is entered.
+     */
+    public Set<Temp> liveIn(BasicBlock block) {
+        return liveIn.get(block);
+    }
+
+    /**
+     * @param block A block of the analyzed procedure.
+     * @return The temporaries live when the block is left.
+     */
+    public Set<Temp> liveOut(BasicBlock block) {
+        return liveOut.get(block);
+    }
+}
@@ -0,0 +1,40 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction reads a word from memory. The address is the sum of an operand and a constant offset.
+ * <p>
+ * Example: %5 = [%4 + 8]
+ */
+public class Load extends Instruction {
+    public Operand address;
+    public int offset;
+
+    public Load(Temp target, Operand address, int offset) {
+        this.target = target;
+        this.address = address;
+        this.offset = offset;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(address);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        address = replacement.apply(address);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s", target, Store.formatAddress(address, offset));
+    }
+}
@@ -0,0 +1,38 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction reads the frame slot of a local variable or parameter.
+ * For reference parameters, the slot holds the address of the argument.
+ * <p>
+ * Example: %2 = i
+ */
+public class LoadVariable extends Instruction {
+    public final LocalVariable variable;
+
+    public LoadVariable(Temp target, LocalVariable variable) {
+        this.target = target;
+        this.variable = variable;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of();
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s", target, variable);
+    }
+}
@@ -0,0 +1,41 @@
+package de.thm.mni.compilerbau.ir;
+
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+
+/**
+ * This class represents a parameter or a local variable of a procedure in the IR.
+ * <p>
+ * Local variables live in the stack frame of their procedure. Their offsets are taken from the {@link VariableEntry}
+ * computed in phase 5. For reference parameters, the frame slot holds the address of the actual argument.
+ */
+public class LocalVariable {
+    public final Identifier name;
+    public final VariableEntry entry;
+    public final boolean isParameter;
+
+    /**
+     * @param name        The name of the variable in the source code.
+     * @param entry       The symbol table entry of the variable.
+     * @param isParameter Whether the variable is a parameter of its procedure.
+     */
+    public LocalVariable(Identifier name, VariableEntry entry, boolean isParameter) {
+        this.name = name;
+        this.entry = entry;
+        this.isParameter = isParameter;
+    }
+
+    /**
+     * @return Whether the frame slot of this variable holds a single integer value (as opposed to an array or the
+     * address of a reference parameter).
+     */
+    public boolean isScalar() {
+        return entry.type == PrimitiveType.intType && !entry.isReference;
+    }
+
+    @Override
+    public String toString() {
+        return name.toString();
+    }
+}
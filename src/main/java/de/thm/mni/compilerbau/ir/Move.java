@@ -0,0 +1,38 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction copies a constant or the value of another temporary into its target.
+ * <p>
+ * Example: %1 = 42
+ */
+public class Move extends Instruction {
+    public Operand source;
+
+    public Move(Temp target, Operand source) {
+        this.target = target;
+        this.source = source;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(source);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        source = replacement.apply(source);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s", target, source);
+    }
+}
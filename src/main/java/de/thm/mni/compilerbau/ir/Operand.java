@@ -0,0 +1,10 @@
+package de.thm.mni.compilerbau.ir;
+
+/**
+ * This class is the abstract superclass of all operands of IR instructions.
+ * <p>
+ * An operand is either a {@link Temp}, holding a value computed by another instruction, or a {@link Constant}. The
+ * code generator additionally uses the {@link FramePointer} and {@link ArgumentRegister}s.
+ */
+public abstract class Operand {
+}
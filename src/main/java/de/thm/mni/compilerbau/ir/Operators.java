@@ -0,0 +1,41 @@
+package de.thm.mni.compilerbau.ir;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+
+/**
+ * Helper methods for the operators of {@link BinaryOperation} and {@link Branch} instructions.
+ */
+final class Operators {
+    private Operators() {
+    }
+
+    /**
+     * @param operator An operator of the IR.
+     * @return The SPL symbol of the operator, used in the textual representation of the IR.
+     */
+    static String symbol(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case ADD:
+                return "+";
+            case SUB:
+                return "-";
+            case MUL:
+                return "*";
+            case DIV:
+                return "/";
+            case EQU:
+                return "=";
+            case NEQ:
+                return "#";
+            case LST:
+                return "<";
+            case LSE:
+                return "<=";
+            case GRT:
+                return ">";
+            case GRE:
+                return ">=";
+        }
+        throw new IllegalArgumentException(operator.toString());
+    }
+}
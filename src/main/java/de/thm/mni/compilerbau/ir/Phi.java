@@ -0,0 +1,48 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * This instruction merges the values of a variable reaching a block from its different predecessors.
+ * It only occurs while a procedure is in SSA form and always stands at the beginning of its block.
+ * <p>
+ * Example: %5 = phi i(B0: 0, B2: %4)
+ */
+public class Phi extends Instruction {
+    public final LocalVariable variable;
+    /**
+     * The value of the variable for each predecessor of the block.
+     */
+    public final Map<BasicBlock, Operand> incoming = new LinkedHashMap<>();
+
+    public Phi(Temp target, LocalVariable variable) {
+        this.target = target;
+        this.variable = variable;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.copyOf(incoming.values());
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        incoming.replaceAll((block, operand) -> replacement.apply(operand));
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = phi %s(%s)", target, variable, incoming.entrySet().stream()
+                .map(entry -> entry.getKey().label() + ": " + entry.getValue())
+                .collect(Collectors.joining(", ")));
+    }
+}
@@ -0,0 +1,37 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction returns from the procedure to its caller.
+ */
+public class Return extends Terminator {
+    @Override
+    public List<BasicBlock> successors() {
+        return List.of();
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldSuccessor, BasicBlock newSuccessor) {
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of();
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return "return";
+    }
+}
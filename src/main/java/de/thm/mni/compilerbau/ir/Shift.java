@@ -0,0 +1,62 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction shifts the bits of an operand by a constant number of positions.
+ * Shifts are not part of SPL, they are only introduced by the code generator to replace multiplications and divisions
+ * by constants.
+ * <p>
+ * Example: %4 = %3 &lt;&lt; 2
+ */
+public class Shift extends Instruction {
+    public enum Kind {
+        LEFT("<<"),
+        LOGICAL_RIGHT(">>>"),
+        ARITHMETIC_RIGHT(">>");
+
+        private final String symbol;
+
+        Kind(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    public final Kind kind;
+    public Operand source;
+    public final int amount;
+
+    /**
+     * @param target The temporary receiving the result.
+     * @param kind   The direction of the shift and whether the sign bit is copied into the vacated positions.
+     * @param source The operand to shift.
+     * @param amount The number of positions, between 0 and 31.
+     */
+    public Shift(Temp target, Kind kind, Operand source, int amount) {
+        this.target = target;
+        this.kind = kind;
+        this.source = source;
+        this.amount = amount;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(source);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        source = replacement.apply(source);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s %s %d", target, source, kind.symbol, amount);
+    }
+}
@@ -0,0 +1,47 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction writes a word to memory. The address is the sum of an operand and a constant offset.
+ * <p>
+ * Example: [%4 + 8] = %5
+ */
+public class Store extends Instruction {
+    public Operand address;
+    public int offset;
+    public Operand value;
+
+    public Store(Operand address, int offset, Operand value) {
+        this.address = address;
+        this.offset = offset;
+        this.value = value;
+    }
+
+    static String formatAddress(Operand address, int offset) {
+        if (offset == 0) return String.format("[%s]", address);
+        return String.format("[%s %s %d]", address, offset < 0 ? "-" : "+", Math.abs((long) offset));
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(address, value);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        address = replacement.apply(address);
+        value = replacement.apply(value);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s", formatAddress(address, offset), value);
+    }
+}
@@ -0,0 +1,39 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * This instruction writes a value into the frame slot of a scalar local variable or value parameter.
+ * <p>
+ * Example: i = %2
+ */
+public class StoreVariable extends Instruction {
+    public final LocalVariable variable;
+    public Operand value;
+
+    public StoreVariable(LocalVariable variable, Operand value) {
+        this.variable = variable;
+        this.value = value;
+    }
+
+    @Override
+    public List<Operand> operands() {
+        return List.of(value);
+    }
+
+    @Override
+    public void replaceOperands(UnaryOperator<Operand> replacement) {
+        value = replacement.apply(value);
+    }
+
+    @Override
+    public void accept(InstructionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s = %s", variable, value);
+    }
+}
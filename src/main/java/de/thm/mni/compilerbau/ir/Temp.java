@@ -0,0 +1,25 @@
+package de.thm.mni.compilerbau.ir;
+
+/**
+ * This class represents a temporary of the IR. Temporaries are virtual registers, an unlimited supply of them is
+ * available in every procedure. The code generator maps them to the registers of the target machine.
+ * <p>
+ * Two temporaries are only equal if they are the same object.
+ */
+public class Temp extends Operand {
+    public final int number;
+
+    /**
+     * Creates a new temporary. Use {@link ControlFlowGraph#newTemp()} to get a temporary with a fresh number.
+     *
+     * @param number The number of the temporary, unique inside its procedure.
+     */
+    Temp(int number) {
+        this.number = number;
+    }
+
+    @Override
+    public String toString() {
+        return "%" + number;
+    }
+}
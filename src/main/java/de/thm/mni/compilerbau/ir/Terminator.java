@@ -0,0 +1,23 @@
+package de.thm.mni.compilerbau.ir;
+
+import java.util.List;
+
+/**
+ * This class is the abstract superclass of all instructions which end a {@link BasicBlock}.
+ * <p>
+ * A terminator transfers control to one of the successors of its block or leaves the procedure.
+ */
+public abstract class Terminator extends Instruction {
+    /**
+     * @return The blocks control may be transferred to by this instruction.
+     */
+    public abstract List<BasicBlock> successors();
+
+    /**
+     * Redirects all control transfers to a block to another block.
+     *
+     * @param oldSuccessor The block which is no longer a successor.
+     * @param newSuccessor The block to jump to instead.
+     */
+    public abstract void replaceSuccessor(BasicBlock oldSuccessor, BasicBlock newSuccessor);
+}
@@ -11,6 +11,8 @@ import de.thm.mni.compilerbau.types.ArrayType;//
 import de.thm.mni.compilerbau.types.PrimitiveType;
 import de.thm.mni.compilerbau.types.Type;
 import de.thm.mni.compilerbau.utils.NotImplemented;
+import de.thm.mni.compilerbau.utils.Parallel;
+import de.thm.mni.compilerbau.utils.ProcedureEvent;
 import de.thm.mni.compilerbau.utils.SplError;
 
 /**
@@ -20,8 +22,13 @@ import de.thm.mni.compilerbau.utils.SplError;
  * Calculated {@link Type}s can be stored in and read from the dataType field of the {@link Expression} and {@link Variable} classes.
  */
 public class ProcedureBodyChecker {
+    /**
+     * The bodies of the procedures only read the symbol tables, they are checked in parallel.
+     * An error in an earlier procedure is reported first, as if they were checked one after the other.
+     */
     public void checkProcedures(Program program, SymbolTable globalTable) {
-      program.accept(new ProcedureBodyVisitor(globalTable));
+      Parallel.forEach(program.declarations, declaration ->
+              ProcedureEvent.record("semant", declaration, () -> declaration.accept(new ProcedureBodyVisitor(globalTable))));
     }
     private class ProcedureBodyVisitor extends DoNothingVisitor {
         SymbolTable symbolTable ;
@@ -0,0 +1,297 @@
+package de.thm.mni.compilerbau.phases._04c_fold;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * This class is used to simplify the expressions of a semantically checked program before any code is generated.
+ * <p>
+ * Binary expressions whose operands are both literals are replaced by a single literal, computed with the 32-bit
+ * wrap-around arithmetic of ECO32. Divisions by zero are kept, since they have to fail at runtime.
+ * Neutral operands are removed (x + 0, x - 0, x * 1, x / 1), chains of additions and multiplications by literals are
+ * combined into a single operation and x * 0 becomes 0, as long as evaluating x cannot fail an array bounds check or
+ * divide by zero.
+ * Conditions comparing two literals select the statement which is executed: an if statement is replaced by one of its
+ * branches, a while loop whose condition never holds is removed.
+ * <p>
+ * Since the nodes of the abstract syntax tree are immutable, every node containing a simplified expression is
+ * replaced by a new node. The data types computed in phase 4b are carried over.
+ */
+public class ConstantFolder {
+    private final boolean showFoldedTree;
+
+    /**
+     * @param showFoldedTree Whether to print the folded abstract syntax tree (--fold)
+     */
+    public ConstantFolder(boolean showFoldedTree) {
+        this.showFoldedTree = showFoldedTree;
+    }
+
+    /**
+     * Simplifies the bodies of all procedures.
+     *
+     * @param program The abstract syntax tree of the program, after phase 4b has been run.
+     */
+    public void foldProgram(Program program) {
+        FoldingVisitor visitor = new FoldingVisitor();
+        for (GlobalDeclaration declaration : program.declarations) {
+            if (declaration instanceof ProcedureDeclaration) {
+                visitor.foldAll(((ProcedureDeclaration) declaration).body);
+            }
+        }
+
+        if (showFoldedTree) System.out.println(program);
+    }
+
+    /**
+     * Every visit method leaves the simplified node in {@link #result}, which is the visited node itself if it could not
+     * be simplified.
+     */
+    private static class FoldingVisitor extends DoNothingVisitor {
+        private Node result;
+
+        private Expression fold(Expression expression) {
+            expression.accept(this);
+            return (Expression) result;
+        }
+
+        private Variable fold(Variable variable) {
+            variable.accept(this);
+            return (Variable) result;
+        }
+
+        private Statement fold(Statement statement) {
+            statement.accept(this);
+            return (Statement) result;
+        }
+
+        private void foldAll(List<Statement> statements) {
+            for (ListIterator<Statement> iterator = statements.listIterator(); iterator.hasNext(); ) {
+                iterator.set(fold(iterator.next()));
+            }
+        }
+
+        private static IntLiteral literal(Position position, int value) {
+            IntLiteral literal = new IntLiteral(position, value);
+            literal.dataType = PrimitiveType.intType;
+            return literal;
+        }
+
+        private static boolean isLiteral(Expression expression, int value) {
+            return expression instanceof IntLiteral && ((IntLiteral) expression).value == value;
+        }
+
+        /**
+         * Only array accesses and divisions by zero can fail while an expression is evaluated, so every other expression
+         * may be dropped. Every division whose divisor is not a literal other than 0 could divide by zero.
+         */
+        private static boolean canFail(Node node) {
+            if (node instanceof BinaryExpression) {
+                BinaryExpression expression = (BinaryExpression) node;
+                if (expression.operator == BinaryExpression.Operator.DIV && !(expression.rightOperand instanceof IntLiteral
+                        && ((IntLiteral) expression.rightOperand).value != 0)) {
+                    return true;
+                }
+                return canFail(expression.leftOperand) || canFail(expression.rightOperand);
+            }
+            if (node instanceof VariableExpression) return canFail(((VariableExpression) node).variable);
+            return node instanceof ArrayAccess;
+        }
+
+        /**
+         * @return The value of a condition comparing two literals, or null if it has to be evaluated at runtime.
+         */
+        private static Boolean constantCondition(Expression condition) {
+            BinaryExpression comparison = (BinaryExpression) condition;
+            if (comparison.leftOperand instanceof IntLiteral && comparison.rightOperand instanceof IntLiteral) {
+                return comparison.operator.holds(((IntLiteral) comparison.leftOperand).value, ((IntLiteral) comparison.rightOperand).value);
+            }
+            return null;
+        }
+
+        private static Expression simplify(BinaryExpression original, BinaryExpression.Operator operator, Expression left, Expression right) {
+            Position position = original.position;
+            if (operator.isArithmetic() && left instanceof IntLiteral && right instanceof IntLiteral) {
+                int divisor = ((IntLiteral) right).value;
+                if (operator != BinaryExpression.Operator.DIV || divisor != 0) {
+                    return literal(position, operator.evaluate(((IntLiteral) left).value, divisor));
+                }
+            }
+
+            switch (operator) {
+                case ADD:
+                    if (isLiteral(right, 0)) return left;
+                    if (isLiteral(left, 0)) return right;
+                    // The literal is moved to the right, so that it can be combined with other literals
+                    if (left instanceof IntLiteral && !(right instanceof IntLiteral)) return simplify(original, operator, right, left);
+                    break;
+                case SUB:
+                    if (isLiteral(right, 0)) return left;
+                    break;
+                case MUL:
+                    if (isLiteral(right, 1)) return left;
+                    if (isLiteral(left, 1)) return right;
+                    if (isLiteral(right, 0) && !canFail(left)) return literal(position, 0);
+                    if (isLiteral(left, 0) && !canFail(right)) return literal(position, 0);
+                    if (left instanceof IntLiteral && !(right instanceof IntLiteral)) return simplify(original, operator, right, left);
+                    break;
+                case DIV:
+                    if (isLiteral(right, 1)) return left;
+                    break;
+            }
+
+            if (right instanceof IntLiteral && left instanceof BinaryExpression && ((BinaryExpression) left).rightOperand instanceof IntLiteral) {
+                BinaryExpression inner = (BinaryExpression) left;
+                int innerValue = ((IntLiteral) inner.rightOperand).value;
+                int value = ((IntLiteral) right).value;
+                // (x + c1) - c2 = x + (c1 - c2)
+                if (isAdditive(operator) && isAdditive(inner.operator)) {
+                    int sum = signed(inner.operator, innerValue) + signed(operator, value);
+                    if (sum < 0 && sum != Integer.MIN_VALUE) {
+                        return simplify(original, BinaryExpression.Operator.SUB, inner.leftOperand, literal(position, -sum));
+                    }
+                    return simplify(original, BinaryExpression.Operator.ADD, inner.leftOperand, literal(position, sum));
+                }
+                // (x * c1) * c2 = x * (c1 * c2)
+                if (operator == BinaryExpression.Operator.MUL && inner.operator == BinaryExpression.Operator.MUL) {
+                    return simplify(original, operator, inner.leftOperand, literal(position, innerValue * value));
+                }
+            }
+
+            if (operator == original.operator && left == original.leftOperand && right == original.rightOperand) return original;
+            BinaryExpression simplified = new BinaryExpression(position, operator, left, right);
+            simplified.dataType = original.dataType;
+            return simplified;
+        }
+
+        private static boolean isAdditive(BinaryExpression.Operator operator) {
+            return operator == BinaryExpression.Operator.ADD || operator == BinaryExpression.Operator.SUB;
+        }
+
+        private static int signed(BinaryExpression.Operator operator, int value) {
+            return operator == BinaryExpression.Operator.SUB ? -value : value;
+        }
+
+        //IntLiteral
+        @Override
+        public void visit(IntLiteral intLiteral) {
+            result = intLiteral;
+        }
+
+        //BinaryExpression
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            Expression left = fold(binaryExpression.leftOperand);
+            Expression right = fold(binaryExpression.rightOperand);
+            result = simplify(binaryExpression, binaryExpression.operator, left, right);
+        }
+
+        //VariableExpression
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            Variable variable = fold(variableExpression.variable);
+            if (variable == variableExpression.variable) {
+                result = variableExpression;
+            } else {
+                VariableExpression folded = new VariableExpression(variableExpression.position, variable);
+                folded.dataType = variableExpression.dataType;
+                result = folded;
+            }
+        }
+
+        //NamedVariable
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            result = namedVariable;
+        }
+
+        //ArrayAccess
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            Variable array = fold(arrayAccess.array);
+            Expression index = fold(arrayAccess.index);
+            if (array == arrayAccess.array && index == arrayAccess.index) {
+                result = arrayAccess;
+            } else {
+                ArrayAccess folded = new ArrayAccess(arrayAccess.position, array, index);
+                folded.dataType = arrayAccess.dataType;
+                result = folded;
+            }
+        }
+
+        //AssignStatement
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            Variable target = fold(assignStatement.target);
+            Expression value = fold(assignStatement.value);
+            if (target == assignStatement.target && value == assignStatement.value) {
+                result = assignStatement;
+            } else {
+                result = new AssignStatement(assignStatement.position, target, value);
+            }
+        }
+
+        //CallStatement
+        @Override
+        public void visit(CallStatement callStatement) {
+            for (ListIterator<Expression> iterator = callStatement.arguments.listIterator(); iterator.hasNext(); ) {
+                iterator.set(fold(iterator.next()));
+            }
+            result = callStatement;
+        }
+
+        //IfStatement
+        @Override
+        public void visit(IfStatement ifStatement) {
+            Expression condition = fold(ifStatement.condition);
+            Boolean value = constantCondition(condition);
+            if (value != null) {
+                Statement taken = value ? ifStatement.thenPart : ifStatement.elsePart;
+                result = taken == null ? new EmptyStatement(ifStatement.position) : fold(taken);
+                return;
+            }
+
+            Statement thenPart = fold(ifStatement.thenPart);
+            Statement elsePart = ifStatement.elsePart == null ? null : fold(ifStatement.elsePart);
+            if (condition == ifStatement.condition && thenPart == ifStatement.thenPart && elsePart == ifStatement.elsePart) {
+                result = ifStatement;
+            } else {
+                result = new IfStatement(ifStatement.position, condition, thenPart, elsePart);
+            }
+        }
+
+        //WhileStatement
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            Expression condition = fold(whileStatement.condition);
+            if (Boolean.FALSE.equals(constantCondition(condition))) {
+                result = new EmptyStatement(whileStatement.position);
+                return;
+            }
+
+            Statement body = fold(whileStatement.body);
+            if (condition == whileStatement.condition && body == whileStatement.body) {
+                result = whileStatement;
+            } else {
+                result = new WhileStatement(whileStatement.position, condition, body);
+            }
+        }
+
+        //CompoundStatement
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            foldAll(compoundStatement.statements);
+            result = compoundStatement;
+        }
+
+        //EmptyStatement
+        @Override
+        public void visit(EmptyStatement emptyStatement) {
+            result = emptyStatement;
+        }
+    }
+}
@@ -11,6 +11,16 @@ public class StackLayout {
     public Integer argumentAreaSize = null;
     public Integer localVarAreaSize = null;
     public Integer outgoingAreaSize = null;
+    /**
+     * The number of parameters passed in registers (--register-args). Their slots in the argument area are still
+     * reserved by the caller, the procedure stores the registers there if the parameters are needed in memory.
+     */
+    public int registerArgumentCount = 0;
+
+    // These values are set in phase 6, as soon as the register allocator knows how many values had to be spilled and
+    // which callee-saved registers are used
+    public int spillAreaSize = 0;
+    public int calleeSavedAreaSize = 0;
 
 
     /**
@@ -32,10 +42,10 @@ public class StackLayout {
     public int frameSize() {
         if (outgoingAreaSize == -1)
         {
-            return 4 + localVarAreaSize;
+            return 4 + localVarAreaSize + spillAreaSize + calleeSavedAreaSize;
         }
         else {
-            return outgoingAreaSize + localVarAreaSize + 8 ;
+            return outgoingAreaSize + localVarAreaSize + 8 + spillAreaSize + calleeSavedAreaSize;
         }
 
 
@@ -46,10 +56,10 @@ public class StackLayout {
      */
     public int oldFramePointerOffset() {
         if (outgoingAreaSize == -1){
-            return 0;
+            return spillAreaSize + calleeSavedAreaSize;
         }
         else {
-            return outgoingAreaSize + 4;
+            return outgoingAreaSize + spillAreaSize + calleeSavedAreaSize + 4;
         }
 
     }
@@ -67,4 +77,26 @@ public class StackLayout {
         }
 
     }
+
+    /**
+     * The spill area lies directly below the saved registers of the frame.
+     *
+     * @param slot The number of the spill slot.
+     * @return The offset (starting from the new frame pointer) of the given spill slot in this stack frame.
+     */
+    public int spillSlotOffset(int slot) {
+        int savedRegistersSize = isLeafProcedure() ? 4 : 8;
+        return -1*(localVarAreaSize + savedRegistersSize + 4 * (slot + 1));
+    }
+
+    /**
+     * The callee-saved registers used by the procedure are saved directly below the spill area.
+     *
+     * @param index The number of the register among the saved ones.
+     * @return The offset (starting from the new frame pointer) where the register is saved in this stack frame.
+     */
+    public int calleeSavedRegisterOffset(int index) {
+        int savedRegistersSize = isLeafProcedure() ? 4 : 8;
+        return -1*(localVarAreaSize + savedRegistersSize + spillAreaSize + 4 * (index + 1));
+    }
 }
\ No newline at end of file
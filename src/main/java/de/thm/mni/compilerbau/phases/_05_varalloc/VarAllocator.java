@@ -2,6 +2,7 @@ package de.thm.mni.compilerbau.phases._05_varalloc;
 
 import de.thm.mni.compilerbau.absyn.*;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
 import de.thm.mni.compilerbau.table.ParameterType;
 import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
@@ -18,22 +19,31 @@ import java.util.stream.IntStream;
  */
 public class VarAllocator {
     public static final int REFERENCE_BYTESIZE = 4;
+    /**
+     * With --register-args, the first arguments of SPL procedures are passed in the registers $4 to $7.
+     */
+    public static final int FIRST_ARGUMENT_REGISTER = 4;
+    public static final int ARGUMENT_REGISTER_COUNT = 4;
 
     private final boolean showVarAlloc;
     private final boolean ershovOptimization;
-    private static int mostParam = 0;
-    public static int numberOfCall = 0;
+    private final boolean registerArguments;
 
     /**
      * @param showVarAlloc       Whether to show the results of the variable allocation after it is finished
      * @param ershovOptimization Whether the ershov register optimization should be used (--ershov)
+     * @param registerArguments  Whether the first arguments of SPL procedures are passed in registers (--register-args)
      */
-    public VarAllocator(boolean showVarAlloc, boolean ershovOptimization) {
+    public VarAllocator(boolean showVarAlloc, boolean ershovOptimization, boolean registerArguments) {
         this.showVarAlloc = showVarAlloc;
         this.ershovOptimization = ershovOptimization;
+        this.registerArguments = registerArguments;
     }
     private static class VarallocatorVisitor extends DoNothingVisitor{
         private SymbolTable symbolTable;
+        // The calls of the procedure currently visited, counted anew for every procedure
+        private int mostParam = 0;
+        private int numberOfCall = 0;
 
         public VarallocatorVisitor(SymbolTable symbolTable){
             this.symbolTable = symbolTable;
@@ -81,7 +91,8 @@ public class VarAllocator {
         //ProcedureDeclaration
         @Override
         public void visit(ProcedureDeclaration procedureDeclaration) {
-
+            mostParam = 0;
+            numberOfCall = 0;
             for (Statement stInBody : procedureDeclaration.body){
                 stInBody.accept(this);
             }
@@ -94,8 +105,6 @@ public class VarAllocator {
             }
             else {
                 procedureEntry.stackLayout.outgoingAreaSize = mostParam;
-                mostParam = 0;
-                numberOfCall = 0;
             }
         }
 
@@ -110,8 +119,10 @@ public class VarAllocator {
 
     private static class VarallocatorVisitor2 extends DoNothingVisitor{
         private SymbolTable symbolTable;
-        public VarallocatorVisitor2(SymbolTable symbolTable){
+        private final boolean registerArguments;
+        public VarallocatorVisitor2(SymbolTable symbolTable, boolean registerArguments){
             this.symbolTable = symbolTable;
+            this.registerArguments = registerArguments;
         }
 
         //ProcedureDeclaration
@@ -127,16 +138,27 @@ public class VarAllocator {
             VariableEntry variableEntry = (VariableEntry) procedureEntry.localTable.lookup(parameterDeclaration.name);
             variableEntry.offset = initArgSize;
             parTypList.get(temp).offset = initArgSize;
+            if (registerArguments && temp < ARGUMENT_REGISTER_COUNT) {
+                parTypList.get(temp).register = FIRST_ARGUMENT_REGISTER + temp;
+                procedureEntry.stackLayout.registerArgumentCount++;
+            }
             initArgSize += 4;
 
             temp++;
         }
         procedureEntry.stackLayout.argumentAreaSize = initArgSize;
 
-         for (VariableDeclaration variableDeclaration : procedureDeclaration.variables) {
-             VariableEntry variableEntry = (VariableEntry) procedureEntry.localTable.lookup(variableDeclaration.name);
-             initVarSize -= variableDeclaration.typeExpression.dataType.byteSize;
-             variableEntry.offset = initVarSize;
+         LiveRangeVisitor liveRanges = new LiveRangeVisitor(symbolTable);
+         for (Statement stInBody : procedureDeclaration.body){
+             stInBody.accept(liveRanges);
+         }
+         List<Slot> slots = colorSlots(procedureDeclaration.variables, liveRanges);
+         for (Slot slot : slots) {
+             initVarSize -= slot.size;
+             for (VariableDeclaration variableDeclaration : slot.variables) {
+                 VariableEntry variableEntry = (VariableEntry) procedureEntry.localTable.lookup(variableDeclaration.name);
+                 variableEntry.offset = initVarSize;
+             }
          }
          procedureEntry.stackLayout.localVarAreaSize = -1*initVarSize;
 
@@ -152,11 +174,167 @@ public class VarAllocator {
 
 
 
+    /**
+     * A frame slot shared by local variables whose live ranges do not overlap.
+     */
+    private static class Slot {
+        final int size;
+        final List<VariableDeclaration> variables = new ArrayList<>();
+        final List<int[]> ranges = new ArrayList<>();
+
+        Slot(int size) {
+            this.size = size;
+        }
+
+        boolean isFree(int[] range) {
+            if (range == null) return true;
+            for (int[] other : ranges) {
+                if (range[0] <= other[1] && other[0] <= range[1]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Computes the live ranges of the local variables of a procedure body. The statements are numbered in the order
+     * they appear in the source, the live range of a variable reaches from its first to its last use. A variable used
+     * inside of a loop is live during the whole loop, since it may be used again in the next iteration. A variable
+     * passed as a reference argument is live during the whole procedure.
+     */
+    private static class LiveRangeVisitor extends DoNothingVisitor {
+        private static final int[] WHOLE_PROCEDURE = {Integer.MIN_VALUE, Integer.MAX_VALUE};
+
+        private final SymbolTable symbolTable;
+        private final Map<Identifier, int[]> ranges = new HashMap<>();
+        private final Set<Identifier> referenced = new HashSet<>();
+        private int position = 0;
+
+        LiveRangeVisitor(SymbolTable symbolTable) {
+            this.symbolTable = symbolTable;
+        }
+
+        /**
+         * @return The first and last position the variable is used at, or null if it is never used.
+         */
+        int[] rangeOf(Identifier name) {
+            return referenced.contains(name) ? WHOLE_PROCEDURE : ranges.get(name);
+        }
+
+        //NamedVariable
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            int[] range = ranges.computeIfAbsent(namedVariable.name, name -> new int[]{position, position});
+            range[1] = position++;
+        }
+
+        //ArrayAccess
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        //VariableExpression
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        //BinaryExpression
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        //AssignStatement
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.value.accept(this);
+            assignStatement.target.accept(this);
+        }
+
+        //IfStatement
+        @Override
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            if (ifStatement.elsePart != null){
+                ifStatement.elsePart.accept(this);
+            }
+        }
+
+        //WhileStatement
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            int start = position++;
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+            int end = position++;
+            for (int[] range : ranges.values()) {
+                if (range[0] <= end && start <= range[1]) {
+                    range[0] = Math.min(range[0], start);
+                    range[1] = Math.max(range[1], end);
+                }
+            }
+        }
+
+        //CallStatement
+        @Override
+        public void visit(CallStatement callStatement) {
+            ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.arguments.size(); i++) {
+                Expression argument = callStatement.arguments.get(i);
+                argument.accept(this);
+                if (procedureEntry.parameterTypes.get(i).isReference && argument instanceof VariableExpression) {
+                    Variable variable = ((VariableExpression) argument).variable;
+                    while (variable instanceof ArrayAccess) variable = ((ArrayAccess) variable).array;
+                    referenced.add(((NamedVariable) variable).name);
+                }
+            }
+        }
+
+        //CompoundStatement
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            for (Statement cs : compoundStatement.statements){
+                cs.accept(this);
+            }
+        }
+    }
+
+    /**
+     * Assigns the local variables of a procedure to frame slots (stack slot coloring). Variables whose live ranges do
+     * not overlap share a slot, the largest variables are assigned first so that smaller ones can reuse their slots.
+     *
+     * @return The slots in the order of their first declared variable.
+     */
+    private static List<Slot> colorSlots(List<VariableDeclaration> variables, LiveRangeVisitor liveRanges) {
+        List<VariableDeclaration> bySize = new ArrayList<>(variables);
+        bySize.sort(Comparator.comparing(v -> -v.typeExpression.dataType.byteSize));
+        List<Slot> slots = new ArrayList<>();
+        for (VariableDeclaration variableDeclaration : bySize) {
+            int size = variableDeclaration.typeExpression.dataType.byteSize;
+            int[] range = liveRanges.rangeOf(variableDeclaration.name);
+            Slot slot = slots.stream().filter(s -> s.size >= size && s.isFree(range)).findFirst().orElse(null);
+            if (slot == null) {
+                slot = new Slot(size);
+                slots.add(slot);
+            }
+            slot.variables.add(variableDeclaration);
+            if (range != null) slot.ranges.add(range);
+        }
+        slots.sort(Comparator.comparing(slot -> slot.variables.stream().mapToInt(variables::indexOf).min().orElse(0)));
+        return slots;
+    }
+
     public void allocVars(Program program, SymbolTable table) {
     // utiliser programm et faire tous les accept
-        program.accept(new VarallocatorVisitor2(table));
-
-        program.accept(new VarallocatorVisitor(table));
+        // Each procedure only writes to its own entries, the procedures are allocated in parallel
+        Parallel.forEach(program.declarations, declaration -> ProcedureEvent.record("vars", declaration, () -> {
+            declaration.accept(new VarallocatorVisitor2(table, registerArguments));
+            declaration.accept(new VarallocatorVisitor(table));
+        }));
 
         if (showVarAlloc) formatVars(program, table);
     }
@@ -189,7 +367,8 @@ public class VarAllocator {
                                             StringOps.toString(v.second.first.offset) :
                                             String.format("INCONSISTENT(%s/%s)",
                                                     StringOps.toString(v.second.first.offset),
-                                                    StringOps.toString(v.second.second.offset))),
+                                                    StringOps.toString(v.second.second.offset))) +
+                                    (v.second.second.register != null ? String.format(" (passed in $%d)", v.second.second.register) : ""),
                             AsciiGraphicalTableBuilder.Alignment.LEFT);
                 });
             }
@@ -224,8 +403,10 @@ public class VarAllocator {
                         var max_args = entry.stackLayout.outgoingAreaSize / 4;
 
                         for (int i = 0; i < max_args; ++i) {
+                            int index = max_args - i - 1;
                             ascii.line(String.format("arg %d", max_args - i),
-                                    String.format("<- SP + %d", (max_args - i - 1) * 4),
+                                    String.format("<- SP + %d", index * 4) +
+                                            (registerArguments && index < ARGUMENT_REGISTER_COUNT ? String.format(" (SPL: passed in $%d)", FIRST_ARGUMENT_REGISTER + index) : ""),
                                     AsciiGraphicalTableBuilder.Alignment.LEFT);
                         }
                     } else {
@@ -239,6 +420,7 @@ public class VarAllocator {
 
             System.out.printf("Variable allocation for procedure '%s':\n", procDec.name);
             System.out.printf("  - size of argument area = %s\n", StringOps.toString(entry.stackLayout.argumentAreaSize));
+            if (registerArguments) System.out.printf("  - arguments passed in registers = %d\n", entry.stackLayout.registerArgumentCount);
             System.out.printf("  - size of localvar area = %s\n", StringOps.toString(entry.stackLayout.localVarAreaSize));
             System.out.printf("  - size of outgoing area = %s\n", StringOps.toString(entry.stackLayout.outgoingAreaSize));
             System.out.printf("  - frame size = %s\n", Try.execute(entry.stackLayout::frameSize).map(Objects::toString).getOrElse("UNKNOWN"));
@@ -0,0 +1,112 @@
+package de.thm.mni.compilerbau.phases._05b_irgen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * This class computes the Ershov number of every {@link Expression} and {@link Variable} of a program.
+ * <p>
+ * The Ershov number of a tree is the number of registers needed to evaluate it without spilling, if the operand with
+ * the larger number is always evaluated first (Sethi-Ullman order). Leaves need one register. An inner node needs as
+ * many registers as its heavier operand, or one more if both operands need the same number of registers.
+ * Array accesses need at least three registers, since the bounds check compares the index against the array size
+ * while the address of the array is still held in a register.
+ */
+class ErshovNumbers extends DoNothingVisitor {
+    private final Map<Node, Integer> numbers = new IdentityHashMap<>();
+
+    /**
+     * @param node An expression or variable of the program this visitor was applied to.
+     * @return The Ershov number of the given node.
+     */
+    int of(Node node) {
+        return numbers.get(node);
+    }
+
+    private static int combine(int first, int second) {
+        return first == second ? first + 1 : Math.max(first, second);
+    }
+
+    //Expressions and variables
+    @Override
+    public void visit(IntLiteral intLiteral) {
+        numbers.put(intLiteral, 1);
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        binaryExpression.leftOperand.accept(this);
+        binaryExpression.rightOperand.accept(this);
+        numbers.put(binaryExpression, combine(of(binaryExpression.leftOperand), of(binaryExpression.rightOperand)));
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        variableExpression.variable.accept(this);
+        numbers.put(variableExpression, of(variableExpression.variable));
+    }
+
+    @Override
+    public void visit(NamedVariable namedVariable) {
+        numbers.put(namedVariable, 1);
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        arrayAccess.array.accept(this);
+        arrayAccess.index.accept(this);
+        numbers.put(arrayAccess, Math.max(combine(of(arrayAccess.array), of(arrayAccess.index)), 3));
+    }
+
+    //Statements
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        assignStatement.target.accept(this);
+        assignStatement.value.accept(this);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        for (Expression argument : callStatement.arguments) {
+            argument.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        for (Statement statement : compoundStatement.statements) {
+            statement.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        ifStatement.condition.accept(this);
+        ifStatement.thenPart.accept(this);
+        ifStatement.elsePart.accept(this);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        whileStatement.condition.accept(this);
+        whileStatement.body.accept(this);
+    }
+
+    //Declarations
+    @Override
+    public void visit(ProcedureDeclaration procedureDeclaration) {
+        for (Statement statement : procedureDeclaration.body) {
+            statement.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Program program) {
+        for (GlobalDeclaration declaration : program.declarations) {
+            declaration.accept(this);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package de.thm.mni.compilerbau.phases._05b_irgen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.ir.*;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * This class is used to translate the checked abstract syntax tree into the three-address IR.
+ * <p>
+ * Every procedure is translated into its own {@link ControlFlowGraph}. The IR is the common input of all optimizations
+ * and of the code generator.
+ */
+public class IrGenerator {
+    private final boolean ershovOptimization;
+    private final ErshovNumbers ershovNumbers = new ErshovNumbers();
+
+    /**
+     * @param ershovOptimization Whether the ershov register optimization should be used (--ershov)
+     */
+    public IrGenerator(boolean ershovOptimization) {
+        this.ershovOptimization = ershovOptimization;
+    }
+
+    /**
+     * Translates all procedures of the program.
+     *
+     * @param program The abstract syntax tree of the program, after phase 5 has been run.
+     * @param table   The global symbol table.
+     * @return The control flow graphs of all procedures in declaration order.
+     */
+    public List<ControlFlowGraph> generateIr(Program program, SymbolTable table) {
+        if (ershovOptimization) program.accept(ershovNumbers);
+
+        // The procedures are translated in parallel, each into a control flow graph of its own
+        List<ProcedureDeclaration> procedureDeclarations = program.declarations.stream()
+                .filter(declaration -> declaration instanceof ProcedureDeclaration)
+                .map(declaration -> (ProcedureDeclaration) declaration)
+                .collect(Collectors.toList());
+        return Parallel.map(procedureDeclarations, procedureDeclaration -> {
+            ProcedureEntry procedureEntry = (ProcedureEntry) table.lookup(procedureDeclaration.name);
+            return new IrGeneratorVisitor(procedureEntry).translate(procedureDeclaration);
+        });
+    }
+
+    /**
+     * Translates the body of a single procedure. Statements append instructions to the current block, expressions
+     * leave the operand holding their value in {@link #result}, variables leave their address there.
+     */
+    private class IrGeneratorVisitor extends DoNothingVisitor {
+        private final ProcedureEntry procedureEntry;
+        private final SymbolTable localTable;
+        private final Map<Identifier, LocalVariable> variables = new HashMap<>();
+        private ControlFlowGraph cfg;
+        private BasicBlock current;
+        private Operand result;
+
+        IrGeneratorVisitor(ProcedureEntry procedureEntry) {
+            this.procedureEntry = procedureEntry;
+            this.localTable = procedureEntry.localTable;
+        }
+
+        ControlFlowGraph translate(ProcedureDeclaration procedureDeclaration) {
+            cfg = new ControlFlowGraph(procedureDeclaration.name, procedureEntry);
+            for (ParameterDeclaration parameter : procedureDeclaration.parameters) {
+                cfg.parameters.add(declare(parameter.name, true));
+            }
+            for (VariableDeclaration variable : procedureDeclaration.variables) {
+                cfg.variables.add(declare(variable.name, false));
+            }
+
+            startBlock(cfg.newBlock());
+            for (Statement statement : procedureDeclaration.body) {
+                statement.accept(this);
+            }
+            current.terminator = new Return();
+            cfg.updatePredecessors();
+            return cfg;
+        }
+
+        private LocalVariable declare(Identifier name, boolean isParameter) {
+            LocalVariable variable = new LocalVariable(name, (VariableEntry) localTable.lookup(name), isParameter);
+            variables.put(name, variable);
+            return variable;
+        }
+
+        private void startBlock(BasicBlock block) {
+            cfg.blocks.add(block);
+            current = block;
+        }
+
+        private void emit(Instruction instruction) {
+            current.instructions.add(instruction);
+        }
+
+        private Temp emitBinary(BinaryExpression.Operator operator, Operand left, Operand right) {
+            Temp target = cfg.newTemp();
+            emit(new BinaryOperation(target, operator, left, right));
+            return target;
+        }
+
+        private Operand evaluate(Node node) {
+            node.accept(this);
+            return result;
+        }
+
+        /**
+         * With --ershov, the operand with the larger Ershov number is evaluated first, so that the whole tree needs as
+         * few registers as possible. Otherwise operands are always evaluated from left to right.
+         */
+        private Operand[] evaluateBoth(Node first, Node second) {
+            Operand[] operands = new Operand[2];
+            if (ershovOptimization && ershovNumbers.of(second) > ershovNumbers.of(first)) {
+                operands[1] = evaluate(second);
+                operands[0] = evaluate(first);
+            } else {
+                operands[0] = evaluate(first);
+                operands[1] = evaluate(second);
+            }
+            return operands;
+        }
+
+        /**
+         * Variables of type int which are not reference parameters are accessed directly through their frame slot.
+         */
+        private LocalVariable scalarVariable(Variable variable) {
+            if (!(variable instanceof NamedVariable)) return null;
+            LocalVariable localVariable = variables.get(((NamedVariable) variable).name);
+            return localVariable.isScalar() ? localVariable : null;
+        }
+
+        /**
+         * Ends the current block with a branch on the given condition.
+         */
+        private void branch(Expression condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+            BinaryExpression comparison = (BinaryExpression) condition;
+            Operand[] operands = evaluateBoth(comparison.leftOperand, comparison.rightOperand);
+            current.terminator = new Branch(comparison.operator, operands[0], operands[1], ifTrue, ifFalse);
+        }
+
+        //IntLiteral
+        @Override
+        public void visit(IntLiteral intLiteral) {
+            result = new Constant(intLiteral.value);
+        }
+
+        //BinaryExpression
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            Operand[] operands = evaluateBoth(binaryExpression.leftOperand, binaryExpression.rightOperand);
+            result = emitBinary(binaryExpression.operator, operands[0], operands[1]);
+        }
+
+        //VariableExpression
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            LocalVariable scalar = scalarVariable(variableExpression.variable);
+            Temp value = cfg.newTemp();
+            if (scalar != null) {
+                emit(new LoadVariable(value, scalar));
+            } else {
+                emit(new Load(value, evaluate(variableExpression.variable), 0));
+            }
+            result = value;
+        }
+
+        //NamedVariable
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            LocalVariable variable = variables.get(namedVariable.name);
+            Temp address = cfg.newTemp();
+            if (variable.entry.isReference) {
+                emit(new LoadVariable(address, variable));
+            } else {
+                emit(new AddressOf(address, variable));
+            }
+            result = address;
+        }
+
+        //ArrayAccess
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            ArrayType arrayType = (ArrayType) arrayAccess.array.dataType;
+            Operand[] operands = evaluateBoth(arrayAccess.array, arrayAccess.index);
+            emit(new BoundsCheck(operands[1], new Constant(arrayType.arraySize)));
+            Temp offset = emitBinary(BinaryExpression.Operator.MUL, operands[1], new Constant(arrayType.baseType.byteSize));
+            result = emitBinary(BinaryExpression.Operator.ADD, operands[0], offset);
+        }
+
+        //AssignStatement
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            LocalVariable scalar = scalarVariable(assignStatement.target);
+            if (scalar != null) {
+                emit(new StoreVariable(scalar, evaluate(assignStatement.value)));
+            } else {
+                Operand[] operands = evaluateBoth(assignStatement.target, assignStatement.value);
+                emit(new Store(operands[0], 0, operands[1]));
+            }
+        }
+
+        //CallStatement
+        @Override
+        public void visit(CallStatement callStatement) {
+            ProcedureEntry callee = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            List<Operand> arguments = new ArrayList<>();
+            for (int i = 0; i < callStatement.arguments.size(); i++) {
+                Expression argument = callStatement.arguments.get(i);
+                if (callee.parameterTypes.get(i).isReference) {
+                    arguments.add(evaluate(((VariableExpression) argument).variable));
+                } else {
+                    arguments.add(evaluate(argument));
+                }
+            }
+            emit(new Call(callStatement.procedureName, callee, arguments));
+        }
+
+        //IfStatement
+        @Override
+        public void visit(IfStatement ifStatement) {
+            BasicBlock thenBlock = cfg.newBlock();
+            BasicBlock elseBlock = ifStatement.elsePart instanceof EmptyStatement ? null : cfg.newBlock();
+            BasicBlock endBlock = cfg.newBlock();
+
+            branch(ifStatement.condition, thenBlock, elseBlock != null ? elseBlock : endBlock);
+            startBlock(thenBlock);
+            ifStatement.thenPart.accept(this);
+            current.terminator = new Jump(endBlock);
+            if (elseBlock != null) {
+                startBlock(elseBlock);
+                ifStatement.elsePart.accept(this);
+                current.terminator = new Jump(endBlock);
+            }
+            startBlock(endBlock);
+        }
+
+        //WhileStatement
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            BasicBlock headerBlock = cfg.newBlock();
+            BasicBlock bodyBlock = cfg.newBlock();
+            BasicBlock exitBlock = cfg.newBlock();
+
+            current.terminator = new Jump(headerBlock);
+            startBlock(headerBlock);
+            branch(whileStatement.condition, bodyBlock, exitBlock);
+            startBlock(bodyBlock);
+            whileStatement.body.accept(this);
+            current.terminator = new Jump(headerBlock);
+            startBlock(exitBlock);
+        }
+
+        //CompoundStatement
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            for (Statement statement : compoundStatement.statements) {
+                statement.accept(this);
+            }
+        }
+    }
+}
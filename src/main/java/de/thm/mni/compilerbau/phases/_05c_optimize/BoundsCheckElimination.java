@@ -0,0 +1,282 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class removes array bounds checks which can never fail, using a range analysis of a procedure in SSA form.
+ * <p>
+ * Every temporary gets an interval of the values it may hold. Inside a block, the interval is narrowed by the
+ * conditions of all branches leading to the block: in the body of while i &lt; 10, i is at most 9, behind the loop it
+ * is at least 10. The values of phis are joined over all incoming edges. Intervals which still grow after a few
+ * rounds of the analysis are widened to the limits of the int type, so that loops are analysed in finite time, and
+ * afterwards narrowed again by the branch conditions.
+ * <p>
+ * A bounds check is removed if the interval of the index lies within [0, size). If the program is compiled with
+ * --no-bounds-checks, all bounds checks are removed.
+ */
+class BoundsCheckElimination {
+    /**
+     * The rounds in which an interval may grow before it is widened.
+     */
+    private static final int ROUNDS_BEFORE_WIDENING = 2;
+    private static final int NARROWING_ROUNDS = 3;
+
+    /**
+     * A non-empty interval [low, high] of int values. Bounds are kept as long, so that overflows can be detected.
+     */
+    private static class Range {
+        static final Range FULL = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        final long low;
+        final long high;
+
+        private Range(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * @return The interval, FULL if it exceeds the int type (the value wraps around) or null if it is empty.
+         */
+        static Range of(long low, long high) {
+            if (low > high) return null;
+            if (low < Integer.MIN_VALUE || high > Integer.MAX_VALUE) return FULL;
+            return new Range(low, high);
+        }
+
+        Range join(Range other) {
+            if (other == null) return this;
+            return of(Math.min(low, other.low), Math.max(high, other.high));
+        }
+
+        Range intersect(Range other) {
+            return of(Math.max(low, other.low), Math.min(high, other.high));
+        }
+
+        boolean sameAs(Range other) {
+            return other != null && low == other.low && high == other.high;
+        }
+    }
+
+    /**
+     * A condition known to hold in a block: temp comparison other.
+     */
+    private static class Condition {
+        final Temp temp;
+        final BinaryExpression.Operator comparison;
+        final Operand other;
+        final BasicBlock block;
+
+        Condition(Temp temp, BinaryExpression.Operator comparison, Operand other, BasicBlock block) {
+            this.temp = temp;
+            this.comparison = comparison;
+            this.other = other;
+            this.block = block;
+        }
+    }
+
+    private final ControlFlowGraph cfg;
+    private final boolean boundsChecks;
+    private final Map<Temp, Range> ranges = new HashMap<>();
+    private final Map<BasicBlock, List<Condition>> conditions = new HashMap<>();
+
+    /**
+     * @param cfg          The procedure in SSA form.
+     * @param boundsChecks Whether bounds checks have to be kept unless they are proved to be unnecessary.
+     */
+    BoundsCheckElimination(ControlFlowGraph cfg, boolean boundsChecks) {
+        this.cfg = cfg;
+        this.boundsChecks = boundsChecks;
+    }
+
+    void run() {
+        if (boundsChecks) {
+            List<BasicBlock> order = cfg.reversePostorder();
+            collectConditions(order);
+            analyse(order);
+        }
+
+        for (BasicBlock block : cfg.blocks) {
+            block.instructions.removeIf(instruction -> instruction instanceof BoundsCheck && !isNeeded((BoundsCheck) instruction, block));
+        }
+    }
+
+    private boolean isNeeded(BoundsCheck boundsCheck, BasicBlock block) {
+        if (!boundsChecks) return false;
+        Range index = rangeAt(boundsCheck.index, block);
+        Range size = rangeAt(boundsCheck.size, block);
+        return index == null || size == null || index.low < 0 || index.high >= size.low;
+    }
+
+    /**
+     * A block with a single predecessor ending in a branch is only entered if the branch went its way. The conditions
+     * holding in a block are inherited by all blocks it dominates.
+     */
+    private void collectConditions(List<BasicBlock> order) {
+        Dominators dominators = new Dominators(cfg);
+        for (BasicBlock block : order) {
+            BasicBlock dominator = dominators.immediateDominator(block);
+            List<Condition> holding = new ArrayList<>(dominator == null ? List.of() : conditions.get(dominator));
+            if (block.predecessors.size() == 1 && block.predecessors.get(0).terminator instanceof Branch) {
+                BasicBlock predecessor = block.predecessors.get(0);
+                Branch branch = (Branch) predecessor.terminator;
+                if (branch.ifTrue != branch.ifFalse) {
+                    BinaryExpression.Operator comparison = block == branch.ifTrue ? branch.comparison : branch.comparison.flipComparison();
+                    if (branch.left instanceof Temp) {
+                        holding.add(new Condition((Temp) branch.left, comparison, branch.right, predecessor));
+                    }
+                    if (branch.right instanceof Temp) {
+                        holding.add(new Condition((Temp) branch.right, mirror(comparison), branch.left, predecessor));
+                    }
+                }
+            }
+            conditions.put(block, holding);
+        }
+    }
+
+    /**
+     * @return The comparison holding with swapped operands, e.g. a &lt; b holds exactly if b &gt; a holds.
+     */
+    private static BinaryExpression.Operator mirror(BinaryExpression.Operator comparison) {
+        switch (comparison) {
+            case LST:
+                return BinaryExpression.Operator.GRT;
+            case LSE:
+                return BinaryExpression.Operator.GRE;
+            case GRT:
+                return BinaryExpression.Operator.LST;
+            case GRE:
+                return BinaryExpression.Operator.LSE;
+            default:
+                return comparison;
+        }
+    }
+
+    private void analyse(List<BasicBlock> order) {
+        Map<Temp, Integer> updates = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                for (Instruction instruction : block.instructions) {
+                    if (instruction.target == null) continue;
+                    Range old = ranges.get(instruction.target);
+                    Range range = evaluate(instruction, block);
+                    if (range == null || range.sameAs(old)) continue;
+                    if (old != null) {
+                        range = range.join(old);
+                        if (updates.merge(instruction.target, 1, Integer::sum) > ROUNDS_BEFORE_WIDENING) {
+                            range = Range.of(range.low < old.low ? Integer.MIN_VALUE : old.low, range.high > old.high ? Integer.MAX_VALUE : old.high);
+                        }
+                        if (range.sameAs(old)) continue;
+                    }
+                    ranges.put(instruction.target, range);
+                    changed = true;
+                }
+            }
+        }
+
+        // Ranges which have been widened too far are narrowed again by the conditions of the loops
+        for (int round = 0; round < NARROWING_ROUNDS; round++) {
+            for (BasicBlock block : order) {
+                for (Instruction instruction : block.instructions) {
+                    if (instruction.target == null || !ranges.containsKey(instruction.target)) continue;
+                    Range range = evaluate(instruction, block);
+                    Range narrowed = range == null ? null : range.intersect(ranges.get(instruction.target));
+                    if (narrowed != null) ranges.put(instruction.target, narrowed);
+                }
+            }
+        }
+    }
+
+    private Range evaluate(Instruction instruction, BasicBlock block) {
+        if (instruction instanceof Phi) {
+            Range range = null;
+            for (Map.Entry<BasicBlock, Operand> incoming : ((Phi) instruction).incoming.entrySet()) {
+                Range value = rangeAt(incoming.getValue(), incoming.getKey());
+                range = range == null ? value : range.join(value);
+            }
+            return range;
+        }
+        if (instruction instanceof Move) {
+            return rangeAt(((Move) instruction).source, block);
+        }
+        if (instruction instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) instruction;
+            Range left = rangeAt(operation.left, block);
+            Range right = rangeAt(operation.right, block);
+            if (left == null || right == null) return null;
+            return evaluate(operation.operator, left, right);
+        }
+        // Values read from memory or the address of a variable may be anything
+        return Range.FULL;
+    }
+
+    private static Range evaluate(BinaryExpression.Operator operator, Range left, Range right) {
+        switch (operator) {
+            case ADD:
+                return Range.of(left.low + right.low, left.high + right.high);
+            case SUB:
+                return Range.of(left.low - right.high, left.high - right.low);
+            case MUL:
+            case DIV:
+                if (operator == BinaryExpression.Operator.DIV && right.low <= 0 && right.high >= 0) return Range.FULL;
+                // Both operations are monotonic in each operand, as long as the divisor does not change its sign
+                long[] corners = {
+                        combine(operator, left.low, right.low), combine(operator, left.low, right.high),
+                        combine(operator, left.high, right.low), combine(operator, left.high, right.high)
+                };
+                return Range.of(Arrays.stream(corners).min().getAsLong(), Arrays.stream(corners).max().getAsLong());
+        }
+        throw new IllegalArgumentException(operator.toString());
+    }
+
+    private static long combine(BinaryExpression.Operator operator, long left, long right) {
+        return operator == BinaryExpression.Operator.MUL ? left * right : left / right;
+    }
+
+    /**
+     * @return The values an operand may hold in the given block, or null if no value has been found yet.
+     */
+    private Range rangeAt(Operand operand, BasicBlock block) {
+        if (operand instanceof Constant) {
+            int value = ((Constant) operand).value;
+            return Range.of(value, value);
+        }
+        Range range = ranges.get(operand);
+        for (Condition condition : conditions.get(block)) {
+            if (range == null) break;
+            if (condition.temp != operand) continue;
+            Range other = rangeAt(condition.other, condition.block);
+            if (other != null) range = restrict(range, condition.comparison, other);
+        }
+        return range;
+    }
+
+    /**
+     * @return The values of a range which may satisfy the comparison with a value of the other range.
+     */
+    private static Range restrict(Range range, BinaryExpression.Operator comparison, Range other) {
+        switch (comparison) {
+            case EQU:
+                return range.intersect(other);
+            case NEQ:
+                if (other.low != other.high) return range;
+                if (range.low == other.low) return Range.of(range.low + 1, range.high);
+                if (range.high == other.low) return Range.of(range.low, range.high - 1);
+                return range;
+            case LST:
+                return Range.of(range.low, Math.min(range.high, other.high - 1));
+            case LSE:
+                return Range.of(range.low, Math.min(range.high, other.high));
+            case GRT:
+                return Range.of(Math.max(range.low, other.low + 1), range.high);
+            case GRE:
+                return Range.of(Math.max(range.low, other.low), range.high);
+        }
+        throw new IllegalArgumentException(comparison.toString());
+    }
+}
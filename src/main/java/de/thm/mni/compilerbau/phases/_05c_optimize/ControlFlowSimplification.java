@@ -0,0 +1,57 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.ArrayList;
+
+/**
+ * This class removes the jumps and blocks which became superfluous after other optimizations.
+ * <p>
+ * Control transfers to empty blocks which only jump elsewhere are redirected to the final destination, branches
+ * whose both targets are the same block become jumps, and a block which is only reached by a jump from a single
+ * predecessor is appended to that predecessor.
+ * This pass must only be run on procedures which are not in SSA form.
+ */
+class ControlFlowSimplification {
+    private final ControlFlowGraph cfg;
+
+    ControlFlowSimplification(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            cfg.updatePredecessors();
+            for (BasicBlock block : cfg.blocks) {
+                if (block == cfg.entryBlock() || !block.instructions.isEmpty() || !(block.terminator instanceof Jump)) continue;
+                BasicBlock destination = ((Jump) block.terminator).destination;
+                if (destination == block) continue;
+                for (BasicBlock predecessor : new ArrayList<>(block.predecessors)) {
+                    predecessor.terminator.replaceSuccessor(block, destination);
+                    changed = true;
+                }
+            }
+
+            for (BasicBlock block : cfg.blocks) {
+                if (block.terminator instanceof Branch) {
+                    Branch branch = (Branch) block.terminator;
+                    if (branch.ifTrue == branch.ifFalse) block.terminator = new Jump(branch.ifTrue);
+                }
+            }
+            cfg.removeUnreachableBlocks();
+
+            for (BasicBlock block : new ArrayList<>(cfg.blocks)) {
+                if (!cfg.blocks.contains(block) || !(block.terminator instanceof Jump)) continue;
+                BasicBlock destination = ((Jump) block.terminator).destination;
+                if (destination == block || destination == cfg.entryBlock() || destination.predecessors.size() != 1) continue;
+                block.instructions.addAll(destination.instructions);
+                block.terminator = destination.terminator;
+                cfg.blocks.remove(destination);
+                changed = true;
+            }
+        }
+        cfg.updatePredecessors();
+    }
+}
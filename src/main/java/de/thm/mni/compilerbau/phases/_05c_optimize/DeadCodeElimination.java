@@ -0,0 +1,43 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class removes instructions whose results are never needed.
+ * <p>
+ * Instructions with side effects are always needed. Every other instruction is only needed if one of the temporaries
+ * it defines is read by a needed instruction.
+ */
+class DeadCodeElimination {
+    private final ControlFlowGraph cfg;
+
+    DeadCodeElimination(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        Map<Temp, List<Instruction>> definitions = new HashMap<>();
+        Deque<Instruction> worklist = new ArrayDeque<>();
+        Set<Instruction> needed = new HashSet<>();
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.allInstructions()) {
+                if (instruction.target != null) definitions.computeIfAbsent(instruction.target, temp -> new ArrayList<>()).add(instruction);
+                if (instruction.hasSideEffects() && needed.add(instruction)) worklist.add(instruction);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            for (Operand operand : worklist.poll().operands()) {
+                for (Instruction definition : definitions.getOrDefault(operand, List.of())) {
+                    if (needed.add(definition)) worklist.add(definition);
+                }
+            }
+        }
+
+        for (BasicBlock block : cfg.blocks) {
+            block.instructions.retainAll(needed);
+        }
+    }
+}
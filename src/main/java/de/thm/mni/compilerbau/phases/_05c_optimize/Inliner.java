@@ -0,0 +1,365 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.*;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.VariableEntry;
+
+import java.util.*;
+
+/**
+ * This class replaces calls of small procedures by a copy of the called procedure's body.
+ * <p>
+ * The procedures are visited bottom-up in the call graph, so the callees already contain the procedures inlined into
+ * them. A call is expanded if the callee is not (mutually) recursive, its size in IR instructions does not exceed the
+ * threshold and the caller does not grow beyond {@link #MAX_PROCEDURE_SIZE}.
+ * <p>
+ * The local variables and value parameters of the callee become new local variables of the caller, placed behind its
+ * other variables in the frame. Their names get the number of the call site within the caller, so the copies made for
+ * different calls of the same procedure stay distinguishable. A value parameter is initialized with its argument, a local variable with 0 like at
+ * the beginning of a procedure. A reference parameter does not need a slot: the callee only reads the address it
+ * holds, which is replaced by the address passed as argument. The referenced variable is still accessed through
+ * this address, so the aliasing of reference parameters is kept.
+ */
+class Inliner {
+    /**
+     * The size budget of a procedure: no call is inlined into a procedure which would grow beyond this number of
+     * instructions.
+     */
+    private static final int MAX_PROCEDURE_SIZE = 2000;
+
+    private final int threshold;
+    private final Map<ProcedureEntry, ControlFlowGraph> procedures = new HashMap<>();
+    private final List<String> report = new ArrayList<>();
+
+    /**
+     * @param threshold The maximum number of IR instructions of an inlined procedure, 0 to disable inlining.
+     */
+    Inliner(int threshold) {
+        this.threshold = threshold;
+    }
+
+    void run(List<ControlFlowGraph> cfgs) {
+        if (threshold <= 0) return;
+        for (ControlFlowGraph cfg : cfgs) {
+            procedures.put(cfg.procedure, cfg);
+        }
+
+        Set<ProcedureEntry> recursive = recursiveProcedures(cfgs);
+        for (ControlFlowGraph caller : bottomUp(cfgs)) {
+            inlineCalls(caller, recursive);
+        }
+    }
+
+    /**
+     * @return A line for each expanded call site.
+     */
+    List<String> report() {
+        return report;
+    }
+
+    private List<ProcedureEntry> callees(ControlFlowGraph cfg) {
+        List<ProcedureEntry> callees = new ArrayList<>();
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof Call && procedures.containsKey(((Call) instruction).procedure)) {
+                    callees.add(((Call) instruction).procedure);
+                }
+            }
+        }
+        return callees;
+    }
+
+    /**
+     * @return The procedures which may call themselves, directly or through other procedures.
+     */
+    private Set<ProcedureEntry> recursiveProcedures(List<ControlFlowGraph> cfgs) {
+        Set<ProcedureEntry> recursive = new HashSet<>();
+        for (ControlFlowGraph cfg : cfgs) {
+            Set<ProcedureEntry> reached = new HashSet<>();
+            Deque<ProcedureEntry> worklist = new ArrayDeque<>(callees(cfg));
+            while (!worklist.isEmpty()) {
+                ProcedureEntry procedure = worklist.pop();
+                if (reached.add(procedure)) worklist.addAll(callees(procedures.get(procedure)));
+            }
+            if (reached.contains(cfg.procedure)) recursive.add(cfg.procedure);
+        }
+        return recursive;
+    }
+
+    /**
+     * @return The procedures in an order where every procedure comes after the procedures it calls, unless they are
+     * recursive.
+     */
+    private List<ControlFlowGraph> bottomUp(List<ControlFlowGraph> cfgs) {
+        List<ControlFlowGraph> order = new ArrayList<>();
+        Set<ControlFlowGraph> visited = new HashSet<>();
+        for (ControlFlowGraph cfg : cfgs) {
+            visitCallees(cfg, visited, order);
+        }
+        return order;
+    }
+
+    private void visitCallees(ControlFlowGraph cfg, Set<ControlFlowGraph> visited, List<ControlFlowGraph> order) {
+        if (!visited.add(cfg)) return;
+        for (ProcedureEntry callee : callees(cfg)) {
+            visitCallees(procedures.get(callee), visited, order);
+        }
+        order.add(cfg);
+    }
+
+    private static int size(ControlFlowGraph cfg) {
+        int size = 0;
+        for (BasicBlock block : cfg.blocks) {
+            size += block.instructions.size() + 1;
+        }
+        return size;
+    }
+
+    private void inlineCalls(ControlFlowGraph caller, Set<ProcedureEntry> recursive) {
+        int callSites = 0;
+        for (int b = 0; b < caller.blocks.size(); b++) {
+            BasicBlock block = caller.blocks.get(b);
+            for (int i = 0; i < block.instructions.size(); i++) {
+                if (!(block.instructions.get(i) instanceof Call)) continue;
+                Call call = (Call) block.instructions.get(i);
+                ControlFlowGraph callee = procedures.get(call.procedure);
+                if (callee == null || callee == caller || recursive.contains(call.procedure)) continue;
+                int calleeSize = size(callee);
+                if (calleeSize > threshold || size(caller) + calleeSize > MAX_PROCEDURE_SIZE) continue;
+
+                report.add(String.format("%s: inlined call of %s in %s (%d instructions)", caller.name, call.procedureName, block.label(), calleeSize));
+                inline(caller, b, i, callee, ++callSites);
+                // The rest of the block has been moved into a block of its own, which is visited later
+                break;
+            }
+        }
+        if (callSites == 0) return;
+
+        caller.updatePredecessors();
+        updateStackLayout(caller);
+    }
+
+    /**
+     * A procedure calling other procedures needs an outgoing area large enough for all of them. A procedure whose calls
+     * have all been inlined becomes a leaf procedure.
+     */
+    private static void updateStackLayout(ControlFlowGraph caller) {
+        int outgoingAreaSize = -1;
+        for (BasicBlock block : caller.blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof Call) {
+                    outgoingAreaSize = Math.max(outgoingAreaSize, ((Call) instruction).procedure.parameterTypes.size() * 4);
+                }
+            }
+        }
+        caller.procedure.stackLayout.outgoingAreaSize = outgoingAreaSize;
+    }
+
+    /**
+     * Replaces a call by a copy of the callee's body.
+     *
+     * @param caller The calling procedure.
+     * @param b      The index of the block containing the call.
+     * @param i      The index of the call in its block.
+     * @param callee The called procedure.
+     * @param site   The number of the call site among the inlined calls of the caller.
+     */
+    private void inline(ControlFlowGraph caller, int b, int i, ControlFlowGraph callee, int site) {
+        BasicBlock block = caller.blocks.get(b);
+        Call call = (Call) block.instructions.get(i);
+
+        // The instructions behind the call continue in a block of their own
+        BasicBlock continuation = caller.newBlock();
+        List<Instruction> rest = block.instructions.subList(i + 1, block.instructions.size());
+        continuation.instructions.addAll(rest);
+        rest.clear();
+        block.instructions.remove(i);
+        continuation.terminator = block.terminator;
+
+        BodyCopier copier = new BodyCopier(caller, callee, site, continuation);
+        for (int p = 0; p < callee.parameters.size(); p++) {
+            LocalVariable parameter = callee.parameters.get(p);
+            Operand argument = call.arguments.get(p);
+            if (parameter.entry.isReference) {
+                // The argument is copied, so that it can be used anywhere in the inlined body
+                Temp address = caller.newTemp();
+                block.instructions.add(new Move(address, argument));
+                copier.addresses.put(parameter, address);
+            } else {
+                block.instructions.add(new StoreVariable(copier.variable(parameter), argument));
+            }
+        }
+        for (LocalVariable variable : callee.variables) {
+            if (variable.isScalar()) block.instructions.add(new StoreVariable(copier.variable(variable), Constant.ZERO));
+        }
+
+        List<BasicBlock> copies = new ArrayList<>();
+        for (BasicBlock calleeBlock : callee.blocks) {
+            copies.add(copier.block(calleeBlock));
+        }
+        for (BasicBlock calleeBlock : callee.blocks) {
+            BasicBlock copy = copier.block(calleeBlock);
+            for (Instruction instruction : calleeBlock.instructions) {
+                copy.instructions.add(copier.copy(instruction));
+            }
+            copy.terminator = (Terminator) copier.copy(calleeBlock.terminator);
+        }
+        block.terminator = new Jump(copier.block(callee.entryBlock()));
+
+        caller.blocks.addAll(b + 1, copies);
+        caller.blocks.add(b + 1 + copies.size(), continuation);
+    }
+
+    /**
+     * This class copies the instructions of an inlined procedure into the caller, giving them new temporaries,
+     * variables and blocks of the caller.
+     */
+    private static class BodyCopier implements InstructionVisitor {
+        private final ControlFlowGraph caller;
+        private final ControlFlowGraph callee;
+        private final int site;
+        private final BasicBlock continuation;
+        private final Map<Temp, Temp> temps = new HashMap<>();
+        private final Map<LocalVariable, LocalVariable> variables = new HashMap<>();
+        private final Map<BasicBlock, BasicBlock> blocks = new HashMap<>();
+        /**
+         * The temporaries holding the addresses passed for the reference parameters.
+         */
+        final Map<LocalVariable, Temp> addresses = new HashMap<>();
+        private Instruction copy;
+
+        BodyCopier(ControlFlowGraph caller, ControlFlowGraph callee, int site, BasicBlock continuation) {
+            this.caller = caller;
+            this.callee = callee;
+            this.site = site;
+            this.continuation = continuation;
+        }
+
+        Instruction copy(Instruction instruction) {
+            instruction.accept(this);
+            return copy;
+        }
+
+        BasicBlock block(BasicBlock calleeBlock) {
+            return blocks.computeIfAbsent(calleeBlock, block -> caller.newBlock());
+        }
+
+        /**
+         * @return The variable of the caller taking the place of a variable or value parameter of the callee.
+         */
+        LocalVariable variable(LocalVariable calleeVariable) {
+            return variables.computeIfAbsent(calleeVariable, variable -> {
+                VariableEntry entry = new VariableEntry(variable.entry.type, false);
+                var stackLayout = caller.procedure.stackLayout;
+                stackLayout.localVarAreaSize += variable.entry.type.byteSize;
+                entry.offset = -stackLayout.localVarAreaSize;
+                LocalVariable copy = new LocalVariable(new Identifier(callee.name + "." + variable.name + "#" + site), entry, false);
+                caller.variables.add(copy);
+                return copy;
+            });
+        }
+
+        private Temp temp(Temp calleeTemp) {
+            return calleeTemp == null ? null : temps.computeIfAbsent(calleeTemp, temp -> caller.newTemp());
+        }
+
+        private Operand operand(Operand operand) {
+            return operand instanceof Temp ? temp((Temp) operand) : operand;
+        }
+
+        //Move
+        @Override
+        public void visit(Move move) {
+            copy = new Move(temp(move.target), operand(move.source));
+        }
+
+        //BinaryOperation
+        @Override
+        public void visit(BinaryOperation binaryOperation) {
+            copy = new BinaryOperation(temp(binaryOperation.target), binaryOperation.operator,
+                    operand(binaryOperation.left), operand(binaryOperation.right));
+        }
+
+        //Shift
+        @Override
+        public void visit(Shift shift) {
+            copy = new Shift(temp(shift.target), shift.kind, operand(shift.source), shift.amount);
+        }
+
+        //LoadVariable
+        @Override
+        public void visit(LoadVariable loadVariable) {
+            Temp address = addresses.get(loadVariable.variable);
+            if (address != null) {
+                copy = new Move(temp(loadVariable.target), address);
+            } else {
+                copy = new LoadVariable(temp(loadVariable.target), variable(loadVariable.variable));
+            }
+        }
+
+        //StoreVariable
+        @Override
+        public void visit(StoreVariable storeVariable) {
+            copy = new StoreVariable(variable(storeVariable.variable), operand(storeVariable.value));
+        }
+
+        //AddressOf
+        @Override
+        public void visit(AddressOf addressOf) {
+            copy = new AddressOf(temp(addressOf.target), variable(addressOf.variable));
+        }
+
+        //Load
+        @Override
+        public void visit(Load load) {
+            copy = new Load(temp(load.target), operand(load.address), load.offset);
+        }
+
+        //Store
+        @Override
+        public void visit(Store store) {
+            copy = new Store(operand(store.address), store.offset, operand(store.value));
+        }
+
+        //BoundsCheck
+        @Override
+        public void visit(BoundsCheck boundsCheck) {
+            copy = new BoundsCheck(operand(boundsCheck.index), operand(boundsCheck.size));
+        }
+
+        //Call
+        @Override
+        public void visit(Call call) {
+            List<Operand> arguments = new ArrayList<>();
+            for (Operand argument : call.arguments) {
+                arguments.add(operand(argument));
+            }
+            copy = new Call(call.procedureName, call.procedure, arguments);
+        }
+
+        //Jump
+        @Override
+        public void visit(Jump jump) {
+            copy = new Jump(block(jump.destination));
+        }
+
+        //Branch
+        @Override
+        public void visit(Branch branch) {
+            copy = new Branch(branch.comparison, operand(branch.left), operand(branch.right), block(branch.ifTrue), block(branch.ifFalse));
+        }
+
+        //Return
+        @Override
+        public void visit(Return ret) {
+            copy = new Jump(continuation);
+        }
+
+        //Phi
+        @Override
+        public void visit(Phi phi) {
+            throw new IllegalStateException("Procedures have to be inlined before they are put into SSA form!");
+        }
+    }
+}
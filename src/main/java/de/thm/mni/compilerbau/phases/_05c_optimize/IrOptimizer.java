@@ -0,0 +1,68 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.ControlFlowGraph;
+
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class runs the optimizations on the IR of the currently compiled SPL program.
+ * <p>
+ * Small procedures are inlined first, then calls in tail position are removed or marked. Then every procedure is put into SSA form, optimized and taken out of SSA form
+ * again before it is passed on to the code generator.
+ */
+public class IrOptimizer {
+    private final boolean showIr;
+    private final boolean boundsChecks;
+    private final int inlineThreshold;
+
+    /**
+     * @param showIr       Whether to print the IR after all optimizations have been applied (--ir)
+     * @param boundsChecks Whether array accesses have to be checked unless they are proved to be in bounds (disabled
+     *                     by --no-bounds-checks)
+     * @param inlineThreshold The maximum size of inlined procedures in IR instructions, 0 to disable inlining
+     *                        (--inline-threshold)
+     */
+    public IrOptimizer(boolean showIr, boolean boundsChecks, int inlineThreshold) {
+        this.showIr = showIr;
+        this.boundsChecks = boundsChecks;
+        this.inlineThreshold = inlineThreshold;
+    }
+
+    /**
+     * Optimizes the given procedures in place.
+     *
+     * @param procedures The IR of all procedures of the program.
+     */
+    public void optimize(List<ControlFlowGraph> procedures) {
+        Inliner inliner = new Inliner(inlineThreshold);
+        inliner.run(procedures);
+
+        // After inlining, each procedure is optimized on its own, the procedures are optimized in parallel
+        Set<ProcedureEntry> entries = procedures.stream().map(cfg -> cfg.procedure).collect(Collectors.toSet());
+        Parallel.forEach(procedures, cfg -> {
+            new TailCallElimination(cfg, entries).run();
+            new SsaBuilder(cfg).build();
+            new SparseConditionalConstantPropagation(cfg).run();
+            new BoundsCheckElimination(cfg, boundsChecks).run();
+            new LoopInvariantCodeMotion(cfg).run();
+            new DeadCodeElimination(cfg).run();
+            new SsaDestruction(cfg).run();
+            new ControlFlowSimplification(cfg).run();
+        });
+
+        if (showIr) {
+            for (String line : inliner.report()) {
+                System.out.println(line);
+            }
+            if (!inliner.report().isEmpty()) System.out.println();
+            for (ControlFlowGraph cfg : procedures) {
+                System.out.println(cfg);
+            }
+        }
+    }
+}
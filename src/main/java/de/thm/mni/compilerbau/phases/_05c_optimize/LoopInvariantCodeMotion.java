@@ -0,0 +1,453 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class moves computations which yield the same value in every iteration of a loop in front of the loop
+ * (loop-invariant code motion) for a procedure in SSA form.
+ * <p>
+ * A loop consists of a header and all blocks which can reach a back edge to the header without passing through it.
+ * Loops are processed from the innermost to the outermost one, so that a computation may leave several loops.
+ * The invariant instructions are moved into a preheader: the only block outside of the loop jumping to the header.
+ * If there is no such block, an empty one is inserted before the header. The loops are only found once: a preheader
+ * inserted for an inner loop is added to the loops around it directly.
+ * <p>
+ * An instruction is invariant if all of its operands are defined outside of the loop or by invariant instructions.
+ * The instructions are executed in the preheader even if the loop body is never entered, so only instructions which
+ * can neither fail nor change anything are moved:
+ * <ul>
+ * <li>arithmetic operations, except divisions by operands which could be zero,</li>
+ * <li>addresses of variables and reads of variables which are not written in the loop,</li>
+ * <li>loads of a word inside of a variable or inside of the variable a reference parameter points to, if no store and
+ * no call in the loop may write to this variable.</li>
+ * </ul>
+ * A reference parameter may point to the same variable as another reference parameter, but never to a variable of
+ * the procedure itself. A called procedure may write to the variables behind the reference parameters and to every
+ * variable of the procedure passed to any call as a reference argument.
+ */
+class LoopInvariantCodeMotion {
+    /**
+     * The memory accessed by an instruction: a variable of the procedure, the variable behind a reference parameter
+     * or any memory (UNKNOWN).
+     */
+    private static class Location {
+        static final Location UNKNOWN = new Location(null, false);
+
+        final LocalVariable variable;
+        final boolean throughReference;
+
+        Location(LocalVariable variable, boolean throughReference) {
+            this.variable = variable;
+            this.throughReference = throughReference;
+        }
+    }
+
+    /**
+     * The memory written by the stores and calls of a loop.
+     */
+    private class Writes {
+        private final Set<LocalVariable> variables = new HashSet<>();
+        private boolean any = false;
+        private boolean unknown = false;
+        private boolean throughReference = false;
+        private boolean containsCall = false;
+
+        void add(Location location) {
+            any = true;
+            if (location == Location.UNKNOWN) unknown = true;
+            else if (location.throughReference) throughReference = true;
+            else variables.add(location.variable);
+        }
+
+        boolean mayWrite(Location location) {
+            if (location == Location.UNKNOWN) return any || containsCall;
+            if (unknown) return true;
+            if (location.throughReference) return throughReference || containsCall;
+            return variables.contains(location.variable) || containsCall && escapingVariables.contains(location.variable);
+        }
+    }
+
+    private final ControlFlowGraph cfg;
+    private final Map<Temp, Instruction> definitions = new HashMap<>();
+    private final Map<Instruction, BasicBlock> blockOf = new HashMap<>();
+    private final Set<LocalVariable> escapingVariables = new HashSet<>();
+    private final Map<Temp, List<Instruction>> uses = new HashMap<>();
+    /**
+     * The position of every reachable block in reverse postorder. A preheader is placed right in front of its header.
+     */
+    private final Map<BasicBlock, Integer> positions = new HashMap<>();
+    /**
+     * The position of every block in the list of blocks. A preheader is placed right in front of its header.
+     */
+    private final Map<BasicBlock, Integer> layout = new HashMap<>();
+    private final Map<BasicBlock, BasicBlock> insertedPreheaders = new HashMap<>();
+
+    LoopInvariantCodeMotion(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        cfg.updatePredecessors();
+        Map<BasicBlock, Set<BasicBlock>> loops = findLoops();
+        if (loops.isEmpty()) return;
+        collectDefinitions();
+
+        // The loops containing the header of another loop also contain the preheader inserted in front of it
+        Map<BasicBlock, List<BasicBlock>> enclosingLoops = new HashMap<>();
+        for (Map.Entry<BasicBlock, Set<BasicBlock>> loop : loops.entrySet()) {
+            for (BasicBlock block : loop.getValue()) {
+                if (block != loop.getKey() && loops.containsKey(block)) {
+                    enclosingLoops.computeIfAbsent(block, header -> new ArrayList<>()).add(loop.getKey());
+                }
+            }
+        }
+
+        // The smallest loop is processed first, loops of the same size in the order they have been found
+        Map<BasicBlock, Integer> discovery = new HashMap<>();
+        for (BasicBlock header : loops.keySet()) {
+            discovery.put(header, discovery.size());
+        }
+        TreeSet<BasicBlock> pending = new TreeSet<>(Comparator.<BasicBlock>comparingInt(header -> loops.get(header).size())
+                .thenComparingInt(discovery::get));
+        pending.addAll(loops.keySet());
+        while (!pending.isEmpty()) {
+            BasicBlock header = pending.pollFirst();
+            hoist(header, loops.get(header));
+            BasicBlock preheader = insertedPreheaders.get(header);
+            if (preheader == null) continue;
+            for (BasicBlock enclosing : enclosingLoops.getOrDefault(header, List.of())) {
+                if (!pending.remove(enclosing)) continue;
+                loops.get(enclosing).add(preheader);
+                pending.add(enclosing);
+            }
+        }
+
+        List<BasicBlock> blocks = new ArrayList<>();
+        for (BasicBlock block : cfg.blocks) {
+            BasicBlock preheader = insertedPreheaders.get(block);
+            if (preheader != null) blocks.add(preheader);
+            blocks.add(block);
+        }
+        cfg.blocks.clear();
+        cfg.blocks.addAll(blocks);
+        cfg.updatePredecessors();
+    }
+
+    private void collectDefinitions() {
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.allInstructions()) {
+                blockOf.put(instruction, block);
+                if (instruction.target != null) definitions.put(instruction.target, instruction);
+                addUses(instruction);
+            }
+        }
+
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (!(instruction instanceof Call)) continue;
+                for (Operand argument : instruction.operands()) {
+                    Location location = locationOf(argument);
+                    if (location != Location.UNKNOWN && !location.throughReference) escapingVariables.add(location.variable);
+                }
+            }
+        }
+
+        List<BasicBlock> reversePostorder = cfg.reversePostorder();
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            positions.put(reversePostorder.get(i), 2 * i + 1);
+        }
+        for (int i = 0; i < cfg.blocks.size(); i++) {
+            layout.put(cfg.blocks.get(i), 2 * i + 1);
+        }
+    }
+
+    private void addUses(Instruction instruction) {
+        for (Operand operand : instruction.operands()) {
+            if (operand instanceof Temp) uses.computeIfAbsent((Temp) operand, temp -> new ArrayList<>()).add(instruction);
+        }
+    }
+
+    /**
+     * @return The blocks of every loop, keyed by the header of the loop.
+     */
+    private Map<BasicBlock, Set<BasicBlock>> findLoops() {
+        Dominators dominators = new Dominators(cfg);
+        Map<BasicBlock, Set<BasicBlock>> loops = new LinkedHashMap<>();
+        for (BasicBlock block : cfg.blocks) {
+            for (BasicBlock header : block.successors()) {
+                if (!dominators.dominates(header, block)) continue;
+                Set<BasicBlock> loop = loops.computeIfAbsent(header, h -> new HashSet<>(List.of(h)));
+                Deque<BasicBlock> worklist = new ArrayDeque<>();
+                if (loop.add(block)) worklist.add(block);
+                while (!worklist.isEmpty()) {
+                    for (BasicBlock predecessor : worklist.poll().predecessors) {
+                        if (loop.add(predecessor)) worklist.add(predecessor);
+                    }
+                }
+            }
+        }
+        return loops;
+    }
+
+    private void hoist(BasicBlock header, Set<BasicBlock> loop) {
+        if (header == cfg.entryBlock()) return;
+        Writes writes = new Writes();
+        for (BasicBlock block : loop) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof StoreVariable) writes.add(new Location(((StoreVariable) instruction).variable, false));
+                if (instruction instanceof Store) writes.add(locationOf(((Store) instruction).address));
+                if (instruction instanceof Call) writes.containsCall = true;
+            }
+        }
+
+        List<Instruction> invariant = new ArrayList<>();
+        Set<Instruction> invariantSet = new HashSet<>();
+        List<BasicBlock> order = new ArrayList<>();
+        for (BasicBlock block : loop) {
+            if (positions.containsKey(block)) order.add(block);
+        }
+        order.sort(Comparator.comparingInt(positions::get));
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                for (Instruction instruction : block.instructions) {
+                    if (invariantSet.contains(instruction) || !canBeHoisted(instruction, writes)) continue;
+                    boolean operandsInvariant = true;
+                    for (Operand operand : instruction.operands()) {
+                        Instruction definition = definitions.get(operand);
+                        if (definition != null && loop.contains(blockOf.get(definition)) && !invariantSet.contains(definition)) {
+                            operandsInvariant = false;
+                        }
+                    }
+                    if (operandsInvariant) {
+                        invariant.add(instruction);
+                        invariantSet.add(instruction);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        if (writes.containsCall) keepExpensiveComputations(loop, invariant, invariantSet);
+        if (invariant.isEmpty()) return;
+
+        // The instructions are moved in an order in which every operand is defined before it is used
+        List<Instruction> ordered = new ArrayList<>();
+        for (BasicBlock block : order) {
+            for (Instruction instruction : block.instructions) {
+                if (invariantSet.contains(instruction)) ordered.add(instruction);
+            }
+            block.instructions.removeAll(invariantSet);
+        }
+        BasicBlock preheader = preheader(header, loop);
+        preheader.instructions.addAll(ordered);
+        for (Instruction instruction : ordered) {
+            blockOf.put(instruction, preheader);
+        }
+        removeDuplicates(preheader);
+    }
+
+    /**
+     * The same value is often computed several times in a loop, e.g. the address of an array accessed twice.
+     * Once these computations are next to each other in the preheader, all but the first one are removed.
+     */
+    private void removeDuplicates(BasicBlock preheader) {
+        Map<List<Object>, Temp> computed = new HashMap<>();
+        Set<List<Object>> memoryReads = new HashSet<>();
+        for (Iterator<Instruction> iterator = preheader.instructions.iterator(); iterator.hasNext(); ) {
+            Instruction instruction = iterator.next();
+            if (instruction.hasSideEffects()) {
+                // The preheader may have been a block of the procedure writing to memory
+                computed.keySet().removeAll(memoryReads);
+                continue;
+            }
+            List<Object> value = valueOf(instruction);
+            if (value == null) continue;
+            if (instruction instanceof Load || instruction instanceof LoadVariable) memoryReads.add(value);
+            Temp existing = computed.putIfAbsent(value, instruction.target);
+            if (existing != null) {
+                iterator.remove();
+                replaceUses(instruction.target, existing);
+            }
+        }
+    }
+
+    private void replaceUses(Temp temp, Temp replacement) {
+        List<Instruction> users = uses.getOrDefault(temp, List.of());
+        for (Instruction user : users) {
+            user.replaceOperands(operand -> operand == temp ? replacement : operand);
+        }
+        uses.computeIfAbsent(replacement, t -> new ArrayList<>()).addAll(users);
+    }
+
+    /**
+     * Describes the value computed by an instruction by its kind, its operator and its operands. Temporaries and
+     * variables are compared by identity, so different variables with the same name are different values.
+     *
+     * @return The description of the value, or null for instructions whose values are never the same (phis).
+     */
+    private static List<Object> valueOf(Instruction instruction) {
+        if (instruction instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) instruction;
+            return List.of(BinaryOperation.class, operation.operator, operation.left, operation.right);
+        }
+        if (instruction instanceof Shift) {
+            Shift shift = (Shift) instruction;
+            return List.of(Shift.class, shift.kind, shift.source, shift.amount);
+        }
+        if (instruction instanceof Move) return List.of(Move.class, ((Move) instruction).source);
+        if (instruction instanceof AddressOf) return List.of(AddressOf.class, ((AddressOf) instruction).variable);
+        if (instruction instanceof LoadVariable) return List.of(LoadVariable.class, ((LoadVariable) instruction).variable);
+        if (instruction instanceof Load) return List.of(Load.class, ((Load) instruction).address, ((Load) instruction).offset);
+        return null;
+    }
+
+    /**
+     * Values computed in front of a loop with a call inside are live across the call, so they have to be kept in a
+     * stack slot and reloaded on every use. This only pays off if the value needs at least two instructions to be
+     * computed, so single instructions like the address of a variable are recomputed inside of the loop.
+     */
+    private void keepExpensiveComputations(Set<BasicBlock> loop, List<Instruction> invariant, Set<Instruction> invariantSet) {
+        Set<Operand> usedInLoop = new HashSet<>();
+        for (BasicBlock block : loop) {
+            for (Instruction instruction : block.allInstructions()) {
+                if (!invariantSet.contains(instruction)) usedInLoop.addAll(instruction.operands());
+            }
+        }
+
+        Set<Instruction> needed = new HashSet<>();
+        for (Instruction root : invariant) {
+            if (!usedInLoop.contains(root.target)) continue;
+            Set<Instruction> computation = new HashSet<>();
+            Deque<Instruction> worklist = new ArrayDeque<>(List.of(root));
+            while (!worklist.isEmpty()) {
+                Instruction instruction = worklist.poll();
+                if (!computation.add(instruction)) continue;
+                for (Operand operand : instruction.operands()) {
+                    Instruction definition = definitions.get(operand);
+                    if (invariantSet.contains(definition)) worklist.add(definition);
+                }
+            }
+            if (computation.size() >= 2) needed.addAll(computation);
+        }
+        invariant.retainAll(needed);
+        invariantSet.retainAll(needed);
+    }
+
+    private boolean canBeHoisted(Instruction instruction, Writes writes) {
+        if (instruction instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) instruction;
+            if (operation.operator != BinaryExpression.Operator.DIV) return true;
+            return operation.right instanceof Constant && ((Constant) operation.right).value != 0;
+        }
+        if (instruction instanceof Move || instruction instanceof AddressOf) return true;
+        if (instruction instanceof LoadVariable) {
+            return !writes.mayWrite(new Location(((LoadVariable) instruction).variable, false));
+        }
+        if (instruction instanceof Load) {
+            Load load = (Load) instruction;
+            Location location = locationOf(load.address);
+            return isInsideVariable(load.address, load.offset) && !writes.mayWrite(location);
+        }
+        return false;
+    }
+
+    /**
+     * @return The memory an address points into, following the address arithmetic back to its base.
+     */
+    private Location locationOf(Operand address) {
+        Instruction definition = definitions.get(address);
+        if (definition instanceof AddressOf) return new Location(((AddressOf) definition).variable, false);
+        if (definition instanceof LoadVariable && ((LoadVariable) definition).variable.entry.isReference) {
+            return new Location(((LoadVariable) definition).variable, true);
+        }
+        if (definition instanceof Move) return locationOf(((Move) definition).source);
+        if (definition instanceof BinaryOperation && ((BinaryOperation) definition).operator == BinaryExpression.Operator.ADD) {
+            Location left = locationOf(((BinaryOperation) definition).left);
+            Location right = locationOf(((BinaryOperation) definition).right);
+            if (left == Location.UNKNOWN) return isPlainValue(((BinaryOperation) definition).left) ? right : Location.UNKNOWN;
+            if (right == Location.UNKNOWN) return isPlainValue(((BinaryOperation) definition).right) ? left : Location.UNKNOWN;
+        }
+        return Location.UNKNOWN;
+    }
+
+    /**
+     * @return Whether an operand is certainly not an address, but an index or an offset.
+     */
+    private boolean isPlainValue(Operand operand) {
+        Instruction definition = definitions.get(operand);
+        if (operand instanceof Constant) return true;
+        if (definition instanceof LoadVariable) return !((LoadVariable) definition).variable.entry.isReference;
+        if (definition instanceof Load) return true;
+        if (definition instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) definition;
+            return operation.operator == BinaryExpression.Operator.MUL || isPlainValue(operation.left) && isPlainValue(operation.right);
+        }
+        return definition instanceof Phi;
+    }
+
+    /**
+     * A load may only be executed before the loop if its address lies inside of a variable, since it might not have
+     * been executed at all. This is the case if the address is the address of a variable plus a constant offset.
+     */
+    private boolean isInsideVariable(Operand address, int offset) {
+        Instruction definition = definitions.get(address);
+        if (definition instanceof BinaryOperation && ((BinaryOperation) definition).operator == BinaryExpression.Operator.ADD
+                && ((BinaryOperation) definition).right instanceof Constant) {
+            return isInsideVariable(((BinaryOperation) definition).left, offset + ((Constant) ((BinaryOperation) definition).right).value);
+        }
+        LocalVariable variable;
+        if (definition instanceof AddressOf) {
+            variable = ((AddressOf) definition).variable;
+        } else if (definition instanceof LoadVariable && ((LoadVariable) definition).variable.entry.isReference) {
+            variable = ((LoadVariable) definition).variable;
+        } else {
+            return false;
+        }
+        return offset >= 0 && offset + 4 <= variable.entry.type.byteSize;
+    }
+
+    /**
+     * @return The block in front of the loop which all entries into the loop pass, created if necessary.
+     */
+    private BasicBlock preheader(BasicBlock header, Set<BasicBlock> loop) {
+        List<BasicBlock> entries = new ArrayList<>();
+        for (BasicBlock predecessor : header.predecessors) {
+            if (!loop.contains(predecessor)) entries.add(predecessor);
+        }
+        if (entries.size() == 1 && entries.get(0).terminator instanceof Jump) return entries.get(0);
+
+        // The preheader is added to the list of blocks at the end of the pass, so that no position has to be shifted
+        BasicBlock preheader = cfg.newBlock();
+        preheader.terminator = new Jump(header);
+        insertedPreheaders.put(header, preheader);
+        positions.put(preheader, positions.get(header) - 1);
+        layout.put(preheader, layout.get(header) - 1);
+        for (BasicBlock entry : entries) {
+            entry.terminator.replaceSuccessor(header, preheader);
+        }
+        header.predecessors.removeAll(entries);
+        header.predecessors.add(preheader);
+        header.predecessors.sort(Comparator.comparingInt(layout::get));
+        preheader.predecessors.addAll(entries);
+
+        for (Instruction instruction : header.instructions) {
+            if (!(instruction instanceof Phi)) continue;
+            Phi phi = (Phi) instruction;
+            Phi merged = new Phi(cfg.newTemp(), phi.variable);
+            for (BasicBlock entry : entries) {
+                merged.incoming.put(entry, phi.incoming.remove(entry));
+            }
+            preheader.instructions.add(merged);
+            phi.incoming.put(preheader, merged.target);
+            definitions.put(merged.target, merged);
+            blockOf.put(merged, preheader);
+            addUses(merged);
+            uses.computeIfAbsent(merged.target, temp -> new ArrayList<>()).add(phi);
+        }
+        return preheader;
+    }
+}
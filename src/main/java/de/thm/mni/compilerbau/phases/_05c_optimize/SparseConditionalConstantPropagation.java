@@ -0,0 +1,202 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class implements sparse conditional constant propagation (Wegman and Zadeck) for a procedure in SSA form.
+ * <p>
+ * Every temporary starts out as undefined and is only lowered to a constant or to "not constant" when a definition
+ * in an executable block has been evaluated. Blocks become executable when an executable branch may reach them, so
+ * branches on constant conditions keep the code behind the untaken edge from weakening the result.
+ * Afterwards, constant temporaries are replaced by their values, decided branches become jumps and blocks which were
+ * never found executable are removed.
+ */
+class SparseConditionalConstantPropagation {
+    /**
+     * An element of the constant propagation lattice: undefined, a single constant or not constant.
+     */
+    private static class Value {
+        static final Value UNDEFINED = new Value(0);
+        static final Value NOT_CONSTANT = new Value(0);
+
+        final int constant;
+
+        private Value(int constant) {
+            this.constant = constant;
+        }
+
+        static Value constant(int constant) {
+            return new Value(constant);
+        }
+
+        boolean isConstant() {
+            return this != UNDEFINED && this != NOT_CONSTANT;
+        }
+
+        Value meet(Value other) {
+            if (this == UNDEFINED) return other;
+            if (other == UNDEFINED) return this;
+            if (this == NOT_CONSTANT || other == NOT_CONSTANT) return NOT_CONSTANT;
+            return constant == other.constant ? this : NOT_CONSTANT;
+        }
+
+        boolean sameAs(Value other) {
+            if (isConstant() && other.isConstant()) return constant == other.constant;
+            return this == other;
+        }
+    }
+
+    private final ControlFlowGraph cfg;
+    private final Map<Temp, Value> values = new HashMap<>();
+    private final Map<Temp, List<Instruction>> users = new HashMap<>();
+    private final Map<Instruction, BasicBlock> blockOf = new HashMap<>();
+    private final Set<BasicBlock> executableBlocks = new HashSet<>();
+    private final Map<BasicBlock, Set<BasicBlock>> executableEdges = new HashMap<>();
+    private final Deque<BasicBlock> blockWorklist = new ArrayDeque<>();
+    private final Deque<Instruction> instructionWorklist = new ArrayDeque<>();
+
+    SparseConditionalConstantPropagation(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        for (BasicBlock block : cfg.blocks) {
+            executableEdges.put(block, new HashSet<>());
+            for (Instruction instruction : block.allInstructions()) {
+                blockOf.put(instruction, block);
+                for (Operand operand : instruction.operands()) {
+                    if (operand instanceof Temp) users.computeIfAbsent((Temp) operand, temp -> new ArrayList<>()).add(instruction);
+                }
+            }
+        }
+
+        executableBlocks.add(cfg.entryBlock());
+        blockWorklist.add(cfg.entryBlock());
+        while (!blockWorklist.isEmpty() || !instructionWorklist.isEmpty()) {
+            while (!blockWorklist.isEmpty()) {
+                for (Instruction instruction : blockWorklist.poll().allInstructions()) {
+                    evaluate(instruction);
+                }
+            }
+            while (!instructionWorklist.isEmpty()) {
+                Instruction instruction = instructionWorklist.poll();
+                if (executableBlocks.contains(blockOf.get(instruction))) evaluate(instruction);
+            }
+        }
+
+        rewrite();
+    }
+
+    private Value valueOf(Operand operand) {
+        if (operand instanceof Constant) return Value.constant(((Constant) operand).value);
+        return values.getOrDefault(operand, Value.UNDEFINED);
+    }
+
+    private void evaluate(Instruction instruction) {
+        if (instruction instanceof Terminator) {
+            evaluateTerminator(blockOf.get(instruction), (Terminator) instruction);
+            return;
+        }
+        if (instruction.target == null) return;
+
+        Value value;
+        if (instruction instanceof Move) {
+            value = valueOf(((Move) instruction).source);
+        } else if (instruction instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) instruction;
+            value = fold(operation.operator, valueOf(operation.left), valueOf(operation.right));
+        } else if (instruction instanceof Phi) {
+            value = Value.UNDEFINED;
+            for (Map.Entry<BasicBlock, Operand> entry : ((Phi) instruction).incoming.entrySet()) {
+                if (executableEdges.get(entry.getKey()).contains(blockOf.get(instruction))) {
+                    value = value.meet(valueOf(entry.getValue()));
+                }
+            }
+        } else {
+            // Loads from memory and addresses of variables are never known at compile time
+            value = Value.NOT_CONSTANT;
+        }
+
+        if (!value.sameAs(valueOf(instruction.target))) {
+            values.put(instruction.target, value);
+            instructionWorklist.addAll(users.getOrDefault(instruction.target, List.of()));
+        }
+    }
+
+    private static Value fold(BinaryExpression.Operator operator, Value left, Value right) {
+        if (operator == BinaryExpression.Operator.MUL && (isZero(left) || isZero(right))) return Value.constant(0);
+        if (left == Value.NOT_CONSTANT || right == Value.NOT_CONSTANT) return Value.NOT_CONSTANT;
+        if (left == Value.UNDEFINED || right == Value.UNDEFINED) return Value.UNDEFINED;
+
+        // Division by zero has to happen at runtime
+        if (operator == BinaryExpression.Operator.DIV && right.constant == 0) return Value.NOT_CONSTANT;
+        return Value.constant(operator.evaluate(left.constant, right.constant));
+    }
+
+    private static boolean isZero(Value value) {
+        return value.isConstant() && value.constant == 0;
+    }
+
+    private void evaluateTerminator(BasicBlock block, Terminator terminator) {
+        if (terminator instanceof Branch) {
+            Branch branch = (Branch) terminator;
+            Value left = valueOf(branch.left);
+            Value right = valueOf(branch.right);
+            if (left.isConstant() && right.isConstant()) {
+                markExecutable(block, branch.comparison.holds(left.constant, right.constant) ? branch.ifTrue : branch.ifFalse);
+            } else if (left == Value.NOT_CONSTANT || right == Value.NOT_CONSTANT) {
+                markExecutable(block, branch.ifTrue);
+                markExecutable(block, branch.ifFalse);
+            }
+        } else {
+            for (BasicBlock successor : terminator.successors()) {
+                markExecutable(block, successor);
+            }
+        }
+    }
+
+    private void markExecutable(BasicBlock from, BasicBlock to) {
+        if (!executableEdges.get(from).add(to)) return;
+        if (executableBlocks.add(to)) {
+            blockWorklist.add(to);
+        } else {
+            // Only the phis depend on which edges into a block are executable
+            for (Instruction instruction : to.instructions) {
+                if (!(instruction instanceof Phi)) break;
+                instructionWorklist.add(instruction);
+            }
+        }
+    }
+
+    private void rewrite() {
+        cfg.blocks.retainAll(executableBlocks);
+        for (BasicBlock block : cfg.blocks) {
+            for (Iterator<Instruction> iterator = block.instructions.iterator(); iterator.hasNext(); ) {
+                Instruction instruction = iterator.next();
+                if (instruction instanceof Phi) {
+                    ((Phi) instruction).incoming.keySet().removeIf(predecessor -> !executableEdges.get(predecessor).contains(block));
+                }
+                if (instruction.target != null && valueOf(instruction.target).isConstant()) {
+                    iterator.remove();
+                    continue;
+                }
+                instruction.replaceOperands(this::constantOrSelf);
+            }
+            block.terminator.replaceOperands(this::constantOrSelf);
+
+            Set<BasicBlock> successors = executableEdges.get(block);
+            if (block.terminator instanceof Branch && successors.size() == 1) {
+                block.terminator = new Jump(successors.iterator().next());
+            }
+        }
+        cfg.updatePredecessors();
+    }
+
+    private Operand constantOrSelf(Operand operand) {
+        Value value = valueOf(operand);
+        return operand instanceof Temp && value.isConstant() ? new Constant(value.constant) : operand;
+    }
+}
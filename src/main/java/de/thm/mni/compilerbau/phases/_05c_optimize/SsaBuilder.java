@@ -0,0 +1,153 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class puts a procedure into SSA form.
+ * <p>
+ * Only scalar variables whose address is never taken are promoted: local int variables and int value parameters
+ * which are not passed as reference arguments. Reference parameters and arrays stay in memory.
+ * Every {@link StoreVariable} of a promoted variable is removed and defines a new value of the variable; every
+ * {@link LoadVariable} is removed and its uses are replaced by the reaching value. {@link Phi}s are inserted at the
+ * iterated dominance frontier of the stores (Cytron et al.).
+ * <p>
+ * Value parameters are read from their frame slot once at the entry of the procedure. Local variables start with the
+ * value 0, reading them before an assignment is undefined in SPL.
+ */
+class SsaBuilder {
+    private final ControlFlowGraph cfg;
+    private final Dominators dominators;
+    private final Set<LocalVariable> promoted = new LinkedHashSet<>();
+    private final Map<LocalVariable, Deque<Operand>> currentValues = new HashMap<>();
+    private final Map<Temp, Operand> replacements = new HashMap<>();
+
+    SsaBuilder(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        cfg.removeUnreachableBlocks();
+        this.dominators = new Dominators(cfg);
+    }
+
+    void build() {
+        findPromotableVariables();
+        if (promoted.isEmpty()) return;
+        insertPhis();
+
+        List<Instruction> parameterLoads = new ArrayList<>();
+        for (LocalVariable variable : promoted) {
+            Deque<Operand> values = new ArrayDeque<>();
+            if (variable.isParameter) {
+                Temp value = cfg.newTemp();
+                parameterLoads.add(new LoadVariable(value, variable));
+                values.push(value);
+            } else {
+                values.push(Constant.ZERO);
+            }
+            currentValues.put(variable, values);
+        }
+        rename();
+        cfg.entryBlock().instructions.addAll(0, parameterLoads);
+    }
+
+    private void findPromotableVariables() {
+        List<LocalVariable> candidates = new ArrayList<>(cfg.parameters);
+        candidates.addAll(cfg.variables);
+        for (LocalVariable variable : candidates) {
+            if (variable.isScalar()) promoted.add(variable);
+        }
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof AddressOf) promoted.remove(((AddressOf) instruction).variable);
+            }
+        }
+    }
+
+    private void insertPhis() {
+        for (LocalVariable variable : promoted) {
+            Set<BasicBlock> definitions = new LinkedHashSet<>();
+            definitions.add(cfg.entryBlock());
+            for (BasicBlock block : cfg.blocks) {
+                for (Instruction instruction : block.instructions) {
+                    if (instruction instanceof StoreVariable && ((StoreVariable) instruction).variable == variable) {
+                        definitions.add(block);
+                    }
+                }
+            }
+
+            Set<BasicBlock> hasPhi = new HashSet<>();
+            Deque<BasicBlock> worklist = new ArrayDeque<>(definitions);
+            while (!worklist.isEmpty()) {
+                for (BasicBlock frontier : dominators.frontier(worklist.pop())) {
+                    if (hasPhi.add(frontier)) {
+                        frontier.instructions.add(0, new Phi(cfg.newTemp(), variable));
+                        if (definitions.add(frontier)) worklist.push(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    private Operand replace(Operand operand) {
+        return replacements.getOrDefault(operand, operand);
+    }
+
+    /**
+     * Walks the dominator tree in preorder. The current value of each variable is the top of its stack, the values
+     * pushed in a block are popped again when all blocks dominated by it have been visited.
+     * An explicit stack is used instead of recursion, since the dominator tree of a long procedure may be very deep.
+     */
+    private void rename() {
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        Deque<List<LocalVariable>> pushedVariables = new ArrayDeque<>();
+        blocks.push(cfg.entryBlock());
+        Set<BasicBlock> visited = new HashSet<>();
+
+        while (!blocks.isEmpty()) {
+            BasicBlock block = blocks.peek();
+            if (!visited.add(block)) {
+                blocks.pop();
+                for (LocalVariable variable : pushedVariables.pop()) {
+                    currentValues.get(variable).pop();
+                }
+                continue;
+            }
+
+            List<LocalVariable> pushed = new ArrayList<>();
+            for (Iterator<Instruction> iterator = block.instructions.iterator(); iterator.hasNext(); ) {
+                Instruction instruction = iterator.next();
+                if (instruction instanceof Phi) {
+                    Phi phi = (Phi) instruction;
+                    currentValues.get(phi.variable).push(phi.target);
+                    pushed.add(phi.variable);
+                    continue;
+                }
+
+                instruction.replaceOperands(this::replace);
+                if (instruction instanceof LoadVariable && promoted.contains(((LoadVariable) instruction).variable)) {
+                    replacements.put(instruction.target, currentValues.get(((LoadVariable) instruction).variable).peek());
+                    iterator.remove();
+                } else if (instruction instanceof StoreVariable && promoted.contains(((StoreVariable) instruction).variable)) {
+                    StoreVariable store = (StoreVariable) instruction;
+                    currentValues.get(store.variable).push(store.value);
+                    pushed.add(store.variable);
+                    iterator.remove();
+                }
+            }
+            block.terminator.replaceOperands(this::replace);
+
+            for (BasicBlock successor : block.successors()) {
+                for (Instruction instruction : successor.instructions) {
+                    if (!(instruction instanceof Phi)) break;
+                    Phi phi = (Phi) instruction;
+                    phi.incoming.put(block, currentValues.get(phi.variable).peek());
+                }
+            }
+
+            pushedVariables.push(pushed);
+            List<BasicBlock> children = new ArrayList<>(dominators.children(block));
+            Collections.reverse(children);
+            children.forEach(blocks::push);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class takes a procedure out of SSA form by replacing every {@link Phi} with copies.
+ * <p>
+ * Usually the phi target is assigned at the end of each predecessor. This is not possible if the target is still
+ * needed on another edge leaving a predecessor (the "lost copy" problem) or by the branch ending it, or if the phis of
+ * a block read each other's targets (the "swap" problem). In these cases the value is first copied into a new
+ * temporary at the end of each predecessor and from there into the target at the beginning of the block.
+ * The register allocator tries to assign the same register to both sides of a copy, so most copies vanish.
+ */
+class SsaDestruction {
+    private final ControlFlowGraph cfg;
+
+    SsaDestruction(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        Liveness liveness = new Liveness(cfg);
+        for (BasicBlock block : cfg.blocks) {
+            List<Phi> phis = new ArrayList<>();
+            for (Instruction instruction : block.instructions) {
+                if (!(instruction instanceof Phi)) break;
+                phis.add((Phi) instruction);
+            }
+            if (phis.isEmpty()) continue;
+            block.instructions.subList(0, phis.size()).clear();
+
+            Set<Operand> targets = new HashSet<>();
+            for (Phi phi : phis) {
+                targets.add(phi.target);
+            }
+            boolean readEachOther = false;
+            for (Phi phi : phis) {
+                for (Operand operand : phi.incoming.values()) {
+                    if (targets.contains(operand)) readEachOther = true;
+                }
+            }
+
+            List<Instruction> entryCopies = new ArrayList<>();
+            for (Phi phi : phis) {
+                boolean direct = !readEachOther;
+                for (BasicBlock predecessor : phi.incoming.keySet()) {
+                    if (predecessor.terminator.operands().contains(phi.target)) direct = false;
+                    for (BasicBlock successor : predecessor.successors()) {
+                        if (successor != block && liveness.liveIn(successor).contains(phi.target)) direct = false;
+                    }
+                }
+
+                Temp copy = direct ? phi.target : cfg.newTemp();
+                for (Map.Entry<BasicBlock, Operand> entry : phi.incoming.entrySet()) {
+                    entry.getKey().instructions.add(new Move(copy, entry.getValue()));
+                }
+                if (!direct) entryCopies.add(new Move(phi.target, copy));
+            }
+            block.instructions.addAll(0, entryCopies);
+        }
+    }
+}
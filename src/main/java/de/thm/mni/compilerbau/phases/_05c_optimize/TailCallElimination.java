@@ -0,0 +1,129 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.ir.*;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+
+import java.util.*;
+
+/**
+ * This class removes the frames of calls in tail position, i.e. calls after which the procedure returns without doing
+ * anything else.
+ * <p>
+ * A procedure calling itself in tail position does not need a new frame: the arguments are assigned to the parameters
+ * and the procedure continues at its beginning. The local variables are reset to 0, like at the beginning of a call.
+ * A tail call of another procedure is marked as such, the code generator lets the called procedure reuse the frame of
+ * the caller (see {@link Call#isTailCall}). This needs the arguments to fit into the area where the caller got its own
+ * arguments, so the called procedure must not have more parameters than the caller.
+ * <p>
+ * Since the frame is gone when the called procedure runs, no address of a variable in the frame may be passed to a
+ * reference parameter. Only the addresses the procedure got for its own reference parameters may be passed on.
+ * This has to be done before the SSA construction, which handles the new loops like all others.
+ */
+class TailCallElimination {
+    private final ControlFlowGraph cfg;
+    private final Set<ProcedureEntry> procedures;
+    private final Map<Temp, Instruction> definitions = new HashMap<>();
+    private BasicBlock bodyStart = null;
+
+    /**
+     * @param cfg        The procedure, not in SSA form.
+     * @param procedures The procedures of the program, calls of predefined procedures are never tail calls.
+     */
+    TailCallElimination(ControlFlowGraph cfg, Set<ProcedureEntry> procedures) {
+        this.cfg = cfg;
+        this.procedures = procedures;
+    }
+
+    void run() {
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction.target != null) definitions.put(instruction.target, instruction);
+            }
+        }
+
+        for (BasicBlock block : List.copyOf(cfg.blocks)) {
+            if (block.instructions.isEmpty()) continue;
+            Instruction last = block.instructions.get(block.instructions.size() - 1);
+            if (!(last instanceof Call) || !returnsAfter(block)) continue;
+            Call call = (Call) last;
+            if (!procedures.contains(call.procedure) || !argumentsOutliveFrame(call)) continue;
+
+            if (call.procedure == cfg.procedure) {
+                block.instructions.remove(block.instructions.size() - 1);
+                assignParameters(block, call);
+                block.terminator = new Jump(bodyStart());
+            } else if (call.procedure.parameterTypes.size() <= cfg.parameters.size()) {
+                call.isTailCall = true;
+                block.terminator = new Return();
+            }
+        }
+        cfg.updatePredecessors();
+        cfg.removeUnreachableBlocks();
+    }
+
+    /**
+     * @return Whether the procedure returns at the end of the block, maybe through some empty blocks.
+     */
+    private static boolean returnsAfter(BasicBlock block) {
+        Set<BasicBlock> visited = new HashSet<>();
+        Terminator terminator = block.terminator;
+        while (terminator instanceof Jump) {
+            BasicBlock destination = ((Jump) terminator).destination;
+            if (!destination.instructions.isEmpty() || !visited.add(destination)) return false;
+            terminator = destination.terminator;
+        }
+        return terminator instanceof Return;
+    }
+
+    /**
+     * @return Whether all addresses passed to reference parameters point outside of the frame of the procedure.
+     */
+    private boolean argumentsOutliveFrame(Call call) {
+        for (int i = 0; i < call.arguments.size(); i++) {
+            if (call.procedure.parameterTypes.get(i).isReference && referencedParameter(call.arguments.get(i)) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The reference parameter of this procedure whose address the operand holds, or null.
+     */
+    private LocalVariable referencedParameter(Operand operand) {
+        Instruction definition = definitions.get(operand);
+        if (definition instanceof Move) return referencedParameter(((Move) definition).source);
+        if (definition instanceof LoadVariable) {
+            LocalVariable variable = ((LoadVariable) definition).variable;
+            if (variable.isParameter && variable.entry.isReference) return variable;
+        }
+        return null;
+    }
+
+    private void assignParameters(BasicBlock block, Call call) {
+        for (int i = 0; i < call.arguments.size(); i++) {
+            LocalVariable parameter = cfg.parameters.get(i);
+            Operand argument = call.arguments.get(i);
+            // A reference parameter passed on unchanged keeps its address
+            if (parameter.entry.isReference && referencedParameter(argument) == parameter) continue;
+            block.instructions.add(new StoreVariable(parameter, argument));
+        }
+        for (LocalVariable variable : cfg.variables) {
+            if (variable.isScalar()) block.instructions.add(new StoreVariable(variable, Constant.ZERO));
+        }
+    }
+
+    /**
+     * The entry block of a procedure must not have predecessors, a new entry block is put in front of the old one,
+     * which the tail calls jump to.
+     */
+    private BasicBlock bodyStart() {
+        if (bodyStart == null) {
+            bodyStart = cfg.entryBlock();
+            BasicBlock entry = cfg.newBlock();
+            entry.terminator = new Jump(bodyStart);
+            cfg.blocks.add(0, entry);
+        }
+        return bodyStart;
+    }
+}
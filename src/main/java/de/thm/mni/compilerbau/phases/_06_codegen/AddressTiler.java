@@ -0,0 +1,266 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+
+/**
+ * This class selects the addressing mode of the loads and stores of a procedure before registers are allocated.
+ * <p>
+ * An ECO32 load or store adds a 16 bit displacement to a base register. The address of each {@link Load} and
+ * {@link Store} is expanded into the tree of instructions of its block computing it: additions, constants and
+ * addresses of variables (&amp;a = fp + offset of a). Like a bottom-up rewrite system (BURS), the tree is labelled
+ * bottom-up with the cheapest way to compute each node, either into a register (reg) or as a base register plus a
+ * displacement (addr), costs being the number of instructions needed. The cheapest addr tiling of the root is
+ * selected:
+ * <pre>
+ * addr: &amp;v                 base fp, displacement offset of v
+ * addr: addr + constant     displacement increased by the constant
+ * addr: &amp;v + reg           base reg + fp (one add), displacement offset of v
+ * addr: reg                 base reg, displacement 0
+ * </pre>
+ * Folding the addresses of variables into the displacement also keeps them out of the registers. Instructions whose
+ * results are no longer used afterwards are removed.
+ */
+class AddressTiler {
+    /**
+     * The cost of a tiling whose displacement does not fit into 16 bits.
+     */
+    private static final int IMPOSSIBLE = Integer.MAX_VALUE / 2;
+
+    private enum Kind {
+        LEAF, FRAME, CONSTANT, ADD
+    }
+
+    private enum AddressRule {
+        FRAME, DISPLACEMENT, INDEXED_FRAME, REGISTER
+    }
+
+    /**
+     * A node of an address tree, labelled with its cheapest tilings.
+     */
+    private static class Node {
+        final Kind kind;
+        final Operand operand;
+        final LocalVariable variable;
+        final List<Node> children;
+        /**
+         * Whether the value of the node is computed anyway, since it is used elsewhere as well.
+         */
+        final boolean shared;
+
+        int regCost;
+        int addrCost;
+        AddressRule addrRule;
+        int displacement;
+
+        Node(Kind kind, Operand operand, LocalVariable variable, List<Node> children, boolean shared) {
+            this.kind = kind;
+            this.operand = operand;
+            this.variable = variable;
+            this.children = children;
+            this.shared = shared;
+        }
+
+        int constant() {
+            return ((Constant) operand).value;
+        }
+    }
+
+    private final ControlFlowGraph cfg;
+    private final Map<Temp, Integer> definitions = new HashMap<>();
+    private final Map<Temp, Integer> uses = new HashMap<>();
+    private final Map<Temp, LocalVariable> addressesOfVariables = new HashMap<>();
+
+    AddressTiler(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        countDefinitionsAndUses();
+        for (BasicBlock block : cfg.blocks) {
+            List<Instruction> instructions = new ArrayList<>();
+            for (int i = 0; i < block.instructions.size(); i++) {
+                Instruction instruction = block.instructions.get(i);
+                if (instruction instanceof Load) {
+                    Load load = (Load) instruction;
+                    Node root = expand(load.address, block, i, i);
+                    label(root);
+                    load.address = reduce(root, instructions);
+                    load.offset += root.displacement;
+                } else if (instruction instanceof Store) {
+                    Store store = (Store) instruction;
+                    Node root = expand(store.address, block, i, i);
+                    label(root);
+                    store.address = reduce(root, instructions);
+                    store.offset += root.displacement;
+                }
+                instructions.add(instruction);
+            }
+            block.instructions.clear();
+            block.instructions.addAll(instructions);
+        }
+        removeUnusedInstructions();
+    }
+
+    private void countDefinitionsAndUses() {
+        for (BasicBlock block : cfg.blocks) {
+            for (Instruction instruction : block.allInstructions()) {
+                if (instruction.target != null) definitions.merge(instruction.target, 1, Integer::sum);
+                if (instruction instanceof AddressOf) addressesOfVariables.put(instruction.target, ((AddressOf) instruction).variable);
+                for (Operand operand : instruction.operands()) {
+                    if (operand instanceof Temp) uses.merge((Temp) operand, 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the tree computing an operand at the use with the given index.
+     *
+     * @param before Only instructions in front of this index may be part of the tree.
+     */
+    private Node expand(Operand operand, BasicBlock block, int before, int use) {
+        if (operand instanceof Constant) return new Node(Kind.CONSTANT, operand, null, List.of(), false);
+        Temp temp = (Temp) operand;
+        boolean shared = uses.getOrDefault(temp, 0) > 1;
+        // The address of a variable can be recomputed anywhere, e.g. inside a loop it has been hoisted out of
+        if (definitions.getOrDefault(temp, 0) == 1 && addressesOfVariables.containsKey(temp)) {
+            return new Node(Kind.FRAME, temp, addressesOfVariables.get(temp), List.of(), shared);
+        }
+        int index = definitionIndex(temp, block, before);
+        if (index < 0) return new Node(Kind.LEAF, temp, null, List.of(), shared);
+
+        Instruction definition = block.instructions.get(index);
+        if (definition instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) definition;
+            boolean add = operation.operator == BinaryExpression.Operator.ADD;
+            boolean subtractConstant = operation.operator == BinaryExpression.Operator.SUB && operation.right instanceof Constant;
+            // The operands are read at the use instead, so they must still hold the same values there
+            if ((add || subtractConstant) && unchanged(operation.left, block, index, use) && unchanged(operation.right, block, index, use)) {
+                Node left = expand(operation.left, block, index, use);
+                Node right = subtractConstant
+                        ? new Node(Kind.CONSTANT, new Constant(-((Constant) operation.right).value), null, List.of(), false)
+                        : expand(operation.right, block, index, use);
+                return new Node(Kind.ADD, temp, null, List.of(left, right), shared);
+            }
+        }
+        return new Node(Kind.LEAF, temp, null, List.of(), shared);
+    }
+
+    /**
+     * @return The index of the only definition of the temporary, if it lies in the block in front of the given index.
+     */
+    private int definitionIndex(Temp temp, BasicBlock block, int before) {
+        if (definitions.getOrDefault(temp, 0) != 1) return -1;
+        for (int i = before - 1; i >= 0; i--) {
+            if (block.instructions.get(i).target == temp) return i;
+        }
+        return -1;
+    }
+
+    private boolean unchanged(Operand operand, BasicBlock block, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (block.instructions.get(i).target == operand) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the cheapest tilings of a node and its children.
+     */
+    private void label(Node node) {
+        for (Node child : node.children) {
+            label(child);
+        }
+
+        // The instruction of a shared node is kept anyway, reading its register costs nothing
+        switch (node.kind) {
+            case LEAF:
+            case CONSTANT:
+                node.regCost = 0;
+                break;
+            case FRAME:
+                node.regCost = node.shared ? 0 : 1;
+                break;
+            case ADD:
+                node.regCost = node.shared ? 0 : 1 + node.children.get(0).regCost + node.children.get(1).regCost;
+                break;
+        }
+
+        // Rules are tried from the most folded one, which wins ties since it needs fewer registers
+        node.addrCost = IMPOSSIBLE;
+        if (node.kind == Kind.FRAME) {
+            select(node, AddressRule.FRAME, 0, node.variable.entry.offset);
+        }
+        if (node.kind == Kind.ADD) {
+            Node left = node.children.get(0);
+            Node right = node.children.get(1);
+            if (right.kind == Kind.CONSTANT && left.kind != Kind.CONSTANT) {
+                select(node, AddressRule.DISPLACEMENT, left.addrCost, (long) left.displacement + right.constant());
+            } else if (left.kind == Kind.CONSTANT && right.kind != Kind.CONSTANT) {
+                select(node, AddressRule.DISPLACEMENT, right.addrCost, (long) right.displacement + left.constant());
+            } else if (left.kind == Kind.FRAME && right.kind != Kind.CONSTANT) {
+                select(node, AddressRule.INDEXED_FRAME, right.regCost + 1, left.variable.entry.offset);
+            } else if (right.kind == Kind.FRAME && left.kind != Kind.CONSTANT) {
+                select(node, AddressRule.INDEXED_FRAME, left.regCost + 1, right.variable.entry.offset);
+            }
+        }
+        select(node, AddressRule.REGISTER, node.regCost, 0);
+    }
+
+    private void select(Node node, AddressRule rule, int cost, long displacement) {
+        if (displacement < Short.MIN_VALUE || displacement > Short.MAX_VALUE) return;
+        if (cost < node.addrCost) {
+            node.addrCost = cost;
+            node.addrRule = rule;
+            node.displacement = (int) displacement;
+        }
+    }
+
+    /**
+     * Emits the instructions of the selected addr tiling of a node.
+     *
+     * @return The operand holding the base address.
+     */
+    private Operand reduce(Node node, List<Instruction> instructions) {
+        switch (node.addrRule) {
+            case FRAME:
+                return FramePointer.INSTANCE;
+            case DISPLACEMENT:
+                Node left = node.children.get(0);
+                return reduce(left.kind == Kind.CONSTANT ? node.children.get(1) : left, instructions);
+            case INDEXED_FRAME:
+                Node index = node.children.get(0).kind == Kind.FRAME ? node.children.get(1) : node.children.get(0);
+                Temp base = cfg.newTemp();
+                instructions.add(new BinaryOperation(base, BinaryExpression.Operator.ADD, index.operand, FramePointer.INSTANCE));
+                return base;
+            default:
+                return node.operand;
+        }
+    }
+
+    /**
+     * Instructions computing addresses which have been folded into loads and stores are removed.
+     */
+    private void removeUnusedInstructions() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            uses.clear();
+            for (BasicBlock block : cfg.blocks) {
+                for (Instruction instruction : block.allInstructions()) {
+                    for (Operand operand : instruction.operands()) {
+                        if (operand instanceof Temp) uses.merge((Temp) operand, 1, Integer::sum);
+                    }
+                }
+            }
+            for (BasicBlock block : cfg.blocks) {
+                changed |= block.instructions.removeIf(instruction -> !instruction.hasSideEffects()
+                        && (instruction instanceof AddressOf || instruction instanceof BinaryOperation)
+                        && !uses.containsKey(instruction.target));
+            }
+        }
+    }
+}
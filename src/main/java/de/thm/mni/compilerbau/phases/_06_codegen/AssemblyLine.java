@@ -0,0 +1,159 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A line of the emitted assembly code: an instruction, a label or an assembler directive.
+ * <p>
+ * The operands of an instruction are registers, int immediate values or labels (strings). Lines are immutable,
+ * a peephole rule replaces a line by a new one.
+ */
+class AssemblyLine {
+    enum Kind {
+        INSTRUCTION, LABEL, DIRECTIVE
+    }
+
+    private static final Set<String> LOADS = Set.of("ldw", "ldh", "ldhu", "ldb", "ldbu");
+    private static final Set<String> STORES = Set.of("stw", "sth", "stb");
+    private static final Set<String> BRANCHES = Set.of("beq", "bne", "blt", "ble", "bgt", "bge", "bltu", "bleu", "bgtu", "bgeu");
+
+    final Kind kind;
+    /**
+     * The opcode of an instruction, the name of a label or the whole text of a directive.
+     */
+    final String text;
+    final List<Object> operands;
+    final String comment;
+
+    private AssemblyLine(Kind kind, String text, List<Object> operands, String comment) {
+        this.kind = kind;
+        this.text = text;
+        this.operands = operands;
+        this.comment = comment;
+    }
+
+    static AssemblyLine instruction(String opcode, List<Object> operands, String comment) {
+        return new AssemblyLine(Kind.INSTRUCTION, opcode, List.copyOf(operands), comment);
+    }
+
+    static AssemblyLine label(String name) {
+        return new AssemblyLine(Kind.LABEL, name, List.of(), null);
+    }
+
+    static AssemblyLine directive(String text) {
+        return new AssemblyLine(Kind.DIRECTIVE, text, List.of(), null);
+    }
+
+    /**
+     * @return A copy of this instruction with another opcode and the operands replaced.
+     */
+    AssemblyLine with(String opcode, List<Object> operands) {
+        return instruction(opcode, operands, comment);
+    }
+
+    boolean isInstruction(String... opcodes) {
+        if (kind != Kind.INSTRUCTION) return false;
+        if (opcodes.length == 0) return true;
+        for (String opcode : opcodes) {
+            if (text.equals(opcode)) return true;
+        }
+        return false;
+    }
+
+    boolean isLabel() {
+        return kind == Kind.LABEL;
+    }
+
+    boolean isLoad() {
+        return kind == Kind.INSTRUCTION && LOADS.contains(text);
+    }
+
+    boolean isStore() {
+        return kind == Kind.INSTRUCTION && STORES.contains(text);
+    }
+
+    boolean isBranch() {
+        return kind == Kind.INSTRUCTION && BRANCHES.contains(text);
+    }
+
+    /**
+     * @return Whether the instruction may continue somewhere else than at the next line.
+     */
+    boolean isControlTransfer() {
+        return isBranch() || isInstruction("j", "jr", "jal", "jalr");
+    }
+
+    Register register(int index) {
+        Object operand = operands.get(index);
+        return operand instanceof Register ? (Register) operand : null;
+    }
+
+    /**
+     * @return The immediate operand or null if the operand is not an immediate value.
+     */
+    Integer immediate(int index) {
+        Object operand = operands.get(index);
+        return operand instanceof Integer ? (Integer) operand : null;
+    }
+
+    /**
+     * @return The label this instruction jumps or branches to, or null.
+     */
+    String jumpTarget() {
+        if (!isBranch() && !isInstruction("j")) return null;
+        Object operand = operands.get(operands.size() - 1);
+        return operand instanceof String ? (String) operand : null;
+    }
+
+    /**
+     * @return The register written by this instruction, or null.
+     */
+    Register definedRegister() {
+        if (kind != Kind.INSTRUCTION || operands.isEmpty() || isStore() || isControlTransfer()) {
+            return isInstruction("jal", "jalr") ? new Register(31) : null;
+        }
+        return register(0);
+    }
+
+    /**
+     * @return The registers read by this instruction.
+     */
+    List<Register> usedRegisters() {
+        List<Register> used = new ArrayList<>();
+        if (kind != Kind.INSTRUCTION) return used;
+        boolean readsFirst = isStore() || isBranch() || isInstruction("jr", "jalr");
+        for (int i = readsFirst ? 0 : 1; i < operands.size(); i++) {
+            if (operands.get(i) instanceof Register) used.add((Register) operands.get(i));
+        }
+        return used;
+    }
+
+    /**
+     * @return A copy of this instruction reading the replacement wherever it read the register.
+     */
+    AssemblyLine replaceUses(Register register, Register replacement) {
+        boolean readsFirst = isStore() || isBranch() || isInstruction("jr", "jalr");
+        List<Object> replaced = new ArrayList<>(operands);
+        for (int i = readsFirst ? 0 : 1; i < replaced.size(); i++) {
+            if (register.equals(replaced.get(i))) replaced.set(i, replacement);
+        }
+        return with(text, replaced);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case LABEL:
+                return text + ":";
+            case DIRECTIVE:
+                return text;
+        }
+        String line = "\t" + text + "\t" + operands.stream().map(String::valueOf).collect(Collectors.joining(","));
+        if (comment == null) return line;
+        boolean singleRegister = operands.size() == 1 && operands.get(0) instanceof Register;
+        return line + (singleRegister ? "\t\t\t; " : "\t\t; ") + comment;
+    }
+}
@@ -1,56 +1,56 @@
 package de.thm.mni.compilerbau.phases._06_codegen;
 
-import de.thm.mni.compilerbau.absyn.*;
-import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+import de.thm.mni.compilerbau.phases._05_varalloc.StackLayout;
 import de.thm.mni.compilerbau.table.ParameterType;
-import de.thm.mni.compilerbau.table.ProcedureEntry;
-import de.thm.mni.compilerbau.table.SymbolTable;
-import de.thm.mni.compilerbau.table.VariableEntry;
-import de.thm.mni.compilerbau.types.ArrayType;
-import de.thm.mni.compilerbau.utils.SplError;
+import de.thm.mni.compilerbau.utils.Parallel;
+import de.thm.mni.compilerbau.utils.ProcedureEvent;
+
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 /**
  * This class is used to generate the assembly code for the compiled program.
- * This code is emitted via the {@link CodePrinter} in the output field of this class.
+ * The code of each procedure is emitted via a {@link CodePrinter} of its own.
+ * <p>
+ * The input of the code generator is the IR of the program (see {@link ControlFlowGraph}). Each IR instruction is
+ * translated into a short sequence of ECO32 instructions, after the temporaries have been mapped to registers by the
+ * {@link RegisterAllocator}.
+ * <p>
+ * The procedures are generated in parallel. Only the labels are numbered across the whole program: they are assigned in
+ * declaration order between register allocation and emission, and the procedures are printed in declaration order, so
+ * the output does not depend on the order in which the procedures are finished.
  */
 public class CodeGenerator {
-    private final CodePrinter output;
-    private final boolean ershovOptimization;
+    private final PrintWriter outputFile;
+    private final PeepholeOptimizer peepholeOptimizer = new PeepholeOptimizer(PeepholeRules.all());
+    private final PrintStream peepholeStatistics;
     private final  Register nullRegister = new Register(0);
-    private Register temporaryRegister = new Register(8);
     private final  Register fp = new Register(25);
     private final  Register sp = new Register(29);
     private final  Register returnPointer = new Register(31);
     private  int labelZaeler;
-    private Stack<Integer> stack = new Stack<Integer>();
+    private int emittedInstructions;
     /**
      * Initializes the code generator.
      *
      * @param output             The PrintWriter to the output file.
-     * @param ershovOptimization Whether the ershov register optimization should be used (--ershov)
+     * @param peepholeStatistics The stream to print the number of changes made by each peephole rule to, together with
+     *                           the other messages about the compiled file, or null if they should not be printed.
      */
-    public CodeGenerator(PrintWriter output, boolean ershovOptimization) {
-        this.output = new CodePrinter(output);
-        this.ershovOptimization = ershovOptimization;
-    }
-    private Register lastFreeRegister(){
-        if (temporaryRegister.isFreeUse()){
-            Register varTempReg = temporaryRegister;
-            temporaryRegister = varTempReg.next();
-            return varTempReg;
-        }
-        else {
-            throw SplError.RegisterOverflow();
-        }
+    public CodeGenerator(PrintWriter output, PrintStream peepholeStatistics) {
+        this.outputFile = output;
+        this.peepholeStatistics = peepholeStatistics;
     }
 
     /**
      * Emits needed import statements, to allow usage of the predefined functions and sets the correct settings
      * for the assembler.
      */
-    private void assemblerProlog() {
+    private void assemblerProlog(CodePrinter output) {
         output.emitImport("printi");
         output.emitImport("printc");
         output.emitImport("readi");
@@ -67,237 +67,565 @@ public class CodeGenerator {
         output.emit("\t.align\t4");
     }
 
-    public void generateCode(Program program, SymbolTable table) {
+    /**
+     * @param procedures The IR of all procedures of the program, in declaration order.
+     */
+    public void generateCode(List<ControlFlowGraph> procedures) {
         labelZaeler  = 0;
-        assemblerProlog();
-        program.accept(new VisitorOfCodeGenerator(table));
+        CodePrinter header = new CodePrinter(peepholeOptimizer);
+        assemblerProlog(header);
+
+        List<VisitorOfCodeGenerator> generators = Parallel.map(procedures, this::prepareProcedure);
+        for (VisitorOfCodeGenerator generator : generators) {
+            generator.firstLabel = labelZaeler;
+            labelZaeler += generator.cfg.blocks.size();
+        }
+        Parallel.forEach(generators, VisitorOfCodeGenerator::generateProcedure);
 
+        header.printTo(outputFile);
+        emittedInstructions = 0;
+        for (VisitorOfCodeGenerator generator : generators) {
+            generator.output.printTo(outputFile);
+            emittedInstructions += generator.output.instructionCount();
+        }
+        outputFile.flush();
+        if (peepholeStatistics != null) peepholeOptimizer.printStatistics(peepholeStatistics);
     }
-    private class VisitorOfCodeGenerator extends DoNothingVisitor{
-        SymbolTable symbolTable ;
 
-        public VisitorOfCodeGenerator(SymbolTable symbolTable){
-            this.symbolTable = symbolTable;
+    /**
+     * @return The number of instructions in the generated code, after the peephole optimization.
+     */
+    public int emittedInstructions() {
+        return emittedInstructions;
+    }
 
+    /**
+     * @return The registers available for free use, in the order they are preferred by the register allocator.
+     */
+    private List<Register> freeUseRegisters() {
+        List<Register> registers = new ArrayList<>();
+        for (Register register = new Register(8); register.isFreeUse(); register = register.next()) {
+            registers.add(register);
         }
+        return registers;
+    }
 
+    /**
+     * Only the right operand of arithmetic instructions and the source of a move may be an immediate value.
+     * All other constant operands are loaded into a temporary of their own before the instruction, unless they are
+     * zero and can be read from $0.
+     * Since addition and multiplication are commutative, their constant left operand is swapped to the right instead.
+     */
+    private void materializeConstants(ControlFlowGraph cfg) {
+        for (BasicBlock block : cfg.blocks) {
+            List<Instruction> instructions = new ArrayList<>();
+            for (Instruction instruction : block.allInstructions()) {
+                UnaryOperator<Operand> materialize = operand -> {
+                    if (!(operand instanceof Constant) || ((Constant) operand).value == 0) return operand;
+                    Temp temp = cfg.newTemp();
+                    instructions.add(new Move(temp, operand));
+                    return temp;
+                };
 
-        //IntLiteral
-        @Override
-        public void visit(IntLiteral intLiteral){
-            output.emitInstruction("add",lastFreeRegister(),nullRegister,intLiteral.value);
+                if (instruction instanceof BinaryOperation) {
+                    BinaryOperation operation = (BinaryOperation) instruction;
+                    boolean commutative = operation.operator == BinaryExpression.Operator.ADD || operation.operator == BinaryExpression.Operator.MUL;
+                    if (commutative && operation.left instanceof Constant && !(operation.right instanceof Constant)) {
+                        Operand left = operation.left;
+                        operation.left = operation.right;
+                        operation.right = left;
+                    }
+                    operation.left = materialize.apply(operation.left);
+                } else if (!(instruction instanceof Move)) {
+                    instruction.replaceOperands(materialize);
+                }
+                if (instruction != block.terminator) instructions.add(instruction);
+            }
+            block.instructions.clear();
+            block.instructions.addAll(instructions);
         }
+    }
 
-        //BinaryExpression   !!!!!!!!!!!!!!!!!!!!!!!   ?????????????????
-        @Override
-        public void visit(BinaryExpression binaryExpression){
-            binaryExpression.leftOperand.accept(this);
-            binaryExpression.rightOperand.accept(this);
+    /**
+     * Parameters passed in registers are read from their registers at the beginning of the procedure, before a call
+     * overwrites them. If the parameter is needed in memory as well, e.g. a reference parameter read after a call or
+     * a parameter whose address is taken, the register is stored to the slot of the parameter in the argument area.
+     */
+    private void receiveRegisterArguments(ControlFlowGraph cfg) {
+        cfg.updatePredecessors();
+        if (!cfg.entryBlock().predecessors.isEmpty()) {
+            // The registers may only be read once, not on a loop back to the entry
+            BasicBlock entry = cfg.newBlock();
+            entry.terminator = new Jump(cfg.entryBlock());
+            cfg.blocks.add(0, entry);
+            cfg.updatePredecessors();
+        }
+        BasicBlock entry = cfg.entryBlock();
 
-            switch (binaryExpression.operator){
-                case ADD:
-                    output.emitInstruction("add",temporaryRegister.previous().previous(),temporaryRegister.previous().previous(),temporaryRegister.previous());
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
-                case SUB:
-                    output.emitInstruction("sub",temporaryRegister.previous().previous(),temporaryRegister.previous().previous(),temporaryRegister.previous());
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
-                case MUL:
-                    output.emitInstruction("mul",temporaryRegister.previous().previous(),temporaryRegister.previous().previous(),temporaryRegister.previous());
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
-                case DIV:
-                    output.emitInstruction("div",temporaryRegister.previous().previous(),temporaryRegister.previous().previous(),temporaryRegister.previous());
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
+        List<Instruction> homeStores = new ArrayList<>();
+        for (int i = 0; i < cfg.parameters.size(); i++) {
+            Integer register = cfg.procedure.parameterTypes.get(i).register;
+            if (register == null) continue;
+            LocalVariable parameter = cfg.parameters.get(i);
+            ArgumentRegister argument = new ArgumentRegister(register, parameter);
 
-                case NEQ:
-                    output.emitInstruction("beq",temporaryRegister.previous().previous(),temporaryRegister.previous(),"L"+labelZaeler);
-                    temporaryRegister = temporaryRegister.previous();
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
+            boolean addressTaken = cfg.blocks.stream().flatMap(block -> block.instructions.stream())
+                    .anyMatch(instruction -> instruction instanceof AddressOf && ((AddressOf) instruction).variable == parameter);
+            boolean needsHome = addressTaken;
+            for (BasicBlock block : cfg.blocks) {
+                boolean unchanged = block == entry && !addressTaken;
+                for (ListIterator<Instruction> iterator = block.instructions.listIterator(); iterator.hasNext(); ) {
+                    Instruction instruction = iterator.next();
+                    if (instruction instanceof LoadVariable && ((LoadVariable) instruction).variable == parameter) {
+                        if (unchanged) {
+                            iterator.set(new Move(instruction.target, argument));
+                        } else {
+                            needsHome = true;
+                        }
+                    }
+                    if (instruction instanceof Call || instruction instanceof StoreVariable && ((StoreVariable) instruction).variable == parameter) {
+                        unchanged = false;
+                    }
+                }
+            }
+            if (needsHome) homeStores.add(new StoreVariable(parameter, argument));
+        }
+        entry.instructions.addAll(0, homeStores);
+    }
+
+    /**
+     * Prepares a procedure for the emission of its code: the IR is lowered to the ECO32 instructions, registers are
+     * allocated and the stack frame is laid out.
+     *
+     * @return The generator emitting the code of the procedure.
+     */
+    private VisitorOfCodeGenerator prepareProcedure(ControlFlowGraph cfg) {
+        ProcedureEvent event = new ProcedureEvent("regalloc", cfg.name.toString());
+        event.begin();
+        StackLayout stackLayout = cfg.procedure.stackLayout;
+
+        new StrengthReduction(cfg).run();
+        new AddressTiler(cfg).run();
+        materializeConstants(cfg);
+        receiveRegisterArguments(cfg);
+        RegisterAllocator registers = new RegisterAllocator(cfg, freeUseRegisters());
+        stackLayout.spillAreaSize = registers.spillSlotCount() * 4;
+        List<Register> savedRegisters = registers.usedCalleeSavedRegisters();
+        stackLayout.calleeSavedAreaSize = savedRegisters.size() * 4;
+
+        ShrinkWrapping shrinkWrapping = new ShrinkWrapping(cfg, registers);
+        shrinkWrapping.run();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.statements = irInstructionCount(cfg);
+            event.commit();
+        }
+        return new VisitorOfCodeGenerator(cfg, registers, shrinkWrapping, savedRegisters);
+    }
+
+    /**
+     * @return The number of IR instructions of a procedure, including the terminators of its blocks.
+     */
+    private static int irInstructionCount(ControlFlowGraph cfg) {
+        int count = 0;
+        for (BasicBlock block : cfg.blocks) {
+            count += block.instructions.size() + 1;
+        }
+        return count;
+    }
+
+    private class VisitorOfCodeGenerator implements InstructionVisitor {
+        private final ControlFlowGraph cfg;
+        private final StackLayout stackLayout;
+        private final RegisterAllocator registers;
+        private final ShrinkWrapping shrinkWrapping;
+        /**
+         * The callee-saved registers used by the procedure, saved in its prologue.
+         */
+        private final List<Register> savedRegisters;
+        private final Map<BasicBlock, String> labels = new HashMap<>();
+        private final CodePrinter output = new CodePrinter(peepholeOptimizer);
+        /**
+         * The number of the first label of the procedure, the labels of all procedures are numbered consecutively.
+         */
+        int firstLabel;
+        BasicBlock nextBlock;
+        /**
+         * The register variables are addressed relative to: the frame pointer, or the stack pointer while the
+         * procedure has no frame.
+         */
+        Register frameBase;
+        /**
+         * The spilled temporaries currently held by the scratch registers. A value reloaded into a scratch register
+         * is reused by the following instructions of the same block as long as the register is not overwritten.
+         */
+        private final Temp[] scratchContents = new Temp[2];
+        /**
+         * Whether the current block ends with a tail call, which already left the procedure.
+         */
+        private boolean afterTailCall = false;
+
+        VisitorOfCodeGenerator(ControlFlowGraph cfg, RegisterAllocator registers, ShrinkWrapping shrinkWrapping, List<Register> savedRegisters) {
+            this.cfg = cfg;
+            this.stackLayout = cfg.procedure.stackLayout;
+            this.registers = registers;
+            this.shrinkWrapping = shrinkWrapping;
+            this.savedRegisters = savedRegisters;
+        }
+
+        /**
+         * Emits the code of the procedure and optimizes it.
+         */
+        void generateProcedure() {
+            ProcedureEvent event = new ProcedureEvent("codegen", cfg.name.toString());
+            event.begin();
+            int number = firstLabel;
+            for (BasicBlock block : cfg.blocks) {
+                labels.put(block, "L" + number++);
+            }
+
+            output.emit("\t.export   "+ cfg.name.toString());
+            output.emitLabel(cfg.name.toString());
+
+            for (int i = 0; i < cfg.blocks.size(); i++) {
+                BasicBlock block = cfg.blocks.get(i);
+                nextBlock = i + 1 < cfg.blocks.size() ? cfg.blocks.get(i + 1) : null;
+                // The frame is set up in front of the label, a loop back to the entry block already has a frame
+                if (i == 0 && shrinkWrapping.setsUpFrame(block)) emitPrologue(stackLayout);
+                if (!block.predecessors.isEmpty()) output.emitLabel(labels.get(block));
+                if (i > 0 && shrinkWrapping.setsUpFrame(block)) emitPrologue(stackLayout);
+                if (shrinkWrapping.releasesFrame(block)) emitEpilogue(stackLayout);
+                frameBase = shrinkWrapping.isFramed(block) ? fp : sp;
+                forgetScratchContents();
+                for (Instruction instruction : block.allInstructions()) {
+                    instruction.accept(this);
+                }
+            }
+            output.optimize();
+            event.end();
+            if (event.shouldCommit()) {
+                event.statements = irInstructionCount(cfg);
+                event.instructions = output.instructionCount();
+                event.commit();
+            }
+        }
+
+        private void emitPrologue(StackLayout stackLayout) {
+            int frameSize = stackLayout.frameSize();
+            output.emitInstruction("sub",sp,sp,frameSize,"allocate frame");
+            output.emitInstruction("stw",fp,sp,stackLayout.oldFramePointerOffset(),"save old frame Pointer");
+            output.emitInstruction("add",fp,sp,frameSize,"setup new frame pointer");
+            if (!stackLayout.isLeafProcedure()){
+                output.emitInstruction("stw",returnPointer,fp,stackLayout.oldReturnAddressOffset(),"save return register");
+            }
+            for (int i = 0; i < savedRegisters.size(); i++) {
+                output.emitInstruction("stw",savedRegisters.get(i),fp,stackLayout.calleeSavedRegisterOffset(i),"save callee-saved register");
+            }
+        }
+
+        private void emitEpilogue(StackLayout stackLayout) {
+            int frameSize = stackLayout.frameSize();
+            for (int i = 0; i < savedRegisters.size(); i++) {
+                output.emitInstruction("ldw",savedRegisters.get(i),fp,stackLayout.calleeSavedRegisterOffset(i),"restore callee-saved register");
+            }
+            if (!stackLayout.isLeafProcedure()){
+                output.emitInstruction("ldw",returnPointer,fp,stackLayout.oldReturnAddressOffset(),"restore return register");
+            }
+            output.emitInstruction("ldw",fp,sp,stackLayout.oldFramePointerOffset(),"restore old frame pointer");
+            output.emitInstruction("add",sp,sp,frameSize,"release frame");
+        }
+
+        /**
+         * Returns the register holding an operand. Spilled temporaries are reloaded into the given scratch register.
+         */
+        private Register use(Operand operand, int scratch) {
+            if (operand instanceof Constant) {
+                if (((Constant) operand).value != 0) throw new IllegalStateException("Constant operand has not been materialized!");
+                return nullRegister;
+            }
+            if (operand instanceof FramePointer) return frameBase;
+            if (operand instanceof ArgumentRegister) return new Register(((ArgumentRegister) operand).number);
+            Temp temp = (Temp) operand;
+            Register register = registers.registerOf(temp);
+            if (register != null) return register;
+
+            // The other scratch register may be overwritten by the next operand of the same instruction
+            if (scratchContents[scratch] == temp) return registers.scratchRegister(scratch);
+            Register scratchRegister = registers.scratchRegister(scratch);
+            scratchContents[scratch] = temp;
+            LocalVariable home = registers.homeOf(temp);
+            if (home != null) {
+                output.emitInstruction("ldw", scratchRegister, frameBase, home.entry.offset, home.toString());
+            } else {
+                output.emitInstruction("ldw", scratchRegister, fp, stackLayout.spillSlotOffset(registers.spillSlotOf(temp)), "reload " + temp);
+            }
+            return scratchRegister;
+        }
+
+        /**
+         * Returns the register the target of an instruction has to be written to. Spilled targets are computed in the
+         * first scratch register and stored to their slot by {@link #writeBack(Temp)}.
+         */
+        private Register target(Temp temp) {
+            Register register = registers.registerOf(temp);
+            return register != null ? register : registers.scratchRegister(0);
+        }
+
+        void forgetScratchContents() {
+            Arrays.fill(scratchContents, null);
+        }
+
+        private void writeBack(Temp temp) {
+            if (registers.registerOf(temp) != null || registers.homeOf(temp) != null) return;
+            forgetScratchContents();
+            scratchContents[0] = temp;
+            output.emitInstruction("stw", registers.scratchRegister(0), fp, stackLayout.spillSlotOffset(registers.spillSlotOf(temp)), "spill " + temp);
+        }
+
+        private String branchInstruction(BinaryExpression.Operator comparison) {
+            switch (comparison) {
                 case EQU:
-                    output.emitInstruction("bne",temporaryRegister.previous().previous(),temporaryRegister.previous(),"L"+labelZaeler);
-                    temporaryRegister = temporaryRegister.previous();
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
-                case LSE:
-                    output.emitInstruction("bgt",temporaryRegister.previous().previous(),temporaryRegister.previous(),"L"+labelZaeler);
-                    temporaryRegister = temporaryRegister.previous();
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
+                    return "beq";
+                case NEQ:
+                    return "bne";
                 case LST:
-                    output.emitInstruction("bge",temporaryRegister.previous().previous(),temporaryRegister.previous(),"L"+labelZaeler);
-                    temporaryRegister = temporaryRegister.previous();
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
-                case GRE:
-                    output.emitInstruction("blt",temporaryRegister.previous().previous(),temporaryRegister.previous(),"L"+labelZaeler);
-                    temporaryRegister = temporaryRegister.previous();
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
+                    return "blt";
+                case LSE:
+                    return "ble";
                 case GRT:
-                    output.emitInstruction("ble",temporaryRegister.previous().previous(),temporaryRegister.previous(),"L"+labelZaeler);
-                    temporaryRegister = temporaryRegister.previous();
-                    temporaryRegister = temporaryRegister.previous();
-                    break;
+                    return "bgt";
+                case GRE:
+                    return "bge";
             }
+            throw new IllegalArgumentException(comparison.toString());
+        }
 
+        private String arithmeticInstruction(BinaryExpression.Operator operator) {
+            switch (operator) {
+                case ADD:
+                    return "add";
+                case SUB:
+                    return "sub";
+                case MUL:
+                    return "mul";
+                case DIV:
+                    return "div";
+            }
+            throw new IllegalArgumentException(operator.toString());
+        }
 
-
-
+        private String shiftInstruction(Shift.Kind kind) {
+            switch (kind) {
+                case LEFT:
+                    return "sll";
+                case LOGICAL_RIGHT:
+                    return "slr";
+                case ARITHMETIC_RIGHT:
+                    return "sar";
+            }
+            throw new IllegalArgumentException(kind.toString());
         }
-        //NamedVariable
+
+        //Move
         @Override
-        public void visit(NamedVariable namedVariable){
-            VariableEntry variableEntry = (VariableEntry) symbolTable.lookup(namedVariable.name);
-            output.emitInstruction("add",lastFreeRegister(),fp,variableEntry.offset);
-            if (variableEntry.isReference){
-                output.emitInstruction("ldw",temporaryRegister.previous(),temporaryRegister.previous(),0);
+        public void visit(Move move) {
+            Register target = target(move.target);
+            if (move.source instanceof ArgumentRegister && registers.registerOf(move.target) == null && registers.homeOf(move.target) != null) {
+                // The spilled argument is reloaded from the slot of its parameter
+                LocalVariable parameter = ((ArgumentRegister) move.source).parameter;
+                output.emitInstruction("stw", use(move.source, 0), frameBase, parameter.entry.offset, parameter.toString());
+                return;
+            }
+            if (move.source instanceof Temp && registers.registerOf(move.target) == null) {
+                Temp source = (Temp) move.source;
+                if (registers.registerOf(source) == null && registers.homeOf(source) == null
+                        && registers.spillSlotOf(source) == registers.spillSlotOf(move.target)) return;
+                // A copy into a spilled temporary is just the spill of the source
+                Register sourceRegister = use(move.source, 0);
+                output.emitInstruction("stw", sourceRegister, fp, stackLayout.spillSlotOffset(registers.spillSlotOf(move.target)), "spill " + move.target);
+                for (int i = 0; i < scratchContents.length; i++) {
+                    if (scratchContents[i] == move.target) scratchContents[i] = null;
+                }
+                return;
+            }
+            if (move.source instanceof Constant) {
+                output.emitInstruction("add", target, nullRegister, ((Constant) move.source).value);
+            } else {
+                Register source = use(move.source, 0);
+                if (source.number != target.number) output.emitInstruction("add", target, source, 0);
             }
+            writeBack(move.target);
         }
-        //VariableExpression
-        @Override
-        public void visit(VariableExpression variableExpression){
-            variableExpression.variable.accept(this);
-            output.emitInstruction("ldw",temporaryRegister.previous(),temporaryRegister.previous(),0);
 
-        }
-        //AssignStatement
+        //BinaryOperation
         @Override
-        public void visit(AssignStatement assignStatement){
-            assignStatement.target.accept(this);
-            assignStatement.value.accept(this);
-            output.emitInstruction("stw",temporaryRegister.previous(),temporaryRegister.previous().previous(),0);
-            temporaryRegister = temporaryRegister.previous();
-            temporaryRegister = temporaryRegister.previous();
+        public void visit(BinaryOperation binaryOperation) {
+            Register left = use(binaryOperation.left, 0);
+            Register target = target(binaryOperation.target);
+            String opcode = arithmeticInstruction(binaryOperation.operator);
+            if (binaryOperation.right instanceof Constant) {
+                output.emitInstruction(opcode, target, left, ((Constant) binaryOperation.right).value);
+            } else {
+                output.emitInstruction(opcode, target, left, use(binaryOperation.right, 1));
+            }
+            writeBack(binaryOperation.target);
+        }
 
+        //Shift
+        @Override
+        public void visit(Shift shift) {
+            Register source = use(shift.source, 0);
+            output.emitInstruction(shiftInstruction(shift.kind), target(shift.target), source, shift.amount);
+            writeBack(shift.target);
+        }
 
+        //LoadVariable
+        @Override
+        public void visit(LoadVariable loadVariable) {
+            // Spilled values of variables are read from the variable itself when they are used
+            if (registers.registerOf(loadVariable.target) == null && registers.homeOf(loadVariable.target) != null) return;
+            output.emitInstruction("ldw", target(loadVariable.target), frameBase, loadVariable.variable.entry.offset, loadVariable.variable.toString());
+            writeBack(loadVariable.target);
         }
-        //ArrayAccess
+
+        //StoreVariable
         @Override
-        public void visit(ArrayAccess arrayAccess){
-            arrayAccess.array.accept(this);
-            arrayAccess.index.accept(this);
-            ArrayType arrayType = (ArrayType) arrayAccess.array.dataType;
-            output.emitInstruction("add",lastFreeRegister(),nullRegister,arrayType.arraySize);
-            output.emitInstruction("bgeu",temporaryRegister.previous().previous(),temporaryRegister.previous(),"_indexError");
-            output.emitInstruction("mul",temporaryRegister.previous().previous(),temporaryRegister.previous().previous(), arrayType.baseType.byteSize);
-            temporaryRegister = temporaryRegister.previous();
-            output.emitInstruction("add",temporaryRegister.previous().previous(),temporaryRegister.previous().previous(),temporaryRegister.previous());
-            temporaryRegister = temporaryRegister.previous();
+        public void visit(StoreVariable storeVariable) {
+            output.emitInstruction("stw", use(storeVariable.value, 0), frameBase, storeVariable.variable.entry.offset, storeVariable.variable.toString());
+        }
 
+        //AddressOf
+        @Override
+        public void visit(AddressOf addressOf) {
+            output.emitInstruction("add", target(addressOf.target), frameBase, addressOf.variable.entry.offset, "&" + addressOf.variable);
+            writeBack(addressOf.target);
+        }
 
+        //Load
+        @Override
+        public void visit(Load load) {
+            Register address = use(load.address, 0);
+            output.emitInstruction("ldw", target(load.target), address, load.offset);
+            writeBack(load.target);
         }
-        //WhileStatement  ??????????????????????????????
+
+        //Store
         @Override
-        public void visit(WhileStatement whileStatement){
-            int ersteLabel = labelZaeler;
-            output.emitLabel("L"+labelZaeler);
-            labelZaeler++;
-            whileStatement.condition.accept(this);
-            labelZaeler++;
-            whileStatement.body.accept(this);
-            output.emitInstruction("j","L" + ersteLabel);
-            output.emitLabel("L"+(ersteLabel+1));
-            labelZaeler++;
-        }
-
-        //IfStatement   ??????????????????????????????
+        public void visit(Store store) {
+            Register address = use(store.address, 0);
+            output.emitInstruction("stw", use(store.value, 1), address, store.offset);
+        }
+
+        //BoundsCheck
         @Override
-        public void visit(IfStatement ifStatement){
-            labelZaeler++;
-            ifStatement.condition.accept(this);
-            if (ifStatement.elsePart instanceof EmptyStatement) {
-                ifStatement.thenPart.accept(this);
-                output.emitLabel("L" + (labelZaeler));
-                labelZaeler++;
-            }else {
-                ifStatement.thenPart.accept(this);
-                output.emitInstruction("j","L"+labelZaeler);
-                output.emitLabel("L" + (labelZaeler-1));
-                labelZaeler++;
-                ifStatement.thenPart.accept(this);
-                output.emitLabel("L" + (labelZaeler-1));
-                labelZaeler++;
+        public void visit(BoundsCheck boundsCheck) {
+            Register index = use(boundsCheck.index, 0);
+            output.emitInstruction("bgeu", index, use(boundsCheck.size, 1), "_indexError");
+        }
 
+        //Call
+        @Override
+        public void visit(Call call) {
+            if (call.isTailCall) {
+                emitTailCall(call);
+                return;
+            }
+            for (int i = 0; i < call.arguments.size(); i++) {
+                passArgument(call, i, sp, "store argument #" + i);
             }
+            output.emitInstruction("jal", call.procedureName.toString());
+            forgetScratchContents();
         }
-        //CallStatement
-        @Override
-        public void visit(CallStatement callStatement){
-            ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(callStatement.procedureName);
-            List<Expression> argumentList = callStatement.arguments;
-            List<ParameterType> parameterTypeList = procedureEntry.parameterTypes;
-            for(int i = 0; i < argumentList.size();i++){
-                if (parameterTypeList.get(i).isReference){
-                    VariableExpression variableExpression = (VariableExpression) argumentList.get(i);
-                    variableExpression.variable.accept(this);
+
+        /**
+         * The arguments are stored to the incoming area of this procedure, where the called procedure finds them once
+         * the frame has been released. The called procedure returns directly to the caller of this procedure.
+         */
+        private void emitTailCall(Call call) {
+            List<ParameterType> parameterTypes = call.procedure.parameterTypes;
+            if (readsParameterSlots(call)) {
+                // The parameter slots are overwritten, the arguments are put into the outgoing area first
+                for (int i = 0; i < call.arguments.size(); i++) {
+                    passArgument(call, i, sp, "store argument #" + i);
                 }
-                else {
-                    argumentList.get(i).accept(this);
+                // No value of this procedure is needed anymore, any register may be overwritten
+                Register scratch = new Register(8);
+                for (int i = 0; i < call.arguments.size(); i++) {
+                    if (parameterTypes.get(i).register != null) continue;
+                    output.emitInstruction("ldw", scratch, sp, parameterTypes.get(i).offset);
+                    output.emitInstruction("stw", scratch, fp, parameterTypes.get(i).offset, "pass argument #" + i);
+                }
+            } else {
+                for (int i = 0; i < call.arguments.size(); i++) {
+                    passArgument(call, i, fp, "pass argument #" + i);
                 }
-                output.emitInstruction("stw",temporaryRegister.previous(),sp,i * 4,
-                        "store argument #" + i);
-                temporaryRegister = temporaryRegister.previous();
             }
-            output.emitInstruction("jal",callStatement.procedureName.toString());
+            emitEpilogue(stackLayout);
+            output.emitInstruction("j", call.procedureName.toString());
+            forgetScratchContents();
+            afterTailCall = true;
         }
-        //ProcedureDeclaration
-        @Override
-        public void visit(ProcedureDeclaration procedureDeclaration){
-            ProcedureEntry procedureEntry = (ProcedureEntry) this.symbolTable.lookup(procedureDeclaration.name);
-            int returnAdresse;
-            int frameSize ;
-            int oldFramePointer;
-            output.emit("\t.export   "+ procedureDeclaration.name.toString());
-            output.emitLabel(procedureDeclaration.name.toString());
-            returnAdresse = procedureEntry.stackLayout.oldReturnAddressOffset();
-
-            if (procedureEntry.stackLayout.outgoingAreaSize == -1){
-                frameSize = procedureEntry.stackLayout.frameSize();
-                oldFramePointer = 0;
-            }
-            else {
-                frameSize = procedureEntry.stackLayout.frameSize();
-                oldFramePointer = procedureEntry.stackLayout.oldFramePointerOffset();
-            }
-            output.emitInstruction("sub",sp,sp,frameSize,"allocate frame");
-            output.emitInstruction("stw",fp,sp,oldFramePointer,"save old frame Pointer");
-            output.emitInstruction("add",fp,sp,frameSize,"setup new frame pointer");
 
-            if (procedureEntry.stackLayout.outgoingAreaSize != -1){
-                output.emitInstruction("stw",returnPointer,fp,returnAdresse,"save return register");
-            }
-            for (Statement stInBody : procedureDeclaration.body){
-                CodeGenerator.VisitorOfCodeGenerator newproc = new CodeGenerator.VisitorOfCodeGenerator(procedureEntry.localTable);
-                stInBody.accept(newproc);
+        /**
+         * Moves an argument into the register it is passed in, or stores it to its slot relative to the given base.
+         */
+        private void passArgument(Call call, int i, Register base, String comment) {
+            ParameterType parameterType = call.procedure.parameterTypes.get(i);
+            Register value = use(call.arguments.get(i), 0);
+            if (parameterType.register != null) {
+                output.emitInstruction("add", new Register(parameterType.register), value, 0, comment);
+            } else {
+                output.emitInstruction("stw", value, base, parameterType.offset, comment);
             }
-            if (procedureEntry.stackLayout.outgoingAreaSize != -1){
-                output.emitInstruction("ldw",returnPointer,fp,returnAdresse,"restore return register");
+        }
+
+        /**
+         * @return Whether an argument of the call is reloaded from the frame slot of a parameter.
+         */
+        private boolean readsParameterSlots(Call call) {
+            for (Operand argument : call.arguments) {
+                if (!(argument instanceof Temp) || registers.registerOf((Temp) argument) != null) continue;
+                LocalVariable home = registers.homeOf((Temp) argument);
+                if (home != null && home.isParameter) return true;
             }
-            output.emitInstruction("ldw",fp,sp,oldFramePointer,"restore old frame pointer");
-            output.emitInstruction("add",sp,sp,frameSize,"release frame");
-            output.emitInstruction("jr",returnPointer,"return");
+            return false;
+        }
 
+        //Jump
+        @Override
+        public void visit(Jump jump) {
+            if (jump.destination != nextBlock) output.emitInstruction("j", labels.get(jump.destination));
         }
-        //CompoundStatement
+
+        //Branch
         @Override
-        public void visit(CompoundStatement compoundStatement) {
-            for (Statement cs : compoundStatement.statements){
-                cs.accept(this);
+        public void visit(Branch branch) {
+            Register left = use(branch.left, 0);
+            Register right = use(branch.right, 1);
+            if (branch.ifTrue == nextBlock) {
+                output.emitInstruction(branchInstruction(branch.comparison.flipComparison()), left, right, labels.get(branch.ifFalse));
+            } else {
+                output.emitInstruction(branchInstruction(branch.comparison), left, right, labels.get(branch.ifTrue));
+                if (branch.ifFalse != nextBlock) output.emitInstruction("j", labels.get(branch.ifFalse));
             }
         }
-        // Program
+
+        //Return
         @Override
-        public void visit(Program program){
-            for (GlobalDeclaration gb : program.declarations){
-                if(gb instanceof ProcedureDeclaration)
-                    gb.accept(this);
+        public void visit(Return ret) {
+            if (afterTailCall) {
+                afterTailCall = false;
+                return;
             }
+            if (frameBase == fp) emitEpilogue(stackLayout);
+            output.emitInstruction("jr",returnPointer,"return");
         }
 
-
+        //Phi
+        @Override
+        public void visit(Phi phi) {
+            throw new IllegalStateException("Phi instructions have to be removed before code generation!");
+        }
     }
-}
\ No newline at end of file
+}
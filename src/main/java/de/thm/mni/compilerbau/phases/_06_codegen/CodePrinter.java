@@ -1,68 +1,95 @@
 package de.thm.mni.compilerbau.phases._06_codegen;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Collects the emitted assembly code of a procedure in memory. When the procedure has been emitted, {@link #optimize()}
+ * improves the code with the {@link PeepholeOptimizer}, {@link #printTo(PrintWriter)} prints it to the output file.
+ */
 class CodePrinter {
-    private final PrintWriter outputFile;
+    private final PeepholeOptimizer peepholeOptimizer;
+    private final List<AssemblyLine> lines = new ArrayList<>();
 
-    CodePrinter(PrintWriter outputFile) {
-        this.outputFile = outputFile;
+    CodePrinter(PeepholeOptimizer peepholeOptimizer) {
+        this.peepholeOptimizer = peepholeOptimizer;
     }
 
     void emitInstruction(String opcode, Register r1, Register r2, Register r3) {
-        outputFile.printf("\t%s\t%s,%s,%s\n", opcode, r1, r2, r3);
+        emitInstruction(opcode, r1, r2, r3, null);
     }
 
     void emitInstruction(String opcode, Register r1, Register r2, int value) {
-        outputFile.printf("\t%s\t%s,%s,%d\n", opcode, r1, r2, value);
+        emitInstruction(opcode, r1, r2, value, null);
     }
 
     void emitInstruction(String opcode, Register r1, Register r2, String label) {
-        outputFile.printf("\t%s\t%s,%s,%s\n", opcode, r1, r2, label);
+        emitInstruction(opcode, r1, r2, label, null);
     }
 
     void emitInstruction(String opcode, Register r1) {
-        outputFile.printf("\t%s\t%s\n", opcode, r1);
+        emitInstruction(opcode, r1, null);
     }
 
     void emitInstruction(String opcode, String label) {
-        outputFile.printf("\t%s\t%s\n", opcode, label);
+        emitInstruction(opcode, label, null);
     }
 
     void emitInstruction(String opcode, Register r1, Register r2, Register r3, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%s\t\t; %s\n", opcode, r1, r2, r3, comment);
+        lines.add(AssemblyLine.instruction(opcode, List.of(r1, r2, r3), comment));
     }
 
     void emitInstruction(String opcode, Register r1, Register r2, int value, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%d\t\t; %s\n", opcode, r1, r2, value, comment);
+        lines.add(AssemblyLine.instruction(opcode, List.of(r1, r2, value), comment));
     }
 
     void emitInstruction(String opcode, Register r1, Register r2, String label, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%s\t\t; %s\n", opcode, r1, r2, label, comment);
+        lines.add(AssemblyLine.instruction(opcode, List.of(r1, r2, label), comment));
     }
 
     void emitInstruction(String opcode, Register r1, String comment) {
-        outputFile.printf("\t%s\t%s\t\t\t; %s\n", opcode, r1, comment);
+        lines.add(AssemblyLine.instruction(opcode, List.of(r1), comment));
     }
 
     void emitInstruction(String opcode, String label, String comment) {
-        outputFile.printf("\t%s\t%s\t\t; %s\n", opcode, label, comment);
+        lines.add(AssemblyLine.instruction(opcode, List.of(label), comment));
     }
 
     void emitLabel(String label) {
-        outputFile.printf("%s:\n", label);
+        lines.add(AssemblyLine.label(label));
     }
 
     void emitImport(String label) {
-        outputFile.printf("\t.import\t%s\n", label);
+        lines.add(AssemblyLine.directive("\t.import\t" + label));
     }
 
     void emitExport(String label) {
-        outputFile.printf("\t.export\t%s\n", label);
+        lines.add(AssemblyLine.directive("\t.export\t" + label));
     }
 
     void emit(String str) {
-        outputFile.println(str);
+        lines.add(AssemblyLine.directive(str));
+    }
+
+    /**
+     * Optimizes the collected code. Labels and jumps never cross the procedures, so each procedure is optimized on its
+     * own.
+     */
+    void optimize() {
+        peepholeOptimizer.optimize(lines);
     }
-}
 
+    int instructionCount() {
+        return (int) lines.stream().filter(line -> line.isInstruction()).count();
+    }
+
+    /**
+     * Prints the collected code to the output file.
+     */
+    void printTo(PrintWriter outputFile) {
+        for (AssemblyLine line : lines) {
+            outputFile.println(line);
+        }
+    }
+}
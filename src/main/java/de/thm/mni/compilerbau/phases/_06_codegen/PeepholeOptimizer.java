@@ -0,0 +1,95 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class improves the emitted assembly code by looking at a small window of consecutive lines at a time.
+ * <p>
+ * The window is moved over the code line by line. At each position, the rules are tried in order until one of them
+ * rewrites the code. After a rewrite the window moves back a few lines, because the changed lines may now form a
+ * pattern together with the lines in front of them. Every rule shrinks the code or makes it faster, so the
+ * optimization ends when the window has reached the end of the code.
+ * <p>
+ * All procedures are optimized in parallel by the same optimizer, whose only state is how often each rule has fired.
+ */
+class PeepholeOptimizer {
+    /**
+     * The number of lines a rule may rewrite at once.
+     */
+    private static final int WINDOW_SIZE = 3;
+
+    private final List<PeepholeRule> rules;
+    private final Map<PeepholeRule, AtomicInteger> fired = new LinkedHashMap<>();
+
+    /**
+     * @param rules The rules to apply, in order of preference.
+     */
+    PeepholeOptimizer(List<PeepholeRule> rules) {
+        this.rules = rules;
+        for (PeepholeRule rule : rules) {
+            fired.put(rule, new AtomicInteger());
+        }
+    }
+
+    void optimize(List<AssemblyLine> code) {
+        int position = 0;
+        while (position < code.size()) {
+            PeepholeRule applied = null;
+            for (PeepholeRule rule : rules) {
+                if (rule.apply(code, position)) {
+                    applied = rule;
+                    break;
+                }
+            }
+            if (applied != null) {
+                fired.get(applied).incrementAndGet();
+                position = Math.max(0, position - WINDOW_SIZE + 1);
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Prints how many times each rule has changed the code.
+     */
+    void printStatistics(PrintStream out) {
+        out.println("Peephole optimization:");
+        for (Map.Entry<PeepholeRule, AtomicInteger> entry : fired.entrySet()) {
+            out.printf("  %-24s %d\n", entry.getKey().name(), entry.getValue().get());
+        }
+    }
+
+    /**
+     * Checks whether the value of a register is no longer needed after an instruction has been executed. The code is
+     * only followed until the next label or jump, behind which the register is assumed to be needed. A called procedure
+     * gets its arguments on the stack or in the argument registers, so the code behind a call is followed as well
+     * unless the register is one of them.
+     *
+     * @param code     The assembly code.
+     * @param index    The index of the instruction.
+     * @param register The register.
+     * @return true if the register is overwritten before it is read again.
+     */
+    static boolean isDeadAfter(List<AssemblyLine> code, int index, Register register) {
+        for (int i = index; i < code.size(); i++) {
+            AssemblyLine line = code.get(i);
+            if (i > index && line.usedRegisters().contains(register)) return false;
+            if (register.equals(line.definedRegister())) return true;
+            if (!line.isInstruction() || line.isControlTransfer() && !line.isInstruction("jal")) return false;
+            if (line.isInstruction("jal") && isArgumentRegister(register)) return false;
+        }
+        return false;
+    }
+
+    private static boolean isArgumentRegister(Register register) {
+        return register.number >= VarAllocator.FIRST_ARGUMENT_REGISTER
+                && register.number < VarAllocator.FIRST_ARGUMENT_REGISTER + VarAllocator.ARGUMENT_REGISTER_COUNT;
+    }
+}
@@ -0,0 +1,24 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.List;
+
+/**
+ * A rewrite of a short sequence of assembly lines, applied by the {@link PeepholeOptimizer}.
+ */
+interface PeepholeRule {
+    /**
+     * @return The name of the rule shown in the statistics.
+     */
+    String name();
+
+    /**
+     * Tries to rewrite the lines starting at the given position. A rule may only replace or remove lines of its window
+     * (the position and the few lines behind it), but it may read the whole code, e.g. to find out whether a register
+     * is still needed.
+     *
+     * @param code     The assembly code of the whole program.
+     * @param position The index of the first line of the window.
+     * @return Whether the rule has changed the code.
+     */
+    boolean apply(List<AssemblyLine> code, int position);
+}
@@ -0,0 +1,315 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.*;
+
+/**
+ * The rules applied by the {@link PeepholeOptimizer}.
+ */
+final class PeepholeRules {
+    private static final Register NULL_REGISTER = new Register(0);
+
+    private PeepholeRules() {
+    }
+
+    /**
+     * @return All rules, in the order they are tried.
+     */
+    static List<PeepholeRule> all() {
+        return List.of(
+                new RedundantMove(),
+                new CopiedResult(),
+                new ZeroRegister(),
+                new AddressFolding(),
+                new StoredValueReload(),
+                new BranchOverJump(),
+                new JumpThreading(),
+                new JumpToNextLabel(),
+                new UnreachableCode(),
+                new UnusedLabel()
+        );
+    }
+
+    private static AssemblyLine lineAt(List<AssemblyLine> code, int index) {
+        return index < code.size() ? code.get(index) : null;
+    }
+
+    /**
+     * @return Whether the lines starting at the index are labels, one of them being the given label.
+     */
+    private static boolean labelFollows(List<AssemblyLine> code, int index, String label) {
+        for (int i = index; i < code.size() && code.get(i).isLabel(); i++) {
+            if (code.get(i).text.equals(label)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * add $r,$r,0 (or any other operation leaving its operand unchanged) is removed.
+     */
+    private static class RedundantMove implements PeepholeRule {
+        private static final Set<String> NEUTRAL_ZERO = Set.of("add", "sub", "or", "xor", "sll", "slr", "sar");
+
+        @Override
+        public String name() {
+            return "redundant move";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            if (!line.isInstruction() || !NEUTRAL_ZERO.contains(line.text)) return false;
+            Register target = line.register(0);
+            boolean zero = Integer.valueOf(0).equals(line.immediate(2)) || NULL_REGISTER.equals(line.register(2));
+            if (!zero || target == null || !target.equals(line.register(1))) return false;
+            code.remove(position);
+            return true;
+        }
+    }
+
+    /**
+     * A result copied by add $b,$a,0 right after it has been computed into $a is computed into $b directly, if $a is
+     * not needed anymore.
+     */
+    private static class CopiedResult implements PeepholeRule {
+        @Override
+        public String name() {
+            return "copied result";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            AssemblyLine next = lineAt(code, position + 1);
+            if (next == null || !next.isInstruction("add") || !Integer.valueOf(0).equals(next.immediate(2))) return false;
+            Register result = line.definedRegister();
+            Register copy = next.register(0);
+            if (result == null || line.isControlTransfer() || !result.equals(next.register(1)) || result.equals(copy)) return false;
+            if (!PeepholeOptimizer.isDeadAfter(code, position + 1, result)) return false;
+
+            List<Object> operands = new ArrayList<>(line.operands);
+            operands.set(0, copy);
+            code.set(position, AssemblyLine.instruction(line.text, operands, line.comment != null ? line.comment : next.comment));
+            code.remove(position + 1);
+            return true;
+        }
+    }
+
+    /**
+     * add $r,$0,0 followed by the only instruction reading $r: the instruction reads $0 instead.
+     */
+    private static class ZeroRegister implements PeepholeRule {
+        @Override
+        public String name() {
+            return "zero register";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            AssemblyLine next = lineAt(code, position + 1);
+            if (!line.isInstruction("add") || next == null || !next.isInstruction()) return false;
+            Register register = line.register(0);
+            if (register == null || !NULL_REGISTER.equals(line.register(1)) || !Integer.valueOf(0).equals(line.immediate(2))) return false;
+            if (!next.usedRegisters().contains(register) || !PeepholeOptimizer.isDeadAfter(code, position + 1, register)) return false;
+            code.set(position + 1, next.replaceUses(register, NULL_REGISTER));
+            code.remove(position);
+            return true;
+        }
+    }
+
+    /**
+     * add $a,$b,c followed by ldw $d,$a,k becomes ldw $d,$b,c+k if $a is not needed anymore; stores alike.
+     */
+    private static class AddressFolding implements PeepholeRule {
+        @Override
+        public String name() {
+            return "address folding";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            AssemblyLine next = lineAt(code, position + 1);
+            if (!line.isInstruction("add") || next == null || !(next.isLoad() || next.isStore())) return false;
+            Register address = line.register(0);
+            Register base = line.register(1);
+            Integer displacement = line.immediate(2);
+            Integer offset = next.immediate(2);
+            if (address == null || base == null || displacement == null || offset == null) return false;
+            if (!address.equals(next.register(1)) || next.isStore() && address.equals(next.register(0))) return false;
+            int folded = displacement + offset;
+            if (folded < Short.MIN_VALUE || folded > Short.MAX_VALUE) return false;
+            if (!PeepholeOptimizer.isDeadAfter(code, position + 1, address)) return false;
+
+            String comment = next.comment;
+            if (comment == null && line.comment != null) comment = line.comment.replaceFirst("^&", "");
+            code.set(position + 1, AssemblyLine.instruction(next.text, List.of(next.operands.get(0), base, folded), comment));
+            code.remove(position);
+            return true;
+        }
+    }
+
+    /**
+     * A word loaded right after it has been stored is taken from the register which has been stored.
+     */
+    private static class StoredValueReload implements PeepholeRule {
+        @Override
+        public String name() {
+            return "stored value reload";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            AssemblyLine next = lineAt(code, position + 1);
+            if (!line.isInstruction("stw") || next == null || !next.isInstruction("ldw")) return false;
+            Register base = line.register(1);
+            Integer offset = line.immediate(2);
+            if (base == null || offset == null || !base.equals(next.register(1)) || !offset.equals(next.immediate(2))) return false;
+
+            Register value = line.register(0);
+            Register target = next.register(0);
+            if (value.equals(target)) {
+                code.remove(position + 1);
+            } else {
+                code.set(position + 1, next.with("add", List.of(target, value, 0)));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A conditional branch over an unconditional jump is replaced by the opposite branch to the jump's target.
+     */
+    private static class BranchOverJump implements PeepholeRule {
+        private static final Map<String, String> OPPOSITE = Map.of(
+                "beq", "bne", "bne", "beq",
+                "blt", "bge", "bge", "blt",
+                "ble", "bgt", "bgt", "ble",
+                "bltu", "bgeu", "bgeu", "bltu",
+                "bleu", "bgtu", "bgtu", "bleu"
+        );
+
+        @Override
+        public String name() {
+            return "branch over jump";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            AssemblyLine next = lineAt(code, position + 1);
+            if (!line.isBranch() || next == null || next.jumpTarget() == null || !next.isInstruction("j")) return false;
+            if (!labelFollows(code, position + 2, line.jumpTarget())) return false;
+
+            code.set(position, line.with(OPPOSITE.get(line.text), List.of(line.operands.get(0), line.operands.get(1), next.jumpTarget())));
+            code.remove(position + 1);
+            return true;
+        }
+    }
+
+    /**
+     * A jump or branch to a jump goes to the final target directly.
+     */
+    private static class JumpThreading implements PeepholeRule {
+        @Override
+        public String name() {
+            return "jump threading";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            String target = line.jumpTarget();
+            if (target == null) return false;
+
+            // Follow the chain of jumps, which might form a cycle
+            Set<String> visited = new HashSet<>();
+            String destination = target;
+            while (visited.add(destination)) {
+                String next = jumpAt(code, destination);
+                if (next == null) break;
+                destination = next;
+            }
+            if (destination.equals(target) || visited.contains(destination) && jumpAt(code, destination) != null) return false;
+
+            List<Object> operands = new ArrayList<>(line.operands);
+            operands.set(operands.size() - 1, destination);
+            code.set(position, line.with(line.text, operands));
+            return true;
+        }
+
+        /**
+         * @return The target of the unconditional jump behind the label, or null if the label is followed by anything else.
+         */
+        private static String jumpAt(List<AssemblyLine> code, String label) {
+            for (int i = 0; i < code.size(); i++) {
+                if (!code.get(i).isLabel() || !code.get(i).text.equals(label)) continue;
+                int next = i + 1;
+                while (next < code.size() && code.get(next).isLabel()) next++;
+                AssemblyLine line = lineAt(code, next);
+                return line != null && line.isInstruction("j") ? line.jumpTarget() : null;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A jump or branch to the label directly behind it is removed.
+     */
+    private static class JumpToNextLabel implements PeepholeRule {
+        @Override
+        public String name() {
+            return "jump to next label";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            String target = code.get(position).jumpTarget();
+            if (target == null || !labelFollows(code, position + 1, target)) return false;
+            code.remove(position);
+            return true;
+        }
+    }
+
+    /**
+     * Instructions behind an unconditional jump or return can only be reached through a label.
+     */
+    private static class UnreachableCode implements PeepholeRule {
+        @Override
+        public String name() {
+            return "unreachable code";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            AssemblyLine next = lineAt(code, position + 1);
+            if (!line.isInstruction("j", "jr") || next == null || !next.isInstruction()) return false;
+            code.remove(position + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Labels which are never referenced are removed, so that they do not separate the instructions around them.
+     */
+    private static class UnusedLabel implements PeepholeRule {
+        @Override
+        public String name() {
+            return "unused label";
+        }
+
+        @Override
+        public boolean apply(List<AssemblyLine> code, int position) {
+            AssemblyLine line = code.get(position);
+            if (!line.isLabel()) return false;
+            for (AssemblyLine other : code) {
+                if (other.isInstruction() && other.operands.contains(line.text)) return false;
+                if (other.kind == AssemblyLine.Kind.DIRECTIVE && other.text.trim().matches(".*\\s" + line.text)) return false;
+            }
+            code.remove(position);
+            return true;
+        }
+    }
+}
@@ -18,6 +18,16 @@ class Register {
         return number >= 8 && number <= 23;
     }
 
+    /**
+     * Checks if the register has to be preserved by a called procedure. A procedure using such a register saves it in
+     * its prologue and restores it in its epilogue, so values in it survive calls.
+     *
+     * @return true if the register is callee-saved.
+     */
+    boolean isCalleeSaved() {
+        return number >= 16 && number <= 23;
+    }
+
     /**
      * Returns the register with the number of this
      *
@@ -42,6 +52,16 @@ class Register {
         return new Register(number + 1);
     }
 
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Register && ((Register) other).number == number;
+    }
+
+    @Override
+    public int hashCode() {
+        return number;
+    }
+
     @Override
     public String toString() {
         return "$" + number;
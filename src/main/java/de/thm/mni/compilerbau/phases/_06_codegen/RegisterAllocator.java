@@ -0,0 +1,378 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This class maps the temporaries of a procedure to the registers available for free use (linear scan allocation).
+ * <p>
+ * All instructions of the procedure are numbered in the order they are emitted. Every temporary gets a live interval,
+ * a list of position ranges where its value is needed. An interval may have holes, e.g. a value defined before an if
+ * statement and used after it is not live in a branch which assigns it a new value. The intervals are visited in order
+ * of their start; an interval gets a register which is not held by any interval intersecting it. When all registers
+ * are taken, the temporaries whose next use lies farthest in the future are spilled: they live in a stack slot of the
+ * frame (see {@link de.thm.mni.compilerbau.phases._05_varalloc.StackLayout#spillSlotOffset(int)}) for their whole
+ * lifetime.
+ * <p>
+ * A spilled temporary is reloaded into a scratch register before each use and written back after each definition.
+ * The scratch registers are only reserved if at least one temporary has to be spilled.
+ * The two temporaries of a copy instruction prefer to share a register or spill slot, so that the copy can be omitted.
+ * <p>
+ * A temporary which only holds the value of a variable that is never written in the procedure does not need a stack
+ * slot of its own when it is spilled: it can be reloaded from the frame slot of the variable. The same holds for an
+ * argument passed in a register, which is stored to the slot of its parameter instead.
+ * Since the caller-saved registers may be overwritten by a called procedure, temporaries which are live across a call
+ * may only be kept in callee-saved registers, which are saved by the code generator if they are used. Other
+ * temporaries prefer the caller-saved registers. The scratch registers are caller-saved as well.
+ */
+class RegisterAllocator {
+    /**
+     * Every instruction reads its operands at an even position and writes its target at the next odd position, so an
+     * operand's register may be reused for the target of the same instruction.
+     */
+    private static int usePosition(int index) {
+        return 2 * index;
+    }
+
+    private static int definitionPosition(int index) {
+        return 2 * index + 1;
+    }
+
+    private static class Interval {
+        final Temp temp;
+        /**
+         * The ranges [from, to] covered by this interval, sorted and disjoint.
+         */
+        final LinkedList<int[]> ranges = new LinkedList<>();
+        final List<Integer> uses = new ArrayList<>();
+        boolean crossesCall = false;
+        Register register = null;
+        int spillSlot = -1;
+        Interval hint = null;
+        int definitions = 0;
+        LocalVariable home = null;
+
+        Interval(Temp temp) {
+            this.temp = temp;
+        }
+
+        int start() {
+            return ranges.getFirst()[0];
+        }
+
+        int end() {
+            return ranges.getLast()[1];
+        }
+
+        /**
+         * The procedure is walked backwards while the intervals are built, so a new range never lies behind the others.
+         */
+        void addRange(int from, int to) {
+            if (!ranges.isEmpty() && ranges.getFirst()[0] <= to + 1) {
+                ranges.getFirst()[0] = Math.min(from, ranges.getFirst()[0]);
+                ranges.getFirst()[1] = Math.max(to, ranges.getFirst()[1]);
+            } else {
+                ranges.addFirst(new int[]{from, to});
+            }
+        }
+
+        /**
+         * Lets the interval begin at a definition of the temporary, which ends the range of the value being defined.
+         */
+        void define(int position) {
+            ranges.getFirst()[0] = position;
+        }
+
+        boolean covers(int position) {
+            for (int[] range : ranges) {
+                if (range[0] > position) return false;
+                if (range[1] >= position) return true;
+            }
+            return false;
+        }
+
+        boolean intersects(Interval other) {
+            Iterator<int[]> mine = ranges.iterator();
+            Iterator<int[]> theirs = other.ranges.iterator();
+            int[] a = mine.next();
+            int[] b = theirs.next();
+            while (true) {
+                if (a[1] < b[0]) {
+                    if (!mine.hasNext()) return false;
+                    a = mine.next();
+                } else if (b[1] < a[0]) {
+                    if (!theirs.hasNext()) return false;
+                    b = theirs.next();
+                } else {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Intervals kept alive by a loop may have no further use in linear order, they count as used at their end.
+         */
+        int nextUse(int position) {
+            int index = Collections.binarySearch(uses, position);
+            if (index < 0) index = -index - 1;
+            return index < uses.size() ? uses.get(index) : end() + 1;
+        }
+    }
+
+    private final List<Register> scratchRegisters;
+    private final Map<Temp, Interval> intervals = new HashMap<>();
+    private int spillSlotCount = 0;
+
+    /**
+     * Allocates registers for all temporaries of a procedure.
+     *
+     * @param cfg       The procedure.
+     * @param registers The registers which may be assigned to temporaries, in order of preference.
+     */
+    RegisterAllocator(ControlFlowGraph cfg, List<Register> registers) {
+        buildIntervals(cfg);
+
+        List<Register> available = new ArrayList<>(registers);
+        if (!allocate(available)) {
+            // Spilled values need two scratch registers to be reloaded into
+            List<Register> callerSaved = available.stream().filter(register -> !register.isCalleeSaved()).collect(Collectors.toList());
+            List<Register> scratch = List.copyOf(callerSaved.subList(callerSaved.size() - 2, callerSaved.size()));
+            available.removeAll(scratch);
+            allocate(available);
+            this.scratchRegisters = scratch;
+        } else {
+            this.scratchRegisters = List.of();
+        }
+        assignSpillSlots();
+    }
+
+    private void buildIntervals(ControlFlowGraph cfg) {
+        Liveness liveness = new Liveness(cfg);
+        List<Integer> calls = new ArrayList<>();
+        Set<LocalVariable> writtenVariables = new HashSet<>();
+
+        int[] firstIndex = new int[cfg.blocks.size() + 1];
+        for (int b = 0; b < cfg.blocks.size(); b++) {
+            firstIndex[b + 1] = firstIndex[b] + cfg.blocks.get(b).allInstructions().size();
+        }
+
+        for (int b = cfg.blocks.size() - 1; b >= 0; b--) {
+            BasicBlock block = cfg.blocks.get(b);
+            List<Instruction> instructions = block.allInstructions();
+            int blockFrom = usePosition(firstIndex[b]);
+            int blockTo = definitionPosition(firstIndex[b + 1] - 1);
+
+            Set<Temp> live = new HashSet<>(liveness.liveOut(block));
+            for (Temp temp : live) {
+                interval(temp).addRange(blockFrom, blockTo);
+            }
+
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                Instruction instruction = instructions.get(i);
+                int index = firstIndex[b] + i;
+                if (instruction.target != null) {
+                    Interval interval = interval(instruction.target);
+                    if (live.remove(instruction.target)) {
+                        interval.define(definitionPosition(index));
+                    } else {
+                        interval.addRange(definitionPosition(index), definitionPosition(index));
+                    }
+                    interval.definitions++;
+                    if (instruction instanceof LoadVariable) interval.home = ((LoadVariable) instruction).variable;
+                    if (instruction instanceof Move && ((Move) instruction).source instanceof ArgumentRegister) {
+                        interval.home = ((ArgumentRegister) ((Move) instruction).source).parameter;
+                    }
+                }
+                for (Operand operand : instruction.operands()) {
+                    if (operand instanceof Temp) {
+                        Interval interval = interval((Temp) operand);
+                        if (live.add((Temp) operand)) interval.addRange(blockFrom, usePosition(index));
+                        interval.uses.add(usePosition(index));
+                    }
+                }
+                // Storing an argument register to its parameter does not change the parameter
+                if (instruction instanceof StoreVariable && !(((StoreVariable) instruction).value instanceof ArgumentRegister)) {
+                    writtenVariables.add(((StoreVariable) instruction).variable);
+                }
+                if (instruction instanceof AddressOf) writtenVariables.add(((AddressOf) instruction).variable);
+                if (instruction instanceof Move && ((Move) instruction).source instanceof Temp) {
+                    Interval target = interval(instruction.target);
+                    Interval source = interval((Temp) ((Move) instruction).source);
+                    if (target.hint == null) target.hint = source;
+                    if (source.hint == null) source.hint = target;
+                }
+                if (instruction instanceof Call) calls.add(definitionPosition(index));
+            }
+        }
+
+        for (Interval interval : intervals.values()) {
+            Collections.sort(interval.uses);
+            if (interval.definitions != 1 || writtenVariables.contains(interval.home)) interval.home = null;
+            for (int call : calls) {
+                if (interval.covers(call - 1) && interval.covers(call + 1)) interval.crossesCall = true;
+            }
+        }
+    }
+
+    private Interval interval(Temp temp) {
+        return intervals.computeIfAbsent(temp, Interval::new);
+    }
+
+    private List<Interval> sortedIntervals() {
+        List<Interval> sorted = new ArrayList<>(intervals.values());
+        sorted.sort(Comparator.comparingInt(Interval::start).thenComparingInt(interval -> interval.temp.number));
+        return sorted;
+    }
+
+    /**
+     * @return Whether all temporaries could be kept in registers.
+     */
+    private boolean allocate(List<Register> available) {
+        // Active intervals cover the current position, inactive intervals have a hole there
+        List<Interval> active = new ArrayList<>();
+        List<Interval> inactive = new ArrayList<>();
+        boolean noSpills = true;
+        for (Interval interval : intervals.values()) {
+            interval.register = null;
+        }
+
+        for (Interval current : sortedIntervals()) {
+            int position = current.start();
+            List<Interval> handled = new ArrayList<>(active);
+            handled.addAll(inactive);
+            active.clear();
+            inactive.clear();
+            for (Interval interval : handled) {
+                if (interval.end() < position) continue;
+                if (interval.covers(position)) active.add(interval);
+                else inactive.add(interval);
+            }
+
+            // A value live across a call only survives in a callee-saved register. Saving and restoring the register
+            // costs as much as three reloads, a value with a home variable and few uses is reloaded from there instead.
+            List<Register> candidates = available;
+            if (current.crossesCall) {
+                boolean cheaperToReload = current.home != null && current.uses.size() <= 3;
+                candidates = cheaperToReload ? List.of() : available.stream().filter(Register::isCalleeSaved).collect(Collectors.toList());
+            }
+
+            // The intervals which keep each register from being assigned to the current interval
+            Map<Register, List<Interval>> blockers = new LinkedHashMap<>();
+            for (Register register : available) {
+                blockers.put(register, new ArrayList<>());
+            }
+            for (Interval interval : active) {
+                blockers.get(interval.register).add(interval);
+            }
+            for (Interval interval : inactive) {
+                if (interval.intersects(current)) blockers.get(interval.register).add(interval);
+            }
+
+            Register chosen = null;
+            Interval hint = current.hint;
+            if (hint != null && hint.register != null && candidates.contains(hint.register) && blockers.get(hint.register).isEmpty()) {
+                chosen = hint.register;
+            }
+            for (Register register : candidates) {
+                if (chosen == null && blockers.get(register).isEmpty()) chosen = register;
+            }
+
+            if (chosen == null) {
+                noSpills = false;
+                int farthestUse = current.nextUse(position);
+                for (Register register : candidates) {
+                    int nextUse = Integer.MAX_VALUE;
+                    for (Interval interval : blockers.get(register)) {
+                        nextUse = Math.min(nextUse, interval.nextUse(position));
+                    }
+                    if (nextUse > farthestUse) {
+                        farthestUse = nextUse;
+                        chosen = register;
+                    }
+                }
+                if (chosen == null) continue;
+                for (Interval interval : blockers.get(chosen)) {
+                    interval.register = null;
+                    active.remove(interval);
+                    inactive.remove(interval);
+                }
+            }
+
+            current.register = chosen;
+            active.add(current);
+        }
+        return noSpills;
+    }
+
+    /**
+     * Spilled temporaries whose intervals do not intersect share a stack slot.
+     */
+    private void assignSpillSlots() {
+        List<Interval> spilled = new ArrayList<>();
+        for (Interval interval : sortedIntervals()) {
+            if (interval.register == null && interval.home == null) spilled.add(interval);
+        }
+
+        for (Interval interval : spilled) {
+            BitSet taken = new BitSet();
+            for (Interval other : spilled) {
+                if (other.spillSlot >= 0 && other.intersects(interval)) taken.set(other.spillSlot);
+            }
+            Interval hint = interval.hint;
+            boolean hintSlotFree = hint != null && hint.register == null && hint.home == null && hint.spillSlot >= 0 && !taken.get(hint.spillSlot);
+            interval.spillSlot = hintSlotFree ? hint.spillSlot : taken.nextClearBit(0);
+            spillSlotCount = Math.max(spillSlotCount, interval.spillSlot + 1);
+        }
+    }
+
+    /**
+     * @param temp A temporary of the procedure.
+     * @return The register holding the temporary or null if it has been spilled.
+     */
+    Register registerOf(Temp temp) {
+        return intervals.get(temp).register;
+    }
+
+    /**
+     * @param temp A spilled temporary of the procedure.
+     * @return The variable whose frame slot holds the value of the temporary, or null if it has a spill slot.
+     */
+    LocalVariable homeOf(Temp temp) {
+        return intervals.get(temp).home;
+    }
+
+    /**
+     * @param temp A spilled temporary of the procedure without a home variable.
+     * @return The number of the stack slot holding the temporary.
+     */
+    int spillSlotOf(Temp temp) {
+        return intervals.get(temp).spillSlot;
+    }
+
+    /**
+     * @return The callee-saved registers assigned to temporaries, which have to be saved by the procedure.
+     */
+    List<Register> usedCalleeSavedRegisters() {
+        return intervals.values().stream().map(interval -> interval.register)
+                .filter(register -> register != null && register.isCalleeSaved())
+                .distinct().sorted(Comparator.comparingInt(register -> register.number))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param number 0 or 1
+     * @return A register which is reserved to hold spilled values while an instruction is executed.
+     */
+    Register scratchRegister(int number) {
+        return scratchRegisters.get(number);
+    }
+
+    /**
+     * @return The number of stack slots needed to hold the spilled temporaries.
+     */
+    int spillSlotCount() {
+        return spillSlotCount;
+    }
+}
@@ -0,0 +1,154 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * This class decides in which blocks of a procedure the stack frame has to exist (shrink-wrapping).
+ * <p>
+ * The frame is needed by blocks calling other procedures, accessing local variables or the slots of spilled
+ * temporaries, or using callee-saved registers, which are saved in the frame. Parameters lie in the frame of the caller: as long as no frame has been set up, they are addressed
+ * relative to the stack pointer, which then holds the value the frame pointer would get.
+ * <p>
+ * The frame is set up on the edges entering the framed blocks and released on the edges leaving them. Every block
+ * lying on a path between two framed blocks, e.g. in a loop around a call, is framed as well, so the frame is set up at
+ * most once per call of the procedure. A procedure which only calls out on a cold path thus saves $31 and the frame
+ * pointer only on this path, a leaf procedure without local variables and spills does not get a frame at all.
+ * <p>
+ * The edges where the frame is set up or released are split, the new blocks are placed behind the end of the procedure
+ * unless they continue a fallthrough. If no call of the procedure can return without the frame, it is set up at the
+ * beginning of the procedure as usual, since splitting the edges would only add jumps.
+ */
+class ShrinkWrapping {
+    private final ControlFlowGraph cfg;
+    private final RegisterAllocator registers;
+    private final Set<BasicBlock> framed = new HashSet<>();
+    private final Set<BasicBlock> prologueBlocks = new HashSet<>();
+    private final Set<BasicBlock> epilogueBlocks = new HashSet<>();
+
+    ShrinkWrapping(ControlFlowGraph cfg, RegisterAllocator registers) {
+        this.cfg = cfg;
+        this.registers = registers;
+    }
+
+    void run() {
+        cfg.updatePredecessors();
+        Set<BasicBlock> needed = new HashSet<>();
+        for (BasicBlock block : cfg.blocks) {
+            if (needsFrame(block)) needed.add(block);
+        }
+
+        Set<BasicBlock> reachableFromNeeded = reachable(needed, BasicBlock::successors);
+        Set<BasicBlock> reachingNeeded = reachable(needed, block -> block.predecessors);
+        framed.addAll(needed);
+        for (BasicBlock block : reachableFromNeeded) {
+            if (reachingNeeded.contains(block)) framed.add(block);
+        }
+        if (!framed.isEmpty() && !returnsWithoutFrame()) {
+            // Every call of the procedure needs the frame, it is set up at once instead of on several edges
+            framed.addAll(cfg.blocks);
+        }
+
+        for (BasicBlock block : List.copyOf(cfg.blocks)) {
+            for (BasicBlock successor : new LinkedHashSet<>(block.successors())) {
+                if (framed.contains(block) == framed.contains(successor)) continue;
+                BasicBlock split = splitEdge(block, successor);
+                if (framed.contains(successor)) {
+                    prologueBlocks.add(split);
+                    framed.add(split);
+                } else {
+                    epilogueBlocks.add(split);
+                }
+            }
+        }
+        cfg.updatePredecessors();
+    }
+
+    private boolean needsFrame(BasicBlock block) {
+        for (Instruction instruction : block.allInstructions()) {
+            if (instruction instanceof Call) return true;
+            if (instruction instanceof LoadVariable && !((LoadVariable) instruction).variable.isParameter) return true;
+            if (instruction instanceof StoreVariable && !((StoreVariable) instruction).variable.isParameter) return true;
+            if (instruction instanceof AddressOf && !((AddressOf) instruction).variable.isParameter) return true;
+
+            List<Operand> accessed = new ArrayList<>(instruction.operands());
+            if (instruction.target != null) accessed.add(instruction.target);
+            for (Operand operand : accessed) {
+                if (operand instanceof FramePointer) return true;
+                if (!(operand instanceof Temp)) continue;
+                Register register = registers.registerOf((Temp) operand);
+                if (register != null && register.isCalleeSaved()) return true;
+                if (register != null) continue;
+                LocalVariable home = registers.homeOf((Temp) operand);
+                if (home == null || !home.isParameter) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether there is a path from the entry to a return which does not need the frame.
+     */
+    private boolean returnsWithoutFrame() {
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        worklist.push(cfg.entryBlock());
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.pop();
+            if (framed.contains(block) || !visited.add(block)) continue;
+            if (block.terminator instanceof Return) return true;
+            block.successors().forEach(worklist::push);
+        }
+        return false;
+    }
+
+    private static Set<BasicBlock> reachable(Set<BasicBlock> start, Function<BasicBlock, List<BasicBlock>> edges) {
+        Set<BasicBlock> reached = new HashSet<>(start);
+        Deque<BasicBlock> worklist = new ArrayDeque<>(start);
+        while (!worklist.isEmpty()) {
+            for (BasicBlock next : edges.apply(worklist.pop())) {
+                if (reached.add(next)) worklist.push(next);
+            }
+        }
+        return reached;
+    }
+
+    private BasicBlock splitEdge(BasicBlock from, BasicBlock to) {
+        BasicBlock split = cfg.newBlock();
+        // A jump to a return is replaced by the return itself
+        boolean onlyReturns = to.instructions.isEmpty() && to.terminator instanceof Return;
+        split.terminator = onlyReturns ? new Return() : new Jump(to);
+        from.terminator.replaceSuccessor(to, split);
+        int index = cfg.blocks.indexOf(to);
+        if (index > 0 && cfg.blocks.get(index - 1) == from) {
+            cfg.blocks.add(index, split);
+        } else {
+            cfg.blocks.add(split);
+        }
+        return split;
+    }
+
+    /**
+     * @return Whether the frame exists at the end of the block.
+     */
+    boolean isFramed(BasicBlock block) {
+        return framed.contains(block);
+    }
+
+    /**
+     * @return Whether the frame has to be set up at the beginning of the block, i.e. at the beginning of the procedure
+     * for the entry block.
+     */
+    boolean setsUpFrame(BasicBlock block) {
+        return prologueBlocks.contains(block) || block == cfg.entryBlock() && framed.contains(block);
+    }
+
+    /**
+     * @return Whether the frame has to be released at the beginning of the block.
+     */
+    boolean releasesFrame(BasicBlock block) {
+        return epilogueBlocks.contains(block);
+    }
+}
@@ -0,0 +1,143 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class replaces multiplications and divisions by constants with cheaper instructions before registers are
+ * allocated, since ECO32 needs much longer for mul and div than for shifts and additions.
+ * <p>
+ * A constant factor is written in its non-adjacent form, a sum of powers of two with signs + or -. If it has at most two
+ * terms, the multiplication becomes one or two shifts and an addition or subtraction, e.g. x * 40 = (x &lt;&lt; 5) + (x &lt;&lt; 3)
+ * and x * 7 = (x &lt;&lt; 3) - x. A negative factor negates the result afterwards.
+ * <p>
+ * A division by a power of two becomes an arithmetic right shift. Since the shift rounds towards negative infinity but
+ * the division rounds towards zero, 2^k - 1 is added to negative dividends before shifting: the sign bit shifted
+ * arithmetically gives all ones for negative values, a logical shift of these bits gives the bias.
+ * Other divisors are left to the div instruction.
+ */
+class StrengthReduction {
+    /**
+     * A factor needing more terms is cheaper to multiply with mul.
+     */
+    private static final int MAX_TERMS = 2;
+
+    private final ControlFlowGraph cfg;
+
+    StrengthReduction(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+    }
+
+    void run() {
+        for (BasicBlock block : cfg.blocks) {
+            List<Instruction> instructions = new ArrayList<>();
+            for (Instruction instruction : block.instructions) {
+                if (!(instruction instanceof BinaryOperation) || !reduce((BinaryOperation) instruction, instructions)) {
+                    instructions.add(instruction);
+                }
+            }
+            block.instructions.clear();
+            block.instructions.addAll(instructions);
+        }
+    }
+
+    /**
+     * Appends the replacement of an operation to the given list.
+     *
+     * @return false if the operation has to be kept as it is.
+     */
+    private boolean reduce(BinaryOperation operation, List<Instruction> instructions) {
+        Operand left = operation.left;
+        Operand right = operation.right;
+        if (operation.operator == BinaryExpression.Operator.MUL && left instanceof Constant) {
+            left = operation.right;
+            right = operation.left;
+        }
+        if (!(left instanceof Temp) || !(right instanceof Constant)) return false;
+        int value = ((Constant) right).value;
+
+        switch (operation.operator) {
+            case MUL:
+                return multiply(operation.target, left, value, instructions);
+            case DIV:
+                return divide(operation.target, left, value, instructions);
+            default:
+                return false;
+        }
+    }
+
+    private boolean multiply(Temp target, Operand factor, int value, List<Instruction> instructions) {
+        if (value == 0) {
+            instructions.add(new Move(target, Constant.ZERO));
+            return true;
+        }
+
+        // The non-adjacent form of |value|, lowest term first: each entry is a shift amount and a sign
+        List<int[]> terms = new ArrayList<>();
+        long remaining = Math.abs((long) value);
+        for (int shift = 0; remaining != 0; shift++, remaining >>= 1) {
+            if ((remaining & 1) != 0) {
+                int sign = (remaining & 3) == 1 ? 1 : -1;
+                terms.add(new int[]{shift, sign});
+                remaining -= sign;
+            }
+        }
+        if (terms.size() > MAX_TERMS) return false;
+
+        Temp product = value < 0 ? cfg.newTemp() : target;
+        int[] highest = terms.get(terms.size() - 1);
+        if (terms.size() == 1) {
+            emitShift(product, Shift.Kind.LEFT, factor, highest[0], instructions);
+        } else {
+            int[] lowest = terms.get(0);
+            Operand high = shifted(factor, highest[0], instructions);
+            Operand low = shifted(factor, lowest[0], instructions);
+            BinaryExpression.Operator operator = lowest[1] > 0 ? BinaryExpression.Operator.ADD : BinaryExpression.Operator.SUB;
+            instructions.add(new BinaryOperation(product, operator, high, low));
+        }
+        if (value < 0) instructions.add(new BinaryOperation(target, BinaryExpression.Operator.SUB, Constant.ZERO, product));
+        return true;
+    }
+
+    private boolean divide(Temp target, Operand dividend, int value, List<Instruction> instructions) {
+        long divisor = Math.abs((long) value);
+        if (Long.bitCount(divisor) != 1) return false;
+        int shift = Long.numberOfTrailingZeros(divisor);
+
+        Temp quotient = value < 0 ? cfg.newTemp() : target;
+        if (shift == 0) {
+            instructions.add(new Move(quotient, dividend));
+        } else {
+            Operand sign = dividend;
+            if (shift > 1) {
+                sign = cfg.newTemp();
+                instructions.add(new Shift((Temp) sign, Shift.Kind.ARITHMETIC_RIGHT, dividend, 31));
+            }
+            Temp bias = cfg.newTemp();
+            instructions.add(new Shift(bias, Shift.Kind.LOGICAL_RIGHT, sign, 32 - shift));
+            Temp biased = cfg.newTemp();
+            instructions.add(new BinaryOperation(biased, BinaryExpression.Operator.ADD, dividend, bias));
+            instructions.add(new Shift(quotient, Shift.Kind.ARITHMETIC_RIGHT, biased, shift));
+        }
+        if (value < 0) instructions.add(new BinaryOperation(target, BinaryExpression.Operator.SUB, Constant.ZERO, quotient));
+        return true;
+    }
+
+    private Operand shifted(Operand source, int amount, List<Instruction> instructions) {
+        if (amount == 0) return source;
+        Temp target = cfg.newTemp();
+        emitShift(target, Shift.Kind.LEFT, source, amount, instructions);
+        return target;
+    }
+
+    private static void emitShift(Temp target, Shift.Kind kind, Operand source, int amount, List<Instruction> instructions) {
+        if (amount == 0) {
+            instructions.add(new Move(target, source));
+        } else {
+            instructions.add(new Shift(target, kind, source, amount));
+        }
+    }
+}
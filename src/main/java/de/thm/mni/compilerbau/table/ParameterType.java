@@ -9,6 +9,7 @@ public class ParameterType {
     public final Type type;
     public final boolean isReference;
     public Integer offset = null; // This value has to be set in phase 5
+    public Integer register = null; // This value is set in phase 5 if the argument is passed in a register
 
     /**
      * @param type        The semantic type of the parameter. See {@link Type} and its subclasses.
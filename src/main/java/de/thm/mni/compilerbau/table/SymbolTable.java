@@ -2,6 +2,8 @@ package de.thm.mni.compilerbau.table;
 
 import de.thm.mni.compilerbau.utils.SplError;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
@@ -108,6 +110,13 @@ public class SymbolTable {
         return Optional.ofNullable(lookup(name));
     }
 
+    /**
+     * @return The symbols defined in this scope, without the symbols of the outer scopes.
+     */
+    public Collection<Entry> localEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
     /**
      * Converts the table to a human-readable format.
      *
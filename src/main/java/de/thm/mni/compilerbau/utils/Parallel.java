@@ -0,0 +1,65 @@
+package de.thm.mni.compilerbau.utils;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs work which can be done for each procedure independently of the others on the common fork-join pool.
+ * <p>
+ * The results are returned in the order of the procedures, so the output of the compiler does not depend on which
+ * procedure is finished first. If the work fails for several procedures, the exception of the first one is thrown, just
+ * like the procedures had been processed one after the other.
+ */
+public final class Parallel {
+    private Parallel() {
+    }
+
+    /**
+     * A procedure whose work has thrown an exception.
+     */
+    private static class Failure {
+        final RuntimeException exception;
+
+        Failure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Applies a function to each element of a list in parallel.
+     *
+     * @param elements The elements, e.g. the procedures of the program.
+     * @param function The function to apply, which must not modify data shared with the other elements.
+     * @return The results of the function, in the order of the elements.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, R> List<R> map(List<T> elements, Function<T, R> function) {
+        List<Object> results = elements.parallelStream().map(element -> {
+            try {
+                return (Object) function.apply(element);
+            } catch (RuntimeException e) {
+                return new Failure(e);
+            }
+        }).collect(Collectors.toList());
+
+        for (Object result : results) {
+            if (result instanceof Failure) throw ((Failure) result).exception;
+        }
+        return (List<R>) results;
+    }
+
+    /**
+     * Executes an action for each element of a list in parallel.
+     *
+     * @param elements The elements, e.g. the procedures of the program.
+     * @param action   The action, which must not modify data shared with the other elements.
+     */
+    public static <T> void forEach(List<T> elements, Consumer<T> action) {
+        map(elements, element -> {
+            action.accept(element);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package de.thm.mni.compilerbau.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A phase of the compilation of an SPL program, recorded by the Java Flight Recorder.
+ * <p>
+ * The event is only committed if a recording has enabled it, otherwise beginning and committing it costs next to
+ * nothing. See {@link ProcedureEvent} for the work done for the single procedures during a phase.
+ */
+@Name("de.thm.mni.compilerbau.Phase")
+@Label("Compiler Phase")
+@Category({"SPL Compiler"})
+@Description("A phase of the compilation of an SPL program")
+public class PhaseEvent extends Event {
+    @Label("Phase")
+    public String phase;
+
+    @Label("Source File")
+    public String file;
+
+    public PhaseEvent(String phase, String file) {
+        this.phase = phase;
+        this.file = file;
+    }
+}
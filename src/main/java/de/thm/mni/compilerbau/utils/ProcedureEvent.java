@@ -0,0 +1,114 @@
+package de.thm.mni.compilerbau.utils;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The work done for a single procedure during a phase, recorded by the Java Flight Recorder.
+ * <p>
+ * The procedures are processed on the threads of the common fork-join pool (see {@link Parallel}), so the events show
+ * which procedures the compiler spends its time on and how well the work is spread over the threads. The statements
+ * are only counted if the event is committed, so the events cost next to nothing while no recording is running.
+ */
+@Name("de.thm.mni.compilerbau.Procedure")
+@Label("Compiler Procedure")
+@Category({"SPL Compiler"})
+@Description("The work done for a single procedure during a phase of the compiler")
+public class ProcedureEvent extends Event {
+    @Label("Phase")
+    public String phase;
+
+    @Label("Procedure")
+    public String procedure;
+
+    @Label("Statements")
+    @Description("The statements of the procedure body, or its IR instructions in the code generator")
+    public int statements;
+
+    @Label("Instructions Emitted")
+    @Description("The assembler instructions emitted for the procedure, only known in the code generator")
+    public int instructions;
+
+    public ProcedureEvent(String phase, String procedure) {
+        this.phase = phase;
+        this.procedure = procedure;
+    }
+
+    /**
+     * Does the work of a phase for a global declaration, recording it as an event if the declaration is a procedure.
+     *
+     * @param phase       The name of the phase.
+     * @param declaration The declaration to process.
+     * @param work        The work done for the declaration.
+     */
+    public static void record(String phase, GlobalDeclaration declaration, Runnable work) {
+        if (!(declaration instanceof ProcedureDeclaration)) {
+            work.run();
+            return;
+        }
+        ProcedureEvent event = new ProcedureEvent(phase, declaration.name.toString());
+        event.begin();
+        work.run();
+        event.end();
+        if (event.shouldCommit()) {
+            event.statements = countStatements((ProcedureDeclaration) declaration);
+            event.commit();
+        }
+    }
+
+    /**
+     * @return The number of statements in the body of a procedure, including the nested ones.
+     */
+    public static int countStatements(ProcedureDeclaration procedureDeclaration) {
+        StatementCounter counter = new StatementCounter();
+        for (Statement statement : procedureDeclaration.body) {
+            statement.accept(counter);
+        }
+        return counter.count;
+    }
+
+    private static class StatementCounter extends DoNothingVisitor {
+        int count = 0;
+
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            count++;
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            count++;
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            count++;
+            for (Statement statement : compoundStatement.statements) {
+                statement.accept(this);
+            }
+        }
+
+        @Override
+        public void visit(EmptyStatement emptyStatement) {
+            count++;
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            count++;
+            ifStatement.thenPart.accept(this);
+            if (ifStatement.elsePart != null) ifStatement.elsePart.accept(this);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            count++;
+            whileStatement.body.accept(this);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package de.thm.mni.compilerbau;
+
+import de.thm.mni.compilerbau.absyn.GlobalDeclaration;
+import de.thm.mni.compilerbau.absyn.ProcedureDeclaration;
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_fold.ConstantFolder;
+import de.thm.mni.compilerbau.phases._05_varalloc.StackLayout;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.table.ParameterType;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.utils.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Compiles the programs of tests/runtime_tests from many threads at once, like a build service running the compiler
+ * in one JVM, and checks that every compilation produces exactly the same exit code, messages and code as compiling
+ * the programs one after the other. Any state shared between compilations, like the static counters VarAllocator
+ * used to have, makes the results differ. Without inlining, the stack layouts computed by VarAllocator are used as
+ * they are, since the inliner recomputes the outgoing area of every procedure it changes.
+ */
+class ConcurrentCompilationTest {
+    private static final Path CORPUS = Path.of("tests", "runtime_tests");
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 4;
+    private static final int ALLOCATION_ROUNDS = 100;
+
+    @TempDir
+    Path outputDirectory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "--inline-threshold 0", "--register-args --ershov --inline-threshold 0"})
+    void concurrentCompilationsMatchSerialCompilation(String flags) throws Exception {
+        List<Path> corpus = corpus();
+        assertFalse(corpus.isEmpty(), "No programs found in " + CORPUS.toAbsolutePath());
+        Path calling = outputDirectory.resolve("calling.spl");
+        Files.writeString(calling, callingProgram(300), StandardCharsets.UTF_8);
+        corpus.add(calling);
+
+        Map<Path, String> serial = new HashMap<>();
+        Main.Frontend frontend = new Main.Frontend();
+        for (Path source : corpus) {
+            serial.put(source, compile(flags, source, outputDirectory.resolve("serial-" + source.getFileName()), frontend));
+        }
+
+        // Every round compiles the whole corpus in another order, so different programs overlap
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ThreadLocal<Main.Frontend> frontends = ThreadLocal.withInitial(Main.Frontend::new);
+        Random random = new Random(17);
+        List<Path> sources = new ArrayList<>();
+        List<Future<String>> results = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Path> order = new ArrayList<>(corpus);
+            Collections.shuffle(order, random);
+            for (Path source : order) {
+                Path output = outputDirectory.resolve(round + "-" + source.getFileName());
+                sources.add(source);
+                results.add(executor.submit(() -> compile(flags, source, output, frontends.get())));
+            }
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(serial.get(sources.get(i)), results.get(i).get(), "Concurrent compilation of " + sources.get(i));
+        }
+    }
+
+    /**
+     * A whole compilation mostly consists of other phases, so the variable allocations of concurrent compilations
+     * rarely overlap. Here every thread prepares its own program once, then the threads repeatedly start allocating
+     * its variables at the same moment. The allocation assigns every field of the stack layouts, so it can be repeated.
+     */
+    @Test
+    void concurrentVariableAllocationsMatchSerialAllocation() throws Exception {
+        String source = callingProgram(300);
+        Pair<Program, SymbolTable> program = prepare(source);
+        String serial = allocateVariables(program.first, program.second);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            results.add(executor.submit(() -> {
+                Pair<Program, SymbolTable> own = prepare(source);
+                List<String> layouts = new ArrayList<>();
+                for (int round = 0; round < ALLOCATION_ROUNDS; round++) {
+                    start.await();
+                    layouts.add(allocateVariables(own.first, own.second));
+                }
+                return layouts;
+            }));
+        }
+        executor.shutdown();
+
+        for (Future<List<String>> result : results) {
+            for (String layouts : result.get()) {
+                assertEquals(serial, layouts, "Concurrent variable allocation");
+            }
+        }
+    }
+
+    /**
+     * Runs the phases in front of the variable allocation.
+     */
+    private static Pair<Program, SymbolTable> prepare(String source) throws Exception {
+        Main.Frontend frontend = new Main.Frontend();
+        CommandLineOptions options = new CommandLineOptions();
+        frontend.scanner.yyreset(new StringReader(source));
+        frontend.scanner.options = options;
+        frontend.parser.options = options;
+        Program program = (Program) frontend.parser.parse().value;
+        SymbolTable table = new TableBuilder(false).buildSymbolTable(program);
+        new ProcedureBodyChecker().checkProcedures(program, table);
+        new ConstantFolder(false).foldProgram(program);
+        return new Pair<>(program, table);
+    }
+
+    /**
+     * @return The stack layouts of all procedures.
+     */
+    private static String allocateVariables(Program program, SymbolTable table) {
+        new VarAllocator(false, false, false).allocVars(program, table);
+
+        StringBuilder layouts = new StringBuilder();
+        for (GlobalDeclaration declaration : program.declarations) {
+            if (!(declaration instanceof ProcedureDeclaration)) continue;
+            ProcedureEntry entry = (ProcedureEntry) table.lookup(declaration.name);
+            StackLayout layout = entry.stackLayout;
+            layouts.append(String.format("%s: arguments %d, locals %d, outgoing %d, parameters",
+                    declaration.name, layout.argumentAreaSize, layout.localVarAreaSize, layout.outgoingAreaSize));
+            for (ParameterType parameter : entry.parameterTypes) {
+                layouts.append(' ').append(parameter.offset);
+            }
+            layouts.append('\n');
+        }
+        return layouts.toString();
+    }
+
+    /**
+     * The runtime tests are small, so the per-procedure state of the phases is only live for a moment. In this program
+     * each procedure only calls procedures with as many parameters as itself, so the outgoing areas of neighbouring
+     * procedures differ, and every third procedure is a leaf procedure. The calls are followed by many assignments, so
+     * state leaking from one procedure to another while it is allocated changes the stack layouts.
+     */
+    static String callingProgram(int procedures) {
+        StringBuilder source = new StringBuilder();
+        for (int k = 0; k < procedures; k++) {
+            int arity = k % 4;
+            source.append("proc p").append(k).append("(");
+            for (int i = 0; i < arity; i++) {
+                source.append(i > 0 ? ", " : "").append("a").append(i).append(": int");
+            }
+            source.append(") {\n  var x: int;\n  x := ").append(k).append(";\n");
+            if (k % 3 != 0) {
+                for (int callee = k - 4; callee >= 0 && callee > k - 24; callee -= 4) {
+                    source.append("  p").append(callee).append("(");
+                    for (int i = 0; i < arity; i++) {
+                        source.append(i > 0 ? ", " : "").append("x + ").append(i);
+                    }
+                    source.append(");\n");
+                }
+            }
+            for (int i = 0; i < 60; i++) {
+                source.append("  x := x * ").append(i % 7 + 2).append(" - ").append(i).append(";\n");
+            }
+            source.append("  printi(x);\n}\n\n");
+        }
+        source.append("proc main() {\n");
+        for (int k = procedures - 4; k < procedures; k++) {
+            source.append("  p").append(k).append("(");
+            for (int i = 0; i < k % 4; i++) {
+                source.append(i > 0 ? ", " : "").append(i);
+            }
+            source.append(");\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private static List<Path> corpus() throws IOException {
+        try (Stream<Path> files = Files.list(CORPUS)) {
+            return files.filter(file -> file.toString().endsWith(".spl")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return The exit code, the error messages and the generated code of the compilation.
+     */
+    static String compile(String flags, Path source, Path output, Main.Frontend frontend) throws IOException {
+        List<String> args = new ArrayList<>();
+        for (String flag : flags.split(" ")) {
+            if (!flag.isEmpty()) args.add(flag);
+        }
+        args.add(source.toString());
+        args.add(output.toString());
+        CommandLineOptions options = CommandLineOptions.parse(args.toArray(new String[0]));
+
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int exitCode = Main.compile(options, frontend, new PrintStream(errors, true, StandardCharsets.UTF_8));
+        String assembly = Files.exists(output) ? Files.readString(output, StandardCharsets.UTF_8) : "";
+        return "exit code " + exitCode + "\n" + errors.toString(StandardCharsets.UTF_8) + "\n" + assembly;
+    }
+}
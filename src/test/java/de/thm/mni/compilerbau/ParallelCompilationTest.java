@@ -0,0 +1,72 @@
+package de.thm.mni.compilerbau;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compiles the programs of tests/runtime_tests with the per-procedure work of the phases (semantic checks, variable
+ * allocation, IR generation, optimization, register allocation and code generation) spread over many threads, and
+ * checks that the results are exactly the same as when every procedure is processed after the other.
+ * <p>
+ * The phases run their per-procedure work on the fork-join pool the compilation is started in, so a pool with a single
+ * thread gives the serial reference, independently of the number of processors of the machine running the tests.
+ */
+class ParallelCompilationTest {
+    private static final Path CORPUS = Path.of("tests", "runtime_tests");
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 3;
+
+    @TempDir
+    Path outputDirectory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "--inline-threshold 0", "--register-args --ershov", "--no-bounds-checks"})
+    void parallelCompilationMatchesSerialCompilation(String flags) throws Exception {
+        List<Path> corpus;
+        try (Stream<Path> files = Files.list(CORPUS)) {
+            corpus = files.filter(file -> file.toString().endsWith(".spl")).sorted().collect(Collectors.toList());
+        }
+        Path calling = outputDirectory.resolve("calling.spl");
+        Files.writeString(calling, ConcurrentCompilationTest.callingProgram(300), StandardCharsets.UTF_8);
+        corpus.add(calling);
+
+        ForkJoinPool serial = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(THREADS);
+        try {
+            for (Path source : corpus) {
+                String expected = compileIn(serial, flags, source, "serial");
+                for (int round = 0; round < ROUNDS; round++) {
+                    assertEquals(expected, compileIn(parallel, flags, source, "parallel-" + round),
+                            "Parallel compilation of " + source);
+                }
+            }
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    private String compileIn(ForkJoinPool pool, String flags, Path source, String prefix) throws Exception {
+        Path output = outputDirectory.resolve(prefix + "-" + source.getFileName());
+        return pool.submit(() -> {
+            try {
+                return ConcurrentCompilationTest.compile(flags, source, output, new Main.Frontend());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).get();
+    }
+}
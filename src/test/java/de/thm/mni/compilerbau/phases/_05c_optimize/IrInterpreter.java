@@ -0,0 +1,263 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+
+import java.util.*;
+
+/**
+ * Executes the IR of a program, so that the effect of the optimizations on the behavior of a program can be checked
+ * without an ECO32 simulator.
+ * <p>
+ * Every variable of every activation gets memory of its own which is never reused, and memory which has not been
+ * written reads as 0. Array accesses out of bounds and divisions by zero stop the program with a {@link Trap}, like the
+ * ECO32 runtime does. Only the output procedures and exit of the library are supported.
+ */
+class IrInterpreter {
+    /**
+     * The program has been stopped by a runtime error.
+     */
+    static class Trap extends RuntimeException {
+        /**
+         * What the program has printed before it has been stopped.
+         */
+        String output;
+
+        Trap(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The program has called exit.
+     */
+    private static class Exit extends RuntimeException {
+    }
+
+    private static final int MAX_STEPS = 50_000_000;
+
+    private final Map<ProcedureEntry, ControlFlowGraph> procedures = new HashMap<>();
+    private final Map<Integer, Integer> memory = new HashMap<>();
+    private final StringBuilder output = new StringBuilder();
+    private int nextAddress = 4;
+    private int steps = 0;
+
+    private IrInterpreter(List<ControlFlowGraph> cfgs) {
+        for (ControlFlowGraph cfg : cfgs) {
+            procedures.put(cfg.procedure, cfg);
+        }
+    }
+
+    /**
+     * Runs the procedure main of a program.
+     *
+     * @return The output of the program.
+     * @throws Trap If the program is stopped by a runtime error.
+     */
+    static String run(List<ControlFlowGraph> cfgs) {
+        IrInterpreter interpreter = new IrInterpreter(cfgs);
+        ControlFlowGraph main = cfgs.stream().filter(cfg -> cfg.name.toString().equals("main")).findFirst().orElseThrow();
+        try {
+            interpreter.new Activation(main, List.of()).execute();
+        } catch (Exit exit) {
+            // The output up to the call of exit is the output of the program
+        } catch (Trap trap) {
+            trap.output = interpreter.output.toString();
+            throw trap;
+        }
+        return interpreter.output.toString();
+    }
+
+    private int read(int address) {
+        return memory.getOrDefault(address, 0);
+    }
+
+    private void write(int address, int value) {
+        memory.put(address, value);
+    }
+
+    private void call(Call call, List<Integer> arguments) {
+        ControlFlowGraph callee = procedures.get(call.procedure);
+        if (callee != null) {
+            new Activation(callee, arguments).execute();
+            return;
+        }
+        switch (call.procedureName.toString()) {
+            case "printi":
+                output.append(arguments.get(0));
+                break;
+            case "printc":
+                output.append((char) (int) arguments.get(0));
+                break;
+            case "exit":
+                throw new Exit();
+            default:
+                throw new UnsupportedOperationException("The library procedure " + call.procedureName + " is not supported");
+        }
+    }
+
+    /**
+     * The execution of a single call of a procedure.
+     */
+    private class Activation implements InstructionVisitor {
+        private final ControlFlowGraph cfg;
+        private final Map<LocalVariable, Integer> addresses = new HashMap<>();
+        private final Map<Integer, Integer> temps = new HashMap<>();
+        private BasicBlock previous;
+        private BasicBlock next;
+        private boolean returned = false;
+
+        Activation(ControlFlowGraph cfg, List<Integer> arguments) {
+            this.cfg = cfg;
+            for (int i = 0; i < cfg.parameters.size(); i++) {
+                write(address(cfg.parameters.get(i)), arguments.get(i));
+            }
+        }
+
+        void execute() {
+            BasicBlock block = cfg.entryBlock();
+            while (!returned) {
+                // The phis of a block read the values of the edge taken, all of them at once
+                Map<Temp, Integer> phis = new HashMap<>();
+                for (Instruction instruction : block.instructions) {
+                    if (instruction instanceof Phi) phis.put(instruction.target, value(((Phi) instruction).incoming.get(previous)));
+                }
+                phis.forEach((temp, value) -> temps.put(temp.number, value));
+
+                for (Instruction instruction : block.instructions) {
+                    if (++steps > MAX_STEPS) throw new IllegalStateException("The program does not terminate");
+                    if (!(instruction instanceof Phi)) instruction.accept(this);
+                }
+                block.terminator.accept(this);
+                previous = block;
+                block = next;
+            }
+        }
+
+        private int address(LocalVariable variable) {
+            return addresses.computeIfAbsent(variable, v -> {
+                int address = nextAddress;
+                nextAddress += v.entry.isReference ? 4 : v.entry.type.byteSize;
+                return address;
+            });
+        }
+
+        private int value(Operand operand) {
+            if (operand instanceof Constant) return ((Constant) operand).value;
+            Integer value = temps.get(((Temp) operand).number);
+            if (value == null) throw new IllegalStateException(operand + " is read before it is written in " + cfg.name);
+            return value;
+        }
+
+        private void define(Temp target, int value) {
+            temps.put(target.number, value);
+        }
+
+        //Move
+        @Override
+        public void visit(Move move) {
+            define(move.target, value(move.source));
+        }
+
+        //BinaryOperation
+        @Override
+        public void visit(BinaryOperation binaryOperation) {
+            int left = value(binaryOperation.left);
+            int right = value(binaryOperation.right);
+            if (binaryOperation.operator == BinaryExpression.Operator.DIV && right == 0) {
+                throw new Trap("Division by zero");
+            }
+            define(binaryOperation.target, binaryOperation.operator.evaluate(left, right));
+        }
+
+        //Shift
+        @Override
+        public void visit(Shift shift) {
+            int source = value(shift.source);
+            switch (shift.kind) {
+                case LEFT:
+                    define(shift.target, source << shift.amount);
+                    break;
+                case LOGICAL_RIGHT:
+                    define(shift.target, source >>> shift.amount);
+                    break;
+                case ARITHMETIC_RIGHT:
+                    define(shift.target, source >> shift.amount);
+                    break;
+            }
+        }
+
+        //LoadVariable
+        @Override
+        public void visit(LoadVariable loadVariable) {
+            define(loadVariable.target, read(address(loadVariable.variable)));
+        }
+
+        //StoreVariable
+        @Override
+        public void visit(StoreVariable storeVariable) {
+            write(address(storeVariable.variable), value(storeVariable.value));
+        }
+
+        //AddressOf
+        @Override
+        public void visit(AddressOf addressOf) {
+            define(addressOf.target, address(addressOf.variable));
+        }
+
+        //Load
+        @Override
+        public void visit(Load load) {
+            define(load.target, read(value(load.address) + load.offset));
+        }
+
+        //Store
+        @Override
+        public void visit(Store store) {
+            write(value(store.address) + store.offset, value(store.value));
+        }
+
+        //BoundsCheck
+        @Override
+        public void visit(BoundsCheck boundsCheck) {
+            if (Integer.compareUnsigned(value(boundsCheck.index), value(boundsCheck.size)) >= 0) {
+                throw new Trap("Index out of bounds");
+            }
+        }
+
+        //Call
+        @Override
+        public void visit(Call call) {
+            List<Integer> arguments = new ArrayList<>();
+            for (Operand argument : call.arguments) {
+                arguments.add(value(argument));
+            }
+            IrInterpreter.this.call(call, arguments);
+        }
+
+        //Jump
+        @Override
+        public void visit(Jump jump) {
+            next = jump.destination;
+        }
+
+        //Branch
+        @Override
+        public void visit(Branch branch) {
+            next = branch.comparison.holds(value(branch.left), value(branch.right)) ? branch.ifTrue : branch.ifFalse;
+        }
+
+        //Return
+        @Override
+        public void visit(Return ret) {
+            returned = true;
+        }
+
+        //Phi
+        @Override
+        public void visit(Phi phi) {
+            throw new IllegalStateException("Phis are evaluated when their block is entered");
+        }
+    }
+}
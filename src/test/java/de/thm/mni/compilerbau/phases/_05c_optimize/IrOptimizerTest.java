@@ -0,0 +1,127 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.CommandLineOptions;
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.ir.ControlFlowGraph;
+import de.thm.mni.compilerbau.ir.LocalVariable;
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_fold.ConstantFolder;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._05b_irgen.IrGenerator;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.utils.SplError;
+import java_cup.runtime.DefaultSymbolFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs programs before and after the IR optimizations with the {@link IrInterpreter} and checks that the optimizations
+ * do not change what the programs print.
+ */
+class IrOptimizerTest {
+    private static final Path CORPUS = Path.of("tests", "runtime_tests");
+    private static final int DEFAULT_INLINE_THRESHOLD = new CommandLineOptions().inlineThreshold;
+
+    /**
+     * Runs the phases up to the IR generation.
+     */
+    @SuppressWarnings("deprecation")
+    static List<ControlFlowGraph> generateIr(String source) throws Exception {
+        CommandLineOptions options = new CommandLineOptions();
+        Scanner scanner = new Scanner(new StringReader(source));
+        scanner.options = options;
+        Parser parser = new Parser(scanner, new DefaultSymbolFactory());
+        parser.options = options;
+        Program program = (Program) parser.parse().value;
+        SymbolTable table = new TableBuilder(false).buildSymbolTable(program);
+        new ProcedureBodyChecker().checkProcedures(program, table);
+        new ConstantFolder(false).foldProgram(program);
+        new VarAllocator(false, false, false).allocVars(program, table);
+        return new IrGenerator(false).generateIr(program, table);
+    }
+
+    static List<ControlFlowGraph> optimize(String source) throws Exception {
+        List<ControlFlowGraph> procedures = generateIr(source);
+        new IrOptimizer(false, true, DEFAULT_INLINE_THRESHOLD).optimize(procedures);
+        return procedures;
+    }
+
+    static Stream<Path> corpus() throws IOException {
+        try (Stream<Path> files = Files.list(CORPUS)) {
+            return files.filter(file -> file.toString().endsWith(".spl")).sorted().collect(Collectors.toList()).stream();
+        }
+    }
+
+    /**
+     * @return The output of the program, followed by the runtime error which has stopped it.
+     */
+    static String outcome(List<ControlFlowGraph> procedures) {
+        try {
+            return IrInterpreter.run(procedures);
+        } catch (IrInterpreter.Trap trap) {
+            return trap.output + "\n" + trap.getMessage();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void optimizationsKeepTheOutput(Path program) throws Exception {
+        String source = Files.readString(program, StandardCharsets.UTF_8);
+        String expected;
+        try {
+            expected = outcome(generateIr(source));
+        } catch (SplError | UnsupportedOperationException e) {
+            // Programs testing the error messages or reading input
+            assumeTrue(false, e.getMessage());
+            return;
+        }
+        assertEquals(expected, outcome(optimize(source)));
+    }
+
+    /**
+     * The multiplication by 0 must not drop the division, since the division by zero stops the program.
+     */
+    @Test
+    void multiplicationByZeroKeepsADivisionWhichMayFail() throws Exception {
+        String source = "proc main() { var a: int; a := 0; printi(7 / a * 0); }";
+        assertEquals("\nDivision by zero", outcome(generateIr(source)));
+        assertEquals("\nDivision by zero", outcome(optimize(source)));
+    }
+
+    @Test
+    void unusedDivisionWhichMayFailIsKept() throws Exception {
+        String source = "proc main() { var a: int; var b: int; a := 0; b := 7 / a; printi(1); }";
+        assertEquals("\nDivision by zero", outcome(optimize(source)));
+    }
+
+    @Test
+    void inlinedCallsOfTheSameProcedureKeepTheirOwnVariables() throws Exception {
+        String source = Files.readString(CORPUS.resolve("inlinedLocals.spl"), StandardCharsets.UTF_8);
+        List<ControlFlowGraph> procedures = optimize(source);
+        assertEquals("11221122", IrInterpreter.run(procedures));
+
+        ControlFlowGraph main = procedures.stream().filter(cfg -> cfg.name.toString().equals("main")).findFirst().orElseThrow();
+        Set<String> names = new HashSet<>();
+        for (LocalVariable variable : main.variables) {
+            assertTrue(names.add(variable.name.toString()), "Two variables named " + variable.name);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.thm.mni.compilerbau.phases._05c_optimize;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.ir.*;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopInvariantCodeMotionTest {
+    private static LocalVariable variable(ControlFlowGraph cfg, String name) {
+        LocalVariable variable = new LocalVariable(new Identifier(name), new VariableEntry(PrimitiveType.intType, false), false);
+        cfg.variables.add(variable);
+        return variable;
+    }
+
+    /**
+     * Builds a loop storing through the addresses of two variables and moves the addresses in front of the loop.
+     *
+     * @return The stores left in the loop.
+     */
+    private static List<Store> hoistAddresses(LocalVariable first, LocalVariable second, ControlFlowGraph cfg) {
+        BasicBlock entry = cfg.newBlock();
+        BasicBlock header = cfg.newBlock();
+        BasicBlock body = cfg.newBlock();
+        BasicBlock exit = cfg.newBlock();
+        cfg.blocks.addAll(List.of(entry, header, body, exit));
+
+        Temp condition = cfg.newTemp();
+        Temp firstAddress = cfg.newTemp();
+        Temp secondAddress = cfg.newTemp();
+        entry.instructions.add(new Move(condition, Constant.ZERO));
+        entry.terminator = new Jump(header);
+        header.terminator = new Branch(BinaryExpression.Operator.LST, condition, new Constant(2), body, exit);
+        body.instructions.add(new AddressOf(firstAddress, first));
+        body.instructions.add(new AddressOf(secondAddress, second));
+        body.instructions.add(new Store(firstAddress, 0, new Constant(1)));
+        body.instructions.add(new Store(secondAddress, 0, new Constant(2)));
+        body.terminator = new Jump(header);
+        exit.terminator = new Return();
+        cfg.updatePredecessors();
+
+        new LoopInvariantCodeMotion(cfg).run();
+
+        assertEquals(List.of(Store.class, Store.class), body.instructions.stream().map(Object::getClass).collect(Collectors.toList()));
+        return List.of((Store) body.instructions.get(0), (Store) body.instructions.get(1));
+    }
+
+    @Test
+    void addressesOfTheSameVariableAreMerged() {
+        ControlFlowGraph cfg = new ControlFlowGraph(new Identifier("p"), null);
+        LocalVariable variable = variable(cfg, "a");
+        List<Store> stores = hoistAddresses(variable, variable, cfg);
+        assertSame(stores.get(0).address, stores.get(1).address);
+    }
+
+    /**
+     * Two variables with the same name are different variables, so their addresses must not be merged when both are
+     * moved in front of the loop.
+     */
+    @Test
+    void addressesOfVariablesWithTheSameNameAreKeptApart() {
+        ControlFlowGraph cfg = new ControlFlowGraph(new Identifier("p"), null);
+        List<Store> stores = hoistAddresses(variable(cfg, "a"), variable(cfg, "a"), cfg);
+        assertNotSame(stores.get(0).address, stores.get(1).address);
+    }
+}
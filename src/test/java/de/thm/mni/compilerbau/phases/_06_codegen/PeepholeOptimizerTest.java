@@ -0,0 +1,159 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the rules which rewrite instructions depending on whether a register is still needed, since a wrong answer
+ * silently changes the meaning of the program instead of only missing an optimization.
+ */
+class PeepholeOptimizerTest {
+    private static Register r(int number) {
+        return new Register(number);
+    }
+
+    private static AssemblyLine i(String opcode, Object... operands) {
+        return AssemblyLine.instruction(opcode, List.of(operands), null);
+    }
+
+    private static AssemblyLine label(String name) {
+        return AssemblyLine.label(name);
+    }
+
+    /**
+     * Applies a single rule of {@link PeepholeRules#all()} to the code.
+     *
+     * @return The optimized code.
+     */
+    private static String optimize(String rule, AssemblyLine... lines) {
+        List<PeepholeRule> rules = PeepholeRules.all().stream()
+                .filter(candidate -> candidate.name().equals(rule))
+                .collect(Collectors.toList());
+        assertEquals(1, rules.size(), "Rules named " + rule);
+        List<AssemblyLine> code = new ArrayList<>(List.of(lines));
+        new PeepholeOptimizer(rules).optimize(code);
+        return code(code.toArray(new AssemblyLine[0]));
+    }
+
+    private static String code(AssemblyLine... lines) {
+        return Arrays.stream(lines).map(AssemblyLine::toString).collect(Collectors.joining("\n"));
+    }
+
+    @Test
+    void registerOverwrittenByTheInstructionIsDead() {
+        List<AssemblyLine> code = List.of(i("ldw", r(8), r(8), 0), i("stw", r(8), r(29), 0));
+        assertTrue(PeepholeOptimizer.isDeadAfter(code, 0, r(8)));
+    }
+
+    @Test
+    void registerOverwrittenBeforeReadIsDead() {
+        List<AssemblyLine> code = List.of(i("add", r(12), r(8), 1), i("add", r(10), r(11), 2), i("add", r(8), r(0), 3));
+        assertTrue(PeepholeOptimizer.isDeadAfter(code, 0, r(8)));
+    }
+
+    @Test
+    void registerReadLaterIsNotDead() {
+        List<AssemblyLine> code = List.of(i("add", r(12), r(8), 1), i("add", r(10), r(11), 2), i("stw", r(8), r(29), 0));
+        assertFalse(PeepholeOptimizer.isDeadAfter(code, 0, r(8)));
+    }
+
+    @Test
+    void registerReadByTheInstructionOverwritingItIsNotDead() {
+        List<AssemblyLine> code = List.of(i("add", r(12), r(8), 1), i("add", r(8), r(8), 1));
+        assertFalse(PeepholeOptimizer.isDeadAfter(code, 0, r(8)));
+    }
+
+    @Test
+    void registerIsNotDeadAtTheEndOfTheCode() {
+        List<AssemblyLine> code = List.of(i("add", r(12), r(8), 1), i("add", r(10), r(11), 2));
+        assertFalse(PeepholeOptimizer.isDeadAfter(code, 0, r(8)));
+    }
+
+    @Test
+    void registerIsNotDeadBehindLabelsAndJumps() {
+        List<AssemblyLine> behindLabel = List.of(i("add", r(12), r(8), 1), label("L1"), i("add", r(8), r(0), 3));
+        assertFalse(PeepholeOptimizer.isDeadAfter(behindLabel, 0, r(8)));
+
+        List<AssemblyLine> behindJump = List.of(i("add", r(12), r(8), 1), i("j", "L1"), i("add", r(8), r(0), 3));
+        assertFalse(PeepholeOptimizer.isDeadAfter(behindJump, 0, r(8)));
+
+        List<AssemblyLine> behindBranch = List.of(i("add", r(12), r(8), 1), i("beq", r(10), r(0), "L1"), i("add", r(8), r(0), 3));
+        assertFalse(PeepholeOptimizer.isDeadAfter(behindBranch, 0, r(8)));
+    }
+
+    @Test
+    void callsOnlyReadTheArgumentRegisters() {
+        List<AssemblyLine> temporary = List.of(i("add", r(12), r(8), 1), i("jal", "f"), i("add", r(8), r(2), 0));
+        assertTrue(PeepholeOptimizer.isDeadAfter(temporary, 0, r(8)));
+
+        List<AssemblyLine> argument = List.of(i("add", r(12), r(4), 1), i("jal", "f"), i("add", r(4), r(2), 0));
+        assertFalse(PeepholeOptimizer.isDeadAfter(argument, 0, r(4)));
+    }
+
+    @Test
+    void copiedResultIsComputedIntoTheCopy() {
+        assertEquals(code(i("mul", r(11), r(9), r(10)), i("add", r(8), r(0), 1)),
+                optimize("copied result", i("mul", r(8), r(9), r(10)), i("add", r(11), r(8), 0), i("add", r(8), r(0), 1)));
+    }
+
+    @Test
+    void copiedResultStillNeededIsKept() {
+        AssemblyLine[] lines = {i("mul", r(8), r(9), r(10)), i("add", r(11), r(8), 0), i("add", r(12), r(8), 1)};
+        assertEquals(code(lines), optimize("copied result", lines));
+    }
+
+    @Test
+    void copiedResultNeededBehindJumpIsKept() {
+        AssemblyLine[] lines = {i("ldw", r(8), r(29), 0), i("add", r(11), r(8), 0), i("j", "L1"), label("L1"), i("add", r(12), r(8), 1)};
+        assertEquals(code(lines), optimize("copied result", lines));
+    }
+
+    @Test
+    void copiedReturnAddressIsKept() {
+        AssemblyLine[] lines = {i("jal", "f"), i("add", r(11), r(31), 0), i("add", r(31), r(0), 0)};
+        assertEquals(code(lines), optimize("copied result", lines));
+    }
+
+    @Test
+    void addressIsFoldedIntoLoadsAndStores() {
+        assertEquals(code(i("ldw", r(9), r(29), 12), i("add", r(8), r(0), 0)),
+                optimize("address folding", i("add", r(8), r(29), 4), i("ldw", r(9), r(8), 8), i("add", r(8), r(0), 0)));
+        assertEquals(code(i("stw", r(9), r(29), -4), i("add", r(8), r(0), 0)),
+                optimize("address folding", i("add", r(8), r(29), -8), i("stw", r(9), r(8), 4), i("add", r(8), r(0), 0)));
+    }
+
+    @Test
+    void addressIsFoldedIntoLoadOverwritingIt() {
+        assertEquals(code(i("ldw", r(8), r(29), 12)),
+                optimize("address folding", i("add", r(8), r(29), 4), i("ldw", r(8), r(8), 8)));
+    }
+
+    @Test
+    void addressStoredOrStillNeededIsKept() {
+        AssemblyLine[] stored = {i("add", r(8), r(29), 4), i("stw", r(8), r(8), 0), i("add", r(8), r(0), 0)};
+        assertEquals(code(stored), optimize("address folding", stored));
+
+        AssemblyLine[] needed = {i("add", r(8), r(29), 4), i("ldw", r(9), r(8), 0), i("ldw", r(10), r(8), 4)};
+        assertEquals(code(needed), optimize("address folding", needed));
+    }
+
+    @Test
+    void addressOutOfRangeOfTheDisplacementIsKept() {
+        AssemblyLine[] lines = {i("add", r(8), r(29), 32767), i("ldw", r(9), r(8), 4), i("add", r(8), r(0), 0)};
+        assertEquals(code(lines), optimize("address folding", lines));
+    }
+
+    @Test
+    void addressComputedFromRegistersIsKept() {
+        AssemblyLine[] lines = {i("add", r(8), r(29), r(10)), i("ldw", r(9), r(8), 4), i("add", r(8), r(0), 0)};
+        assertEquals(code(lines), optimize("address folding", lines));
+    }
+}
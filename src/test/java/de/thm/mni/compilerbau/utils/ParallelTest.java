@@ -0,0 +1,78 @@
+package de.thm.mni.compilerbau.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelTest {
+    private static final int THREADS = 8;
+
+    private static List<Integer> numbers(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Runs a task on a pool with several threads, independently of the number of processors.
+     */
+    private static <T> T runInParallel(Callable<T> task) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            return pool.submit(task).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void mapKeepsTheOrderOfTheElements() throws Exception {
+        List<Integer> numbers = numbers(1000);
+        // Later elements finish first
+        List<String> results = runInParallel(() -> Parallel.map(numbers, number -> {
+            if (number % 100 == 0) sleep((1000 - number) / 10);
+            return "#" + number;
+        }));
+        assertEquals(numbers.stream().map(number -> "#" + number).collect(Collectors.toList()), results);
+    }
+
+    @Test
+    void forEachVisitsEveryElementOnce() throws Exception {
+        AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+        runInParallel(() -> {
+            Parallel.forEach(numbers(1000), visits::incrementAndGet);
+            return null;
+        });
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals(1, visits.get(i), "Visits of element " + i);
+        }
+    }
+
+    @Test
+    void theFailureOfTheFirstElementIsThrown() throws Exception {
+        // The failure of element 70 happens first, but element 30 comes first in the list
+        IllegalStateException exception = runInParallel(() -> assertThrows(IllegalStateException.class, () ->
+                Parallel.map(numbers(100), number -> {
+                    if (number == 30) {
+                        sleep(200);
+                        throw new IllegalStateException("element 30");
+                    }
+                    if (number == 70) throw new IllegalStateException("element 70");
+                    return number;
+                })));
+        assertEquals("element 30", exception.getMessage());
+    }
+
+    private static void sleep(int milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}